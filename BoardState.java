@@ -0,0 +1,259 @@
+/*
+ * BoardState.java
+ *
+ * This file contains a compact representation of the game state for search.
+ */
+
+import java.util.Random;
+
+
+/*
+ * The state of a round in a few flat primitive arrays: a bit mask of the
+ * cards on the board, the 25 positions as bytes, the full deck order as
+ * bytes with a cursor pointing at the card on the pile, and the 12 lines
+ * each packed in a long. Drawing a card moves the cursor instead of shifting
+ * a list, and a snapshot is a copy of about 170 bytes into a state that has
+ * been allocated beforehand.
+ *
+ * Positions are numbered x * 5 + y, like board[x][y] in PokerGame, and the
+ * lines are numbered as in PokerGame.
+ */
+public final class BoardState {
+    /* Layout of a packed line: ranks, repeated ranks, suits and fill count. */
+    private static final int PAIR_SHIFT = 13;
+    private static final int SUIT_SHIFT = 26;
+    private static final int FILL_SHIFT = 30;
+    private static final long MASK13 = 0x1FFF;
+
+    /* Cards on the board, one bit per card. */
+    public long used;
+    /* The card on each position, -1 when empty. */
+    public final byte[] cells = new byte[25];
+    /* The deck order; the cards before the cursor have been placed. */
+    public final byte[] deck = new byte[52];
+    public int cursor;
+    /* The packed state of each line. */
+    public final long[] lines = new long[PokerGame.NR_LINES];
+    /* Current score and number of filled positions. */
+    public int score;
+    public int nrUsed;
+
+    /*
+     * Create an empty board with the deck in order.
+     *
+     * Input : -
+     * Output: -
+     */
+    public BoardState() {
+        for (int i = 0; i < 52; i++) {
+            deck[i] = (byte)i;
+        }
+        clear();
+    }
+
+    /*
+     * Start a new round, shuffling the deck with the given generator.
+     *
+     * Input : The generator (Random).
+     * Output: -
+     */
+    public void reset(Random rnd) {
+        for (int i = 51; i > 0; i--) {
+            int k = rnd.nextInt(i + 1);
+            byte t = deck[k];
+            deck[k] = deck[i];
+            deck[i] = t;
+        }
+        clear();
+    }
+
+    /*
+     * Start a new round with the cards in the given order.
+     *
+     * Input : The order of the cards (byte[], 52 cards).
+     * Output: -
+     */
+    public void deal(byte[] order) {
+        System.arraycopy(order, 0, deck, 0, 52);
+        clear();
+    }
+
+    private void clear() {
+        used = 0;
+        for (int cell = 0; cell < 25; cell++) {
+            cells[cell] = -1;
+        }
+        for (int l = 0; l < lines.length; l++) {
+            lines[l] = 0;
+        }
+        cursor = 0;
+        score = 0;
+        nrUsed = 0;
+    }
+
+    /*
+     * The card on the pile.
+     *
+     * Input : -
+     * Output: The card (int).
+     */
+    public int card() {
+        return deck[cursor];
+    }
+
+    /*
+     * Place the card on the pile on an empty position and update the score.
+     *
+     * Input : The position (int).
+     * Output: -
+     */
+    public void place(int cell) {
+        int card = deck[cursor++];
+        cells[cell] = (byte)card;
+        used |= 1L << card;
+        long rankBit = 1L << (card % 13);
+        long suitBit = 1L << (SUIT_SHIFT + card / 13);
+
+        for (int l : PokerGame.CELL_LINES[cell]) {
+            long v = lines[l];
+            v |= (v & rankBit) << PAIR_SHIFT;
+            v |= rankBit | suitBit;
+            v += 1L << FILL_SHIFT;
+            lines[l] = v;
+            if ((v >>> FILL_SHIFT) == 5) {
+                score += scoreLine(v);
+            }
+        }
+        nrUsed += 1;
+    }
+
+    /*
+     * The score that placing a card on an empty position would add.
+     *
+     * Input : The position (int) and the card (int).
+     * Output: The score gained (int).
+     */
+    public int gain(int cell, int card) {
+        long rankBit = 1L << (card % 13);
+        long suitBit = 1L << (SUIT_SHIFT + card / 13);
+        int gained = 0;
+        for (int l : PokerGame.CELL_LINES[cell]) {
+            long v = lines[l];
+            if ((v >>> FILL_SHIFT) == 4) {
+                v |= (v & rankBit) << PAIR_SHIFT;
+                gained += scoreLine(v | rankBit | suitBit);
+            }
+        }
+        return gained;
+    }
+
+    /*
+     * The hand on a line, as indexed in HandEvaluator.HANDS.
+     *
+     * Input : The line (int).
+     * Output: The hand (int), NOTHING while the line is not full.
+     */
+    public int category(int l) {
+        long v = lines[l];
+        if ((v >>> FILL_SHIFT) != 5) {
+            return HandEvaluator.NOTHING;
+        }
+        return HandEvaluator.category(HandEvaluator.index((int)(v & MASK13),
+                (int)((v >>> PAIR_SHIFT) & MASK13), (int)((v >>> SUIT_SHIFT) & 0xF)));
+    }
+
+    private static int scoreLine(long v) {
+        return HandEvaluator.lookup((int)(v & MASK13), (int)((v >>> PAIR_SHIFT) & MASK13),
+                (int)((v >>> SUIT_SHIFT) & 0xF));
+    }
+
+    /*
+     * Copy this state into another one, without allocating.
+     *
+     * Input : The target (BoardState).
+     * Output: -
+     */
+    public void copyInto(BoardState target) {
+        target.used = used;
+        System.arraycopy(cells, 0, target.cells, 0, 25);
+        System.arraycopy(deck, 0, target.deck, 0, 52);
+        System.arraycopy(lines, 0, target.lines, 0, lines.length);
+        target.cursor = cursor;
+        target.score = score;
+        target.nrUsed = nrUsed;
+    }
+
+    /*
+     * Create a copy of this state.
+     *
+     * Input : -
+     * Output: The copy (BoardState).
+     */
+    public BoardState copy() {
+        BoardState state = new BoardState();
+        copyInto(state);
+        return state;
+    }
+
+    /*
+     * Create a state from a game. The cards on the board come first in the
+     * deck (in the order of game.moves), followed by the remaining deck of
+     * the game.
+     *
+     * Input : The game (PokerGame).
+     * Output: The state (BoardState).
+     */
+    public static BoardState from(PokerGame game) {
+        BoardState state = new BoardState();
+        state.load(game);
+        return state;
+    }
+
+    /*
+     * Overwrite this state with the state of a game.
+     *
+     * Input : The game (PokerGame).
+     * Output: -
+     */
+    public void load(PokerGame game) {
+        clear();
+        int n = 0;
+        for (int i = 0; i < game.nr_used; i++) {
+            int cell = game.moves[i];
+            deck[n++] = (byte)game.board[cell / 5][cell % 5];
+        }
+        for (int i = 0; i < game.deck.size(); i++) {
+            deck[n++] = (byte)(int)game.deck.get(i);
+        }
+        for (int i = 0; i < game.nr_used; i++) {
+            place(game.moves[i]);
+        }
+    }
+
+    /*
+     * Write this state into the fields of a game. The placements are given
+     * to the game in the order of the deck, so it can undo them.
+     *
+     * Input : The game (PokerGame).
+     * Output: -
+     */
+    public void store(PokerGame game) {
+        int[] cellOf = new int[52];
+        for (int cell = 0; cell < 25; cell++) {
+            game.board[cell / 5][cell % 5] = cells[cell];
+            if (cells[cell] != -1) {
+                cellOf[cells[cell]] = cell;
+            }
+        }
+        game.deck.clear();
+        for (int i = cursor; i < 52; i++) {
+            game.deck.add((int)deck[i]);
+        }
+        for (int i = 0; i < cursor; i++) {
+            game.moves[i] = cellOf[deck[i]];
+        }
+        game.nr_used = cursor;
+        game.recompute();
+        game.state = nrUsed == 25 ? "end" : "play";
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * BulkEvaluator.java
+ *
+ * This file contains the scoring of large batches of full boards, for
+ * offline analysis.
+ *
+ * To run, type 'java BulkEvaluator [boards] [threads] [seed] [heap|direct]',
+ * which scores random boards, checks a sample of them line by line against
+ * the reference scoring in Scores and reports the boards per second.
+ */
+
+import java.nio.ByteBuffer;
+
+import java.util.Random;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+
+/*
+ * Scores full boards packed as BOARD_BYTES bytes each: the card (0 to 51)
+ * on every position x * 5 + y. The boards can be in a byte array or in a
+ * ByteBuffer, which may be a direct (off-heap) buffer or a mapped file.
+ *
+ * A line is scored without branches: every card is turned into a code with
+ * its rank bit and its suit bit, the codes of the line are ORed for the
+ * ranks and suits present, and the repeated ranks come from ANDing each
+ * code with the OR of the ones before it. The hand then comes from the
+ * category table of HandEvaluator. Large batches are split over a
+ * fork-join pool, and every task counts its hands in local counters.
+ */
+public final class BulkEvaluator {
+    /* Size of a packed board. */
+    public static final int BOARD_BYTES = 25;
+
+    /* Number of boards scored by a single task without splitting further. */
+    private static final int BLOCK = 1 << 14;
+
+    /* The rank bit (bits 0 to 12) and suit bit (bits 16 to 19) of a card. */
+    private static final int[] CODE = new int[52];
+    private static final int RANKS = 0x1FFF;
+    private static final int SUIT_SHIFT = 16;
+
+    /* The positions of the 12 lines, five at a time. */
+    private static final int[] LINE_CELLS = new int[PokerGame.NR_LINES * 5];
+
+    /* The category and the points of every line, by HandEvaluator.index(). */
+    private static final byte[] CATEGORY = new byte[HandEvaluator.TABLE_SIZE];
+
+    static {
+        for (int card = 0; card < 52; card++) {
+            CODE[card] = (1 << (card % 13)) | (1 << (SUIT_SHIFT + card / 13));
+        }
+        for (int l = 0; l < PokerGame.NR_LINES; l++) {
+            System.arraycopy(PokerGame.LINE_CELLS[l], 0, LINE_CELLS, l * 5, 5);
+        }
+        for (int i = 0; i < CATEGORY.length; i++) {
+            CATEGORY[i] = (byte)HandEvaluator.category(i);
+        }
+    }
+
+    private BulkEvaluator() {
+    }
+
+    /*
+     * Score boards in a byte array on the calling thread.
+     *
+     * Input : The packed boards (byte[]), the first board (int), the number
+     *         of boards (int), the array for the scores (int[], indexed
+     *         from the first board) and the counters of the hands (long[],
+     *         indexed as HandEvaluator.HANDS, added to; may be null).
+     * Output: -
+     */
+    public static void score(byte[] boards, int from, int count, int[] scores,
+            long[] hands) {
+        int[] counts = new int[HandEvaluator.HANDS.length];
+        int[] codes = new int[25];
+        int[] points = HandEvaluator.POINTS;
+        for (int b = from; b < from + count; b++) {
+            int base = b * BOARD_BYTES;
+            for (int cell = 0; cell < 25; cell++) {
+                codes[cell] = CODE[boards[base + cell]];
+            }
+            scores[b] = scoreBoard(codes, counts, points);
+        }
+        addCounts(counts, hands);
+    }
+
+    /*
+     * Score boards in a buffer on the calling thread. The buffer is read
+     * with absolute gets, so its position does not matter and is not moved.
+     *
+     * Input : The packed boards (ByteBuffer), the first board (int), the
+     *         number of boards (int), the scores (int[]) and the counters of
+     *         the hands (long[], may be null).
+     * Output: -
+     */
+    public static void score(ByteBuffer boards, int from, int count, int[] scores,
+            long[] hands) {
+        int[] counts = new int[HandEvaluator.HANDS.length];
+        int[] codes = new int[25];
+        int[] points = HandEvaluator.POINTS;
+        for (int b = from; b < from + count; b++) {
+            int base = b * BOARD_BYTES;
+            for (int cell = 0; cell < 25; cell++) {
+                codes[cell] = CODE[boards.get(base + cell)];
+            }
+            scores[b] = scoreBoard(codes, counts, points);
+        }
+        addCounts(counts, hands);
+    }
+
+    /*
+     * Score the 12 lines of a board given as card codes.
+     */
+    private static int scoreBoard(int[] codes, int[] counts, int[] points) {
+        int score = 0;
+        for (int l = 0; l < LINE_CELLS.length; l += 5) {
+            int c0 = codes[LINE_CELLS[l]];
+            int c1 = codes[LINE_CELLS[l + 1]];
+            int c2 = codes[LINE_CELLS[l + 2]];
+            int c3 = codes[LINE_CELLS[l + 3]];
+            int c4 = codes[LINE_CELLS[l + 4]];
+            int or01 = c0 | c1;
+            int or012 = or01 | c2;
+            int or0123 = or012 | c3;
+            int all = or0123 | c4;
+            int pairs = ((c0 & c1) | (or01 & c2) | (or012 & c3) | (or0123 & c4)) & RANKS;
+            int hand = CATEGORY[HandEvaluator.index(all & RANKS, pairs, all >>> SUIT_SHIFT)];
+            counts[hand] += 1;
+            score += points[hand];
+        }
+        return score;
+    }
+
+    private static void addCounts(int[] counts, long[] hands) {
+        if (hands != null) {
+            for (int h = 0; h < counts.length; h++) {
+                hands[h] += counts[h];
+            }
+        }
+    }
+
+    /*
+     * Score boards in a byte array on a pool.
+     *
+     * Input : The packed boards (byte[]), the number of boards (int), the
+     *         scores (int[]) and the pool (ForkJoinPool).
+     * Output: The number of lines per hand (long[]).
+     */
+    public static long[] score(byte[] boards, int count, int[] scores, ForkJoinPool pool) {
+        return pool.invoke(new Batch(boards, null, 0, count, scores));
+    }
+
+    /*
+     * Score boards in a buffer on a pool.
+     *
+     * Input : The packed boards (ByteBuffer), the number of boards (int), the
+     *         scores (int[]) and the pool (ForkJoinPool).
+     * Output: The number of lines per hand (long[]).
+     */
+    public static long[] score(ByteBuffer boards, int count, int[] scores, ForkJoinPool pool) {
+        return pool.invoke(new Batch(null, boards, 0, count, scores));
+    }
+
+    /*
+     * A range of boards, split in halves until it is small enough.
+     */
+    private static final class Batch extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] array;
+        private final ByteBuffer buffer;
+        private final int from;
+        private final int to;
+        private final int[] scores;
+
+        Batch(byte[] array, ByteBuffer buffer, int from, int to, int[] scores) {
+            this.array = array;
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+            this.scores = scores;
+        }
+
+        protected long[] compute() {
+            long[] hands = new long[HandEvaluator.HANDS.length];
+            if (to - from > BLOCK) {
+                int mid = (from + to) >>> 1;
+                Batch left = new Batch(array, buffer, from, mid, scores);
+                left.fork();
+                long[] right = new Batch(array, buffer, mid, to, scores).compute();
+                long[] other = left.join();
+                for (int h = 0; h < hands.length; h++) {
+                    hands[h] = right[h] + other[h];
+                }
+                return hands;
+            }
+            if (array != null) {
+                score(array, from, to - from, scores, hands);
+            }
+            else {
+                score(buffer, from, to - from, scores, hands);
+            }
+            return hands;
+        }
+    }
+
+    /*
+     * Main function. Scores random full boards and reports the throughput.
+     *
+     * Input : Number of boards, threads, seed and 'heap' or 'direct'
+     *         (String[]).
+     * Output: -
+     */
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) :
+                Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : System.nanoTime();
+        boolean direct = args.length > 3 && args[3].equals("direct");
+
+        /* Deal random boards. */
+        Random rnd = new Random(seed);
+        byte[] boards = new byte[count * BOARD_BYTES];
+        byte[] deck = new byte[52];
+        for (int c = 0; c < 52; c++) {
+            deck[c] = (byte)c;
+        }
+        for (int b = 0; b < count; b++) {
+            for (int c = 0; c < 25; c++) {
+                int k = c + rnd.nextInt(52 - c);
+                byte t = deck[k];
+                deck[k] = deck[c];
+                deck[c] = t;
+            }
+            System.arraycopy(deck, 0, boards, b * BOARD_BYTES, 25);
+        }
+        ByteBuffer buffer = null;
+        if (direct) {
+            buffer = ByteBuffer.allocateDirect(boards.length);
+            buffer.put(boards);
+        }
+
+        System.out.println("Scoring " + count + " boards " + (direct ? "off-heap" : "on-heap") +
+                " on " + threads + " threads (seed " + seed + ").");
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        int[] scores = new int[count];
+        long[] hands = null;
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            hands = direct ? score(buffer, count, scores, pool) : score(boards, count, scores, pool);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        pool.shutdown();
+        System.out.printf("Best of 5: %.3f s (%.1f million boards/sec)%n", best / 1e9,
+                count / (best / 1e9) / 1e6);
+
+        /* Check a sample of the boards line by line against Scores, which
+         * shares no tables with the bulk path. */
+        int[] line = new int[5];
+        int checked = 0;
+        for (int b = 0; b < count; b += Math.max(1, count / 100000)) {
+            int expected = 0;
+            for (int[] cells : PokerGame.LINE_CELLS) {
+                for (int k = 0; k < 5; k++) {
+                    line[k] = boards[b * BOARD_BYTES + cells[k]];
+                }
+                expected += Scores.score(line);
+            }
+            if (expected != scores[b]) {
+                throw new IllegalStateException("Board " + b + ": scored " + scores[b] +
+                        ", expected " + expected);
+            }
+            checked += 1;
+        }
+        System.out.println("Checked " + checked + " boards against Scores.");
+        long lines = (long)count * PokerGame.NR_LINES;
+        for (int h = HandEvaluator.HANDS.length - 1; h >= 0; h--) {
+            System.out.printf("  %-16s %.6f%n", HandEvaluator.HANDS[h], hands[h] / (double)lines);
+        }
+    }
+}
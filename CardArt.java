@@ -0,0 +1,310 @@
+/*
+ * CardArt.java
+ *
+ * This file contains the images of the playing cards.
+ */
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.Transparency;
+
+import java.awt.image.BufferedImage;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+
+/*
+ * Shared cache of the card images. All 52 cards are kept in one sprite atlas
+ * (13 columns by 4 rows) with the magenta corners already transparent. The
+ * atlas is stored next to the card images and read as a single image; when
+ * it is missing or older than one of the cards, it is rebuilt by decoding
+ * the cards in parallel. The atlas is converted once to the format of the
+ * screen, and each card is a subimage of it, so drawing needs no conversion.
+ */
+public final class CardArt {
+    /* Hardcoded values for the card with and height in pixels. */
+    public static final int cwidth = 79;
+    public static final int cheight = 123;
+
+    /* The directory with the card images and the cached atlas. */
+    private static final String DIRECTORY = "images";
+    private static final File ATLAS = new File(DIRECTORY, "atlas.png");
+    private static final int COLUMNS = 13;
+
+    /* The color of the corners, which is made transparent. */
+    private static final int MARKER = 0xFFFF00FF;
+
+    /* Time spent loading the card art, in nanoseconds. */
+    public static volatile long loadNanos;
+
+    private CardArt() {
+    }
+
+    /*
+     * Holder of the loaded images, initialized on first use.
+     */
+    private static class Cache {
+        static final Image[] cards = load();
+    }
+
+    /*
+     * Get the image of a card.
+     *
+     * Input : The card (int).
+     * Output: The image (Image).
+     */
+    public static Image get(int card) {
+        return Cache.cards[card];
+    }
+
+    /*
+     * Start loading the card art on a background thread, so it is ready (or
+     * nearly so) by the time the first card is drawn.
+     *
+     * Input : -
+     * Output: -
+     */
+    public static void preload() {
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                get(0);
+            }
+        }, "card-art");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /*
+     * Load the atlas, or rebuild it, and cut it into cards.
+     *
+     * Input : -
+     * Output: The images of all 52 cards (Image[]).
+     */
+    private static Image[] load() {
+        long start = System.nanoTime();
+        BufferedImage atlas = readAtlas();
+        if (atlas == null) {
+            int[][] pixels = decodeAll();
+            atlas = buildAtlas(pixels);
+            /* Never cache an atlas with cards missing. */
+            if (Arrays.asList(pixels).contains(null)) {
+                System.err.println("Some card images could not be read; " +
+                        "the card atlas is not cached.");
+            }
+            else {
+                writeAtlas(atlas);
+            }
+        }
+        atlas = toScreenFormat(atlas);
+
+        Image[] cards = new Image[52];
+        for (int i = 0; i < 52; i++) {
+            cards[i] = atlas.getSubimage((i % COLUMNS) * cwidth,
+                    (i / COLUMNS) * cheight, cwidth, cheight);
+        }
+        loadNanos = System.nanoTime() - start;
+        Metrics.CARD_ART.record(loadNanos);
+        return cards;
+    }
+
+    /*
+     * Read the cached atlas if it is up to date.
+     *
+     * Input : -
+     * Output: The atlas (BufferedImage), or null if it has to be rebuilt.
+     */
+    private static BufferedImage readAtlas() {
+        if (!ATLAS.isFile()) {
+            return null;
+        }
+        long built = ATLAS.lastModified();
+        for (int i = 0; i < 52; i++) {
+            if (cardFile(i).lastModified() > built) {
+                return null;
+            }
+        }
+        try {
+            BufferedImage atlas = ImageIO.read(ATLAS);
+            if (atlas == null || atlas.getWidth() != COLUMNS * cwidth ||
+                    atlas.getHeight() != 4 * cheight) {
+                return null;
+            }
+            return atlas;
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    /*
+     * Decode the 52 card images in parallel. The cards are always waited
+     * for, even when the thread is interrupted (the interrupt is kept for
+     * the caller), so a half-built atlas is never handed out.
+     *
+     * Input : -
+     * Output: The pixels of each card (int[][]), null for a card that is
+     *         missing or unreadable.
+     */
+    private static int[][] decodeAll() {
+        int[][] pixels = new int[52][];
+        int threads = Math.min(52, Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        boolean interrupted = false;
+        try {
+            List<Future<int[]>> cards = new ArrayList<Future<int[]>>(52);
+            for (int i = 0; i < 52; i++) {
+                final int card = i;
+                cards.add(pool.submit(new Callable<int[]>() {
+                    public int[] call() {
+                        return decode(card);
+                    }
+                }));
+            }
+            for (int i = 0; i < 52; i++) {
+                while (true) {
+                    try {
+                        pixels[i] = cards.get(i).get();
+                        break;
+                    }
+                    catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException("Could not load the cards.", e.getCause());
+        }
+        finally {
+            pool.shutdown();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return pixels;
+    }
+
+    /*
+     * Combine the cards into an atlas. Missing cards are left transparent.
+     *
+     * Input : The pixels of each card (int[][]).
+     * Output: The atlas (BufferedImage).
+     */
+    private static BufferedImage buildAtlas(int[][] pixels) {
+        BufferedImage atlas = new BufferedImage(COLUMNS * cwidth, 4 * cheight,
+                BufferedImage.TYPE_INT_ARGB);
+        for (int i = 0; i < 52; i++) {
+            if (pixels[i] != null) {
+                atlas.setRGB((i % COLUMNS) * cwidth, (i / COLUMNS) * cheight,
+                        cwidth, cheight, pixels[i], 0, cwidth);
+            }
+        }
+        return atlas;
+    }
+
+    /*
+     * Decode a single card and set the magenta corners to transparent.
+     *
+     * Input : The card (int).
+     * Output: The pixels of the card, row by row (int[]), or null if the
+     *         card is missing or unreadable.
+     */
+    private static int[] decode(int card) {
+        int[] pixels = new int[cwidth * cheight];
+        try {
+            BufferedImage image = ImageIO.read(cardFile(card));
+            if (image == null) {
+                return null;
+            }
+            image.getRGB(0, 0, Math.min(cwidth, image.getWidth()),
+                    Math.min(cheight, image.getHeight()), pixels, 0, cwidth);
+        }
+        catch (IOException e) {
+            return null;
+        }
+        for (int p = 0; p < pixels.length; p++) {
+            if ((pixels[p] | 0xFF000000) == MARKER) {
+                pixels[p] &= 0x00FFFFFF;
+            }
+        }
+        return pixels;
+    }
+
+    /*
+     * Store the atlas next to the cards. It is written to a temporary file
+     * first, so a concurrent reader never sees a partial atlas. The atlas is
+     * only a cache, so failing to write it is reported but not an error; the
+     * temporary file is removed either way.
+     *
+     * Input : The atlas (BufferedImage).
+     * Output: -
+     */
+    private static void writeAtlas(BufferedImage atlas) {
+        try {
+            File temp = File.createTempFile("atlas", ".png", new File(DIRECTORY));
+            try {
+                ImageIO.write(atlas, "png", temp);
+                Files.move(temp.toPath(), ATLAS.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+            finally {
+                temp.delete();
+            }
+        }
+        catch (IOException e) {
+            System.err.println("Could not cache the card atlas: " + e);
+        }
+    }
+
+    /*
+     * Convert the atlas to the pixel format of the screen, so it can be
+     * drawn (and cached in video memory) without conversion.
+     *
+     * Input : The atlas (BufferedImage).
+     * Output: The converted atlas (BufferedImage).
+     */
+    private static BufferedImage toScreenFormat(BufferedImage atlas) {
+        BufferedImage converted;
+        if (GraphicsEnvironment.isHeadless()) {
+            if (atlas.getType() == BufferedImage.TYPE_INT_ARGB) {
+                return atlas;
+            }
+            converted = new BufferedImage(atlas.getWidth(), atlas.getHeight(),
+                    BufferedImage.TYPE_INT_ARGB);
+        }
+        else {
+            GraphicsConfiguration config = GraphicsEnvironment
+                    .getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                    .getDefaultConfiguration();
+            converted = config.createCompatibleImage(atlas.getWidth(),
+                    atlas.getHeight(), Transparency.TRANSLUCENT);
+        }
+        Graphics2D g = converted.createGraphics();
+        g.drawImage(atlas, 0, 0, null);
+        g.dispose();
+        return converted;
+    }
+
+    private static File cardFile(int card) {
+        return new File(DIRECTORY, card + ".png");
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * DatasetReader.java
+ *
+ * This file contains the reader of the training data written by
+ * DatasetWriter.
+ *
+ * To check a dataset, type 'java DatasetReader [directory] [threads]', which
+ * scans all chunks, checks every row against the rows before it and the
+ * final score against the last board, and reports the rows per second.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import java.util.Arrays;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/*
+ * Maps a chunk read-only and hands out its columns as buffers over the
+ * mapping, so nothing is copied: a model can read the board column of a
+ * chunk as one block of rows * 25 bytes. Chunks whose row count is still 0
+ * (being written, or never completed) have no rows.
+ */
+public final class DatasetReader {
+    /* Number of games checked by a single task without splitting. */
+    private static final int BLOCK = 1 << 12;
+
+    /* The columns of the chunk, each from its first row. */
+    public final ByteBuffer unseen;
+    public final ByteBuffer board;
+    public final ByteBuffer score;
+    public final ByteBuffer card;
+    public final ByteBuffer cell;
+    /* The number of complete rows. */
+    public final int rows;
+
+    /*
+     * Map a chunk.
+     *
+     * Input : The chunk file (File).
+     * Output: -
+     */
+    public DatasetReader(File chunk) throws IOException {
+        MappedByteBuffer map;
+        RandomAccessFile file = new RandomAccessFile(chunk, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            if (channel.size() < DatasetWriter.HEADER_SIZE) {
+                throw new IOException(chunk.getName() + ": no header");
+            }
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        finally {
+            file.close();
+        }
+        map.order(ByteOrder.LITTLE_ENDIAN);
+        int capacity = map.getInt(8);
+        if (map.getInt(0) != DatasetWriter.MAGIC || map.getInt(4) != DatasetWriter.VERSION ||
+                capacity < 0 || map.capacity() < DatasetWriter.offset(
+                        DatasetWriter.COLUMNS.length, capacity)) {
+            throw new IOException(chunk.getName() + ": not a dataset chunk");
+        }
+        rows = Math.min(map.getInt(DatasetWriter.ROWS_FIELD), capacity);
+        unseen = column(map, DatasetWriter.UNSEEN);
+        board = column(map, DatasetWriter.BOARD);
+        score = column(map, DatasetWriter.SCORE);
+        card = column(map, DatasetWriter.CARD);
+        cell = column(map, DatasetWriter.CELL);
+    }
+
+    private ByteBuffer column(MappedByteBuffer map, int column) {
+        int offset = (int)map.getLong(DatasetWriter.OFFSETS_FIELD + column * 8);
+        return map.slice(offset, rows * DatasetWriter.WIDTHS[column])
+                .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public long unseen(int row) {
+        return unseen.getLong(row * 8);
+    }
+
+    /* The card on a position before the placement of a row, or -1. */
+    public int board(int row, int position) {
+        return board.get(row * 25 + position);
+    }
+
+    public int score(int row) {
+        return score.getShort(row * 2);
+    }
+
+    public int card(int row) {
+        return card.get(row);
+    }
+
+    public int cell(int row) {
+        return cell.get(row);
+    }
+
+    /*
+     * Checks the games of a dataset.
+     */
+    public static final class Checker {
+        public final AtomicLong rows = new AtomicLong();
+        public final AtomicLong bad = new AtomicLong();
+        public final AtomicLong total = new AtomicLong();
+        public final AtomicLong won = new AtomicLong();
+
+        /*
+         * Check all chunks of a directory.
+         *
+         * Input : The directory (File) and the pool (ForkJoinPool).
+         * Output: -
+         */
+        public void check(File directory, ForkJoinPool pool) throws IOException {
+            for (File chunk : DatasetWriter.chunks(directory)) {
+                DatasetReader reader = new DatasetReader(chunk);
+                if (reader.rows % 25 != 0) {
+                    System.out.println(chunk.getName() + ": " + reader.rows +
+                            " rows, not whole games");
+                    bad.incrementAndGet();
+                }
+                pool.invoke(new Games(reader, 0, reader.rows / 25));
+                rows.addAndGet(reader.rows);
+            }
+        }
+
+        /*
+         * A range of games of a chunk, split in halves until it is small.
+         */
+        private final class Games extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            private final DatasetReader reader;
+            private final int from;
+            private final int to;
+
+            Games(DatasetReader reader, int from, int to) {
+                this.reader = reader;
+                this.from = from;
+                this.to = to;
+            }
+
+            protected void compute() {
+                if (to - from > BLOCK) {
+                    int mid = (from + to) >>> 1;
+                    invokeAll(new Games(reader, from, mid), new Games(reader, mid, to));
+                    return;
+                }
+                int[] full = new int[25];
+                long wrong = 0;
+                long sum = 0;
+                long wins = 0;
+                for (int g = from; g < to; g++) {
+                    int score = reader.score(g * 25);
+                    if (!valid(reader, g * 25, full) || score != OptimalSolver.score(full)) {
+                        wrong++;
+                    }
+                    sum += score;
+                    wins += score >= PokerGame.WIN_SCORE ? 1 : 0;
+                }
+                bad.addAndGet(wrong);
+                total.addAndGet(sum);
+                won.addAndGet(wins);
+            }
+        }
+
+        /*
+         * Whether the rows of a game follow each other: every board is the
+         * one before plus the placement before, the unseen cards are the
+         * others, and all rows have the same score. The last board, with its
+         * placement made, is left in full.
+         */
+        private static boolean valid(DatasetReader reader, int first, int[] full) {
+            Arrays.fill(full, -1);
+            long seen = 0;
+            int score = reader.score(first);
+            for (int row = first; row < first + 25; row++) {
+                for (int p = 0; p < 25; p++) {
+                    if (reader.board(row, p) != full[p]) {
+                        return false;
+                    }
+                }
+                int card = reader.card(row);
+                int cell = reader.cell(row);
+                if (card < 0 || card >= 52 || (seen & (1L << card)) != 0 ||
+                        cell < 0 || cell >= 25 || full[cell] != -1 ||
+                        reader.unseen(row) != (((1L << 52) - 1) & ~seen & ~(1L << card)) ||
+                        reader.score(row) != score) {
+                    return false;
+                }
+                full[cell] = card;
+                seen |= 1L << card;
+            }
+            return true;
+        }
+    }
+
+    /*
+     * Main function. Checks a dataset and reports the scan speed.
+     *
+     * Input : Directory and threads (String[]).
+     * Output: -
+     */
+    public static void main(String[] args) throws IOException {
+        File directory = new File(args.length > 0 ? args[0] : "dataset");
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) :
+                Runtime.getRuntime().availableProcessors();
+
+        Checker checker = new Checker();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        checker.check(directory, pool);
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+
+        double seconds = elapsed / 1e9;
+        long rows = checker.rows.get();
+        long games = rows / 25;
+        System.out.println("Rows: " + rows + " (" + games + " games) in " +
+                DatasetWriter.chunks(directory).length + " chunks");
+        System.out.printf("Time: %.3f s (%.0f rows/sec, %.0f MB/sec)%n", seconds,
+                rows / seconds, rows * (double)DatasetWriter.ROW_BYTES / seconds / 1e6);
+        if (games > 0) {
+            System.out.printf("Average score %.2f, win ratio %.4f%n",
+                    checker.total.get() / (double)games, checker.won.get() / (double)games);
+        }
+        System.out.println("Games that do not check out: " + checker.bad.get());
+        if (checker.bad.get() > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,446 @@
+/*
+ * DatasetWriter.java
+ *
+ * This file contains the exporter of training data: every placement of the
+ * simulated games with the state it was made in and the final score of its
+ * game, written to memory-mapped column files (see DatasetReader).
+ */
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/*
+ * Writes one row per placement into chunk files of a fixed number of rows.
+ * Every column has a fixed width and is stored as one block in the chunk,
+ * so row i of a column is at offset(column) + i * width(column):
+ *
+ *   unseen  8 bytes  the cards not on the board and not the current card,
+ *                    a bit per card (long)
+ *   board  25 bytes  the card on every position x * 5 + y, -1 if empty
+ *   score   2 bytes  the final score of the game (short)
+ *   card    1 byte   the card to be placed
+ *   cell    1 byte   the position x * 5 + y it was placed on
+ *
+ * A chunk starts with a 64-byte header: magic, version, the capacity in
+ * rows, the number of rows written and the offsets of the five columns (a
+ * long each). All numbers are little-endian. The 25 rows of a game follow
+ * each other in one chunk, the first with an empty board.
+ *
+ * The writing threads take ranges of rows from a shared counter, one range
+ * per batch of games, and write their rows straight into the mapped chunk,
+ * so the threads share nothing but the counter and the chunk list. A chunk
+ * whose rows are all written is completed (its row count set and its pages
+ * forced to disk) on a background thread; the last chunk is completed by
+ * close(). Until then its row count is 0, and readers skip it. A chunk file
+ * is created at its full capacity, so close() compacts the last one: it is
+ * rewritten for a capacity of the rows written (rounded up to CHUNK_ALIGN)
+ * to a new file, which replaces it.
+ */
+public class DatasetWriter implements Closeable {
+    /* Layout of a chunk. */
+    public static final int MAGIC = 0x504B4443;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 64;
+    public static final int ROWS_FIELD = 12;
+    public static final int OFFSETS_FIELD = 24;
+
+    /* The columns, widest first so that every column stays aligned. */
+    public static final int UNSEEN = 0;
+    public static final int BOARD = 1;
+    public static final int SCORE = 2;
+    public static final int CARD = 3;
+    public static final int CELL = 4;
+    public static final String[] COLUMNS = {"unseen", "board", "score", "card", "cell"};
+    public static final int[] WIDTHS = {8, 25, 2, 1, 1};
+    public static final int ROW_BYTES = 37;
+
+    /* Default number of rows per chunk (about 40 MB). The rows of a chunk
+     * are a multiple of CHUNK_ALIGN, so that every column stays 8-byte
+     * aligned and no game is split over two chunks. */
+    public static final int DEFAULT_CHUNK_ROWS = 1 << 20;
+    public static final int CHUNK_ALIGN = 200;
+
+    /* All 52 cards, as bits. */
+    private static final long ALL_CARDS = (1L << 52) - 1;
+
+    private final File directory;
+    private final int chunkRows;
+    private final int first;
+
+    /* The next row to hand out, and the chunks by number from 'first'. */
+    private final AtomicLong next = new AtomicLong();
+    private final List<Chunk> chunks = new ArrayList<Chunk>();
+
+    /* Completes the full chunks. */
+    private final ExecutorService completer;
+    private volatile IOException error = null;
+
+    /*
+     * Open a dataset in a directory, creating the directory if needed. The
+     * chunks of a new writer come after those already there.
+     *
+     * Input : The directory (File) and the rows per chunk (int, rounded up
+     *         to a multiple of CHUNK_ALIGN).
+     * Output: -
+     */
+    public DatasetWriter(File directory, int chunkRows) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        this.chunkRows = (chunkRows + CHUNK_ALIGN - 1) / CHUNK_ALIGN * CHUNK_ALIGN;
+        if (this.chunkRows <= 0 || size(this.chunkRows) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Chunks must hold 1 to " +
+                    (Integer.MAX_VALUE - HEADER_SIZE) / ROW_BYTES + " rows.");
+        }
+        this.directory = directory;
+        File[] existing = chunks(directory);
+        first = existing.length == 0 ? 0 : number(existing[existing.length - 1]) + 1;
+        completer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "dataset-completer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /*
+     * The chunk files of a dataset, in order.
+     *
+     * Input : The directory (File).
+     * Output: The chunks (File[]), empty if there are none.
+     */
+    public static File[] chunks(File directory) {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.matches("dataset-\\d{6}\\.col");
+            }
+        });
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static int number(File chunk) {
+        return Integer.parseInt(chunk.getName().substring(8, 14));
+    }
+
+    /* The size of a chunk file. */
+    private static long size(int rows) {
+        return HEADER_SIZE + (long)rows * ROW_BYTES;
+    }
+
+    /*
+     * The offset of a column in a chunk.
+     *
+     * Input : The column (int) and the capacity of the chunk (int).
+     * Output: The offset (long).
+     */
+    public static long offset(int column, int rows) {
+        long offset = HEADER_SIZE;
+        for (int c = 0; c < column; c++) {
+            offset += (long)WIDTHS[c] * rows;
+        }
+        return offset;
+    }
+
+    /*
+     * Start writing a number of games, e.g. on one thread of a simulation.
+     *
+     * Input : The number of games (int).
+     * Output: The batch to write the games to (Batch).
+     */
+    public Batch batch(int games) throws IOException {
+        if (error != null) {
+            throw error;
+        }
+        long rows = 25L * games;
+        return new Batch(next.getAndAdd(rows), rows);
+    }
+
+    /* The number of rows handed out to batches. */
+    public long rows() {
+        return next.get();
+    }
+
+    /*
+     * The chunk with the given number from the first of this writer, which
+     * is created and mapped on first use.
+     */
+    private synchronized Chunk chunk(int index) throws IOException {
+        while (chunks.size() <= index) {
+            chunks.add(null);
+        }
+        Chunk chunk = chunks.get(index);
+        if (chunk == null) {
+            chunk = new Chunk(new File(directory,
+                    String.format("dataset-%06d.col", first + index)), chunkRows);
+            chunks.set(index, chunk);
+        }
+        return chunk;
+    }
+
+    /* Complete a full chunk on the background thread. */
+    private void completed(final int index) {
+        completer.execute(new Runnable() {
+            public void run() {
+                try {
+                    Chunk chunk;
+                    synchronized (DatasetWriter.this) {
+                        chunk = chunks.get(index);
+                        /* Let the mapping go once it is on disk. */
+                        chunks.set(index, Chunk.DONE);
+                    }
+                    chunk.complete(chunkRows);
+                }
+                catch (IOException e) {
+                    error = e;
+                }
+            }
+        });
+    }
+
+    /*
+     * Complete the chunks. The batches must be finished first.
+     *
+     * Input : -
+     * Output: -
+     */
+    public void close() throws IOException {
+        completer.shutdown();
+        try {
+            completer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            for (Chunk chunk : chunks) {
+                if (chunk != null && chunk != Chunk.DONE) {
+                    chunk.compact(chunk.filled.get());
+                }
+            }
+            chunks.clear();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /*
+     * A chunk file, mapped as a whole while it is written.
+     */
+    private static final class Chunk {
+        /* Stands in for a chunk that has been completed. */
+        static final Chunk DONE = new Chunk();
+
+        final File path;
+        final MappedByteBuffer map;
+        final long[] offsets = new long[COLUMNS.length];
+        final AtomicInteger filled = new AtomicInteger();
+
+        private Chunk() {
+            path = null;
+            map = null;
+        }
+
+        Chunk(File path, int rows) throws IOException {
+            this.path = path;
+            RandomAccessFile file = new RandomAccessFile(path, "rw");
+            try {
+                file.setLength(size(rows));
+                map = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size(rows));
+            }
+            finally {
+                /* The mapping stays valid after the file is closed. */
+                file.close();
+            }
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            map.putInt(0, MAGIC);
+            map.putInt(4, VERSION);
+            map.putInt(8, rows);
+            map.putInt(ROWS_FIELD, 0);
+            for (int c = 0; c < COLUMNS.length; c++) {
+                offsets[c] = offset(c, rows);
+                map.putLong(OFFSETS_FIELD + c * 8, offsets[c]);
+            }
+        }
+
+        /* Force the rows to disk, then make them visible to readers. */
+        void complete(int rows) throws IOException {
+            map.force();
+            map.putInt(ROWS_FIELD, rows);
+            map.force();
+        }
+
+        /*
+         * Complete a chunk that is not full with the smallest capacity that
+         * holds its rows. A mapped file cannot be cut, so the header and the
+         * rows of each column are written to a new file at their offsets for
+         * that capacity, which then replaces the chunk. Readers see either
+         * the old chunk, without rows, or the complete new one.
+         */
+        void compact(int rows) throws IOException {
+            int capacity = (rows + CHUNK_ALIGN - 1) / CHUNK_ALIGN * CHUNK_ALIGN;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putInt(8, capacity);
+            header.putInt(ROWS_FIELD, rows);
+            for (int c = 0; c < COLUMNS.length; c++) {
+                header.putLong(OFFSETS_FIELD + c * 8, offset(c, capacity));
+            }
+            File temp = new File(path.getPath() + ".tmp");
+            try {
+                RandomAccessFile file = new RandomAccessFile(temp, "rw");
+                try {
+                    file.setLength(size(capacity));
+                    FileChannel channel = file.getChannel();
+                    write(channel, header, 0);
+                    for (int c = 0; c < COLUMNS.length; c++) {
+                        ByteBuffer column = map.duplicate();
+                        column.limit((int)offsets[c] + rows * WIDTHS[c]);
+                        column.position((int)offsets[c]);
+                        write(channel, column, offset(c, capacity));
+                    }
+                    channel.force(true);
+                }
+                finally {
+                    file.close();
+                }
+                Files.move(temp.toPath(), path.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+            finally {
+                temp.delete();
+            }
+        }
+
+        /* Write all of a buffer to a channel from the given position on. */
+        private static void write(FileChannel channel, ByteBuffer buffer, long position)
+                throws IOException {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+    }
+
+    /*
+     * The rows of a number of games, written by one thread in the order of
+     * the placements:
+     *
+     *   batch.begin();
+     *   for every placement: batch.placement(card, cell);
+     *   batch.end(score);
+     */
+    public final class Batch {
+        private long row;
+        private final long end;
+
+        /* The board and the cards seen in the current game. */
+        private final byte[] board = new byte[25];
+        private long seen;
+        private long gameStart;
+
+        /* The chunk being written and the row number of its first row. */
+        private Chunk chunk = null;
+        private long chunkStart = -1;
+
+        private Batch(long row, long rows) {
+            this.row = row;
+            this.end = row + rows;
+        }
+
+        /*
+         * Start a game with an empty board.
+         *
+         * Input : -
+         * Output: -
+         */
+        public void begin() {
+            if (end - row < 25) {
+                throw new IllegalStateException("The batch is full.");
+            }
+            Arrays.fill(board, (byte)-1);
+            seen = 0;
+            gameStart = row;
+        }
+
+        /*
+         * Add a placement of the current game, before it is made.
+         *
+         * Input : The card (int) and the position x * 5 + y (int).
+         * Output: -
+         */
+        public void placement(int card, int cell) throws IOException {
+            if (row - gameStart >= 25 || board[cell] != -1) {
+                throw new IllegalStateException("Not a placement of this game.");
+            }
+            int i = at(row);
+            MappedByteBuffer map = chunk.map;
+            long[] offsets = chunk.offsets;
+            map.putLong((int)offsets[UNSEEN] + i * 8, ALL_CARDS & ~seen & ~(1L << card));
+            map.put((int)offsets[BOARD] + i * 25, board);
+            map.put((int)offsets[CARD] + i, (byte)card);
+            map.put((int)offsets[CELL] + i, (byte)cell);
+            board[cell] = (byte)card;
+            seen |= 1L << card;
+            row++;
+        }
+
+        /*
+         * End the current game: its final score goes into all its rows,
+         * which are then complete.
+         *
+         * Input : The final score (int).
+         * Output: -
+         */
+        public void end(int score) throws IOException {
+            if (row - gameStart != 25) {
+                throw new IllegalStateException("The game has " + (row - gameStart) +
+                        " placements.");
+            }
+            int i = at(gameStart);
+            for (int k = 0; k < 25; k++) {
+                chunk.map.putShort((int)chunk.offsets[SCORE] + (i + k) * 2, (short)score);
+            }
+            if (chunk.filled.addAndGet(25) == chunkRows) {
+                completed((int)(chunkStart / chunkRows));
+            }
+        }
+
+        /* The index of a row in its chunk, making that chunk the current one. */
+        private int at(long r) throws IOException {
+            if (chunk == null || r < chunkStart || r >= chunkStart + chunkRows) {
+                chunkStart = r - r % chunkRows;
+                chunk = chunk((int)(r / chunkRows));
+            }
+            return (int)(r - chunkStart);
+        }
+    }
+}
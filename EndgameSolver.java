@@ -0,0 +1,842 @@
+/*
+ * EndgameSolver.java
+ *
+ * This file contains an exact solver for the last placements of a game.
+ *
+ * To measure it, type 'java EndgameSolver [empty] [megabytes] [seed]
+ * [threads]', which plays a game with the Monte Carlo policy until the
+ * given number of empty positions (default 6, at most 8) is left and then
+ * solves the position.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/*
+ * Computes the optimal position for the card on the pile by expectimax: the
+ * player takes the best position for each card, and the next card is drawn
+ * uniformly from the cards that are not on the board. The value of a board
+ * is the expected score still to be gained from it with optimal play.
+ *
+ * That value only depends on the empty positions, on the lines that are not
+ * full yet and on the unseen cards, and much of those does not matter:
+ *  - A line is described by its ranks and the one suit it can still make a
+ *    flush in, if any; which cards gave them does not matter.
+ *  - A suit is dead when no open line can still become a flush in it. Once
+ *    every open line has a card, a dead suit stays dead, so the unseen
+ *    cards of the dead suits only count by rank: the search draws one card
+ *    per rank for all of them, weighted by how many there are.
+ *  - The suits that are still alive are renamed in the order in which the
+ *    lines use them, so boards that only differ by a swap of suits share
+ *    their value.
+ * The transposition table stores the values under a hash of this canonical
+ * state: Zobrist numbers for the empty positions, mixed with the state of
+ * each open line and the unseen cards. It is allocated up front as
+ * primitive arrays within a fixed memory cap and is kept between calls, so
+ * later moves of the same game reuse earlier work. Each bucket holds two
+ * entries: one kept for the deepest position seen and one that is always
+ * replaced.
+ *
+ * The positions and the first card drawn after them are searched in
+ * parallel, sharing the table. An entry is stored as its key xor its value
+ * next to the value, so an entry torn by two threads writing at once no
+ * longer matches its key and is only a miss.
+ */
+public class EndgameSolver {
+    /*
+     * The largest number of empty positions the solver accepts. On one core
+     * 5 empty positions take about 0.1 s, 6 about 1 s, 7 about 10 s and 8
+     * about 4 minutes (350 million nodes); the search spreads over the
+     * cores, so 8 cores take 8 positions in well under a minute. Each
+     * further position costs about 25 times more, which puts 9 at hours.
+     */
+    public static final int MAX_EMPTY = 8;
+
+    /* Default memory cap of the transposition table. */
+    public static final long DEFAULT_MEMORY = 256L << 20;
+
+    /* Bytes per table entry: a key and a value. */
+    private static final int ENTRY_BYTES = 16;
+
+    /* Low bits of a key hold the number of empty positions of the entry. */
+    private static final long DEPTH_BITS = 0xFL;
+
+    /* All 52 cards, one bit per card (suit * 13 + rank). */
+    private static final long ALL_CARDS = (1L << 52) - 1;
+
+    /* The ranks of each straight (rank 12 is the ace). */
+    private static final int[] STRAIGHTS = {
+        0x1F, 0x3E, 0x7C, 0xF8, 0x1F0, 0x3E0, 0x7C0, 0xF80, 0x1F00, 0x100F
+    };
+
+    /* Random numbers for each empty position. */
+    private static final long[] ZOBRIST = new long[25];
+
+    /* Each set of ranks with every rank in a field of 3 bits, so that the
+     * ranks of several suits are counted by adding them. */
+    private static final long[] SPREAD = new long[1 << 13];
+
+    static {
+        SplittableRandom rnd = new SplittableRandom(0x5EED);
+        for (int i = 0; i < ZOBRIST.length; i++) {
+            ZOBRIST[i] = rnd.nextLong();
+        }
+        for (int ranks = 1; ranks < SPREAD.length; ranks++) {
+            int rank = Integer.numberOfTrailingZeros(ranks);
+            SPREAD[ranks] = SPREAD[ranks & (ranks - 1)] | (1L << (3 * rank));
+        }
+    }
+
+    /* The transposition table, in buckets of two entries of a key xor the
+     * value, and the value. */
+    private final long[] keys;
+    private final long[] values;
+    private final int bucketMask;
+
+    /* Runs the searches below the root. */
+    private final ForkJoinPool pool;
+
+    /* Statistics of the last call to solve(). */
+    public long nodes;
+    public long probes;
+    public long hits;
+    public long nanos;
+
+    /*
+     * Create a solver with the default memory cap.
+     *
+     * Input : -
+     * Output: -
+     */
+    public EndgameSolver() {
+        this(DEFAULT_MEMORY);
+    }
+
+    /*
+     * Create a solver whose table uses at most the given number of bytes,
+     * searching on all cores.
+     *
+     * Input : The memory cap (long, in bytes).
+     * Output: -
+     */
+    public EndgameSolver(long memoryBytes) {
+        this(memoryBytes, Runtime.getRuntime().availableProcessors());
+    }
+
+    /*
+     * Create a solver whose table uses at most the given number of bytes.
+     *
+     * Input : The memory cap (long, in bytes) and number of threads (int).
+     * Output: -
+     */
+    public EndgameSolver(long memoryBytes, int threads) {
+        long entries = Long.highestOneBit(Math.max(2, memoryBytes / ENTRY_BYTES));
+        entries = Math.min(entries, 1L << 30);
+        keys = new long[(int)entries];
+        values = new long[(int)entries];
+        bucketMask = (int)(entries / 2 - 1);
+        pool = new ForkJoinPool(threads);
+    }
+
+    /*
+     * Compute the expected final score of placing the top card of the deck
+     * on each empty position, with optimal play afterwards.
+     *
+     * Input : The game (PokerGame), with at most MAX_EMPTY empty positions.
+     * Output: The expected final score per position x * 5 + y (double[]),
+     *         NaN for positions that are taken.
+     */
+    public double[] solve(PokerGame game) {
+        int nrEmpty = 25 - game.nr_used;
+        if (!game.rules.isStandard()) {
+            throw new IllegalArgumentException("Only standard games are solved.");
+        }
+        if (nrEmpty < 1 || nrEmpty > MAX_EMPTY) {
+            throw new IllegalArgumentException("Can only solve 1 to " +
+                    MAX_EMPTY + " empty positions, not " + nrEmpty + ".");
+        }
+
+        long start = System.nanoTime();
+        Search root = new Search();
+        root.load(game.board);
+        int card = game.deck.get(0);
+
+        /* One task per position and first card drawn after it. */
+        double[] result = new double[25];
+        int[] gains = new int[25];
+        List<Draw> draws = new ArrayList<Draw>();
+        for (int cell = 0; cell < 25; cell++) {
+            if ((root.empty & (1 << cell)) == 0) {
+                result[cell] = Double.NaN;
+                continue;
+            }
+            Search placed = root.copy();
+            gains[cell] = placed.place(cell, card, 0);
+            if (nrEmpty == 1) {
+                continue;
+            }
+            placed.classify();
+            int count = placed.chances(1);
+            for (int i = 0; i < count; i++) {
+                draws.add(new Draw(placed, cell, placed.cards[1][i],
+                        placed.weights[1][i], nrEmpty - 1));
+            }
+        }
+        pool.invoke(new Draws(draws));
+
+        nodes = 0;
+        probes = 0;
+        hits = 0;
+        double[] sums = new double[25];
+        int[] total = new int[25];
+        for (Draw draw : draws) {
+            sums[draw.cell] += draw.weight * draw.value;
+            total[draw.cell] += draw.weight;
+            nodes += draw.search.nodes;
+            probes += draw.search.probes;
+            hits += draw.search.hits;
+        }
+        for (int cell = 0; cell < 25; cell++) {
+            if (!Double.isNaN(result[cell])) {
+                result[cell] = game.score + gains[cell] +
+                        (total[cell] == 0 ? 0 : sums[cell] / total[cell]);
+            }
+        }
+        nanos = System.nanoTime() - start;
+        return result;
+    }
+
+    /*
+     * Forget all stored positions.
+     *
+     * Input : -
+     * Output: -
+     */
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        Arrays.fill(values, 0L);
+    }
+
+    /*
+     * Describe the statistics of the last call to solve().
+     *
+     * Input : -
+     * Output: The description (String).
+     */
+    public String report() {
+        double seconds = nanos / 1e9;
+        return String.format("%d nodes in %.3f s (%.0f nodes/sec), table hit rate %.1f%% of %d probes",
+                nodes, seconds, nodes / Math.max(seconds, 1e-9),
+                probes == 0 ? 0.0 : 100.0 * hits / probes, probes);
+    }
+
+    /*
+     * Mix the bits of a number, so that the xor or the sum of several
+     * mixed numbers serves as a hash (the finalizer of MurmurHash3).
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    /*
+     * The value of placing one card drawn after a position, searched on a
+     * thread of the pool with a search of its own.
+     */
+    private final class Draw {
+        final Search search;
+        final int cell;
+        final int card;
+        final int weight;
+        final int nrEmpty;
+        double value;
+
+        Draw(Search placed, int cell, int card, int weight, int nrEmpty) {
+            this.search = placed.copy();
+            this.cell = cell;
+            this.card = card;
+            this.weight = weight;
+            this.nrEmpty = nrEmpty;
+        }
+    }
+
+    /*
+     * Searches a range of draws, splitting it in halves.
+     */
+    private final class Draws extends RecursiveAction {
+        private final List<Draw> draws;
+
+        Draws(List<Draw> draws) {
+            this.draws = draws;
+        }
+
+        protected void compute() {
+            if (draws.size() > 1) {
+                int mid = draws.size() / 2;
+                invokeAll(new Draws(draws.subList(0, mid)),
+                        new Draws(draws.subList(mid, draws.size())));
+            }
+            else if (draws.size() == 1) {
+                Draw draw = draws.get(0);
+                draw.value = draw.search.best(draw.nrEmpty, draw.card, 1);
+            }
+        }
+    }
+
+    /*
+     * The state of one search: the lines, as in PokerGame, the cards on the
+     * board, the empty positions and what is needed to undo placements.
+     */
+    private final class Search {
+        private final int[] lineRanks = new int[PokerGame.NR_LINES];
+        private final int[] linePairs = new int[PokerGame.NR_LINES];
+        private final int[] lineSuits = new int[PokerGame.NR_LINES];
+        private final int[] lineFill = new int[PokerGame.NR_LINES];
+
+        /* Saved line state per search depth, to undo a placement. */
+        private final int[] undo = new int[(MAX_EMPTY + 1) * 16];
+
+        /* The cards that can be drawn per depth, with how many cards each
+         * one stands for. */
+        final int[][] cards = new int[MAX_EMPTY][52];
+        final int[][] weights = new int[MAX_EMPTY][52];
+
+        /* What classify() found: the live suits and their canonical names,
+         * the ranks a straight can use and the signature of the others. */
+        private int live;
+        private int relevant;
+        private final int[] names = new int[4];
+        private final long[] signature = new long[13];
+
+        /* Gains of each card at the last two positions. */
+        private final int[] gainA = new int[52];
+        private final int[] gainB = new int[52];
+        private final int[] rankCount = new int[13];
+        private final int[] plain = new int[13];
+        private final int[] flushed = new int[13];
+
+        /* Cards on the board, empty positions and their Zobrist hash. */
+        long used;
+        int empty;
+        long emptyHash;
+
+        long nodes;
+        long probes;
+        long hits;
+
+        Search copy() {
+            Search copy = new Search();
+            System.arraycopy(lineRanks, 0, copy.lineRanks, 0, lineRanks.length);
+            System.arraycopy(linePairs, 0, copy.linePairs, 0, linePairs.length);
+            System.arraycopy(lineSuits, 0, copy.lineSuits, 0, lineSuits.length);
+            System.arraycopy(lineFill, 0, copy.lineFill, 0, lineFill.length);
+            copy.used = used;
+            copy.empty = empty;
+            copy.emptyHash = emptyHash;
+            return copy;
+        }
+
+        /*
+         * Set up the line state, the used cards and the empty positions for
+         * a board.
+         */
+        void load(int[][] board) {
+            used = 0;
+            empty = 0;
+            emptyHash = 0;
+            for (int cell = 0; cell < 25; cell++) {
+                empty |= 1 << cell;
+                emptyHash ^= ZOBRIST[cell];
+            }
+            for (int cell = 0; cell < 25; cell++) {
+                int card = board[cell / 5][cell % 5];
+                if (card != -1) {
+                    place(cell, card, MAX_EMPTY);
+                }
+            }
+        }
+
+        /*
+         * Work out what matters about the current board: the suits in which
+         * an open line can still become a flush (every suit if an open line
+         * is still empty), their canonical names, the ranks that can still
+         * complete a straight, and the signature of every other rank.
+         */
+        private void classify() {
+            live = 0;
+            relevant = 0;
+            Arrays.fill(names, -1);
+            int named = 0;
+            boolean emptyLine = false;
+            for (int l = 0; l < PokerGame.NR_LINES; l++) {
+                int fill = lineFill[l];
+                if (fill == 5) {
+                    continue;
+                }
+                if (fill == 0) {
+                    emptyLine = true;
+                    continue;
+                }
+                int suits = lineSuits[l];
+                if ((suits & (suits - 1)) == 0) {
+                    live |= suits;
+                    int suit = Integer.numberOfTrailingZeros(suits);
+                    if (names[suit] < 0) {
+                        names[suit] = named++;
+                    }
+                }
+                if (linePairs[l] == 0) {
+                    for (int window : STRAIGHTS) {
+                        if ((lineRanks[l] & ~window) == 0) {
+                            relevant |= window;
+                        }
+                    }
+                }
+            }
+            if (emptyLine) {
+                live = 0xF;
+                relevant = 0x1FFF;
+            }
+
+            /* A rank that no straight can use only matters by where it is
+             * and how many of its cards are unseen. */
+            int other = ~relevant & 0x1FFF;
+            if (other == 0) {
+                return;
+            }
+            Arrays.fill(signature, 0L);
+            for (int l = 0; l < PokerGame.NR_LINES; l++) {
+                if (lineFill[l] == 5) {
+                    continue;
+                }
+                for (int ranks = lineRanks[l] & other; ranks != 0; ranks &= ranks - 1) {
+                    int rank = Integer.numberOfTrailingZeros(ranks);
+                    signature[rank] |= ((linePairs[l] >>> rank & 1) + 1L) << (2 * l);
+                }
+            }
+            long unseen = ~used & ALL_CARDS;
+            for (int suit = 0; suit < 4; suit++) {
+                for (int ranks = (int)(unseen >>> (13 * suit)) & other; ranks != 0;
+                        ranks &= ranks - 1) {
+                    int rank = Integer.numberOfTrailingZeros(ranks);
+                    if ((live & (1 << suit)) != 0) {
+                        signature[rank] |= 1L << (24 + names[suit]);
+                    }
+                    else {
+                        signature[rank] += 1L << 28;
+                    }
+                }
+            }
+        }
+
+        /*
+         * List the cards that can be drawn next at the given depth, after
+         * classify(): one card for all the unseen cards that play the same
+         * role, weighted by their number. Those are the cards of the dead
+         * suits with the same rank, and the cards of ranks that no straight
+         * can use with the same signature and suit.
+         *
+         * Input : The depth (int).
+         * Output: The number of cards listed (int).
+         */
+        int chances(int depth) {
+            long unseen = ~used & ALL_CARDS;
+            int[] drawn = cards[depth];
+            int[] weight = weights[depth];
+            int count = 0;
+            int other = ~relevant & 0x1FFF;
+            int done = 0;
+            for (int rank = 0; rank < 13; rank++) {
+                if ((done & (1 << rank)) != 0) {
+                    continue;
+                }
+                int same = 1;
+                if ((other & (1 << rank)) != 0) {
+                    for (int next = rank + 1; next < 13; next++) {
+                        if ((other & (1 << next)) != 0 && signature[next] == signature[rank]) {
+                            done |= 1 << next;
+                            same++;
+                        }
+                    }
+                }
+                int dead = 0;
+                int deadCard = 0;
+                for (int suit = 0; suit < 4; suit++) {
+                    int card = suit * 13 + rank;
+                    if ((unseen & (1L << card)) == 0) {
+                        continue;
+                    }
+                    if ((live & (1 << suit)) != 0) {
+                        drawn[count] = card;
+                        weight[count] = same;
+                        count++;
+                    }
+                    else {
+                        deadCard = card;
+                        dead++;
+                    }
+                }
+                if (dead > 0) {
+                    drawn[count] = deadCard;
+                    weight[count] = same * dead;
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /*
+         * The key of the canonical state after classify(), with the number
+         * of empty positions in the low bits.
+         */
+        private long key(int nrEmpty) {
+            long hash = emptyHash ^ mix((1L << 62) | relevant);
+            for (int l = 0; l < PokerGame.NR_LINES; l++) {
+                int fill = lineFill[l];
+                if (fill == 0 || fill == 5) {
+                    continue;
+                }
+                int suits = lineSuits[l];
+                int flush = (suits & (suits - 1)) == 0 ?
+                        names[Integer.numberOfTrailingZeros(suits)] + 1 : 0;
+                hash ^= mix(((long)l << 40) | ((long)flush << 26) |
+                        ((long)(linePairs[l] & relevant) << 13) | (lineRanks[l] & relevant));
+            }
+
+            /* Sums rather than xors from here: equal terms must not cancel. */
+            long unseen = ~used & ALL_CARDS;
+            long dead = 0;
+            for (int suit = 0; suit < 4; suit++) {
+                int ranks = (int)(unseen >>> (13 * suit)) & relevant;
+                if ((live & (1 << suit)) == 0) {
+                    dead += SPREAD[ranks];
+                }
+                else {
+                    /* A live suit on no line (an open line is empty) only
+                     * differs from the others by its unseen cards. */
+                    int name = names[suit] >= 0 ? names[suit] : 4 + ranks;
+                    hash += mix((1L << 50) | ((long)name << 13) | ranks);
+                }
+            }
+            hash += mix((1L << 60) | dead);
+            for (int ranks = ~relevant & 0x1FFF; ranks != 0; ranks &= ranks - 1) {
+                hash += mix((1L << 61) | signature[Integer.numberOfTrailingZeros(ranks)]);
+            }
+            return (hash & ~DEPTH_BITS) | nrEmpty;
+        }
+
+        /*
+         * The expected score still to be gained from the current board,
+         * when the next card is drawn from the unseen cards.
+         *
+         * Input : The number of empty positions (int) and search depth (int).
+         * Output: The expected gain (double).
+         */
+        double expect(int nrEmpty, int depth) {
+            if (nrEmpty == 0) {
+                return 0;
+            }
+            nodes++;
+            long unseen = ~used & ALL_CARDS;
+            if (nrEmpty == 1) {
+                /* No choice is left: the gain of the last position, averaged
+                 * over the unseen cards. */
+                int cell = Integer.numberOfTrailingZeros(empty);
+                int sum = 0;
+                for (long rest = unseen; rest != 0; rest &= rest - 1) {
+                    sum += gain(cell, Long.numberOfTrailingZeros(rest));
+                }
+                return sum / (double)Long.bitCount(unseen);
+            }
+
+            classify();
+            probes++;
+            long key = key(nrEmpty);
+            int bucket = (int)(key >>> 32) & bucketMask;
+            for (int slot = 2 * bucket; slot < 2 * bucket + 2; slot++) {
+                long value = values[slot];
+                if ((keys[slot] ^ value) == key) {
+                    hits++;
+                    return Double.longBitsToDouble(value);
+                }
+            }
+
+            if (nrEmpty == 2) {
+                double value = lastTwo(unseen);
+                store(bucket, key, nrEmpty, value);
+                return value;
+            }
+
+            double sum = 0;
+            int total = 0;
+            int count = chances(depth);
+            int[] drawn = cards[depth];
+            int[] weight = weights[depth];
+            for (int i = 0; i < count; i++) {
+                sum += weight[i] * best(nrEmpty, drawn[i], depth);
+                total += weight[i];
+            }
+            double value = sum / total;
+            store(bucket, key, nrEmpty, value);
+            return value;
+        }
+
+        /*
+         * The expected gain of the last two placements, without placing any
+         * card. Whichever card comes first, the second one is drawn from the
+         * rest, so the gain at the other position is the sum of its gains
+         * over the unseen cards, less the first card, plus what the first
+         * card adds when both positions are on one line.
+         *
+         * Input : The unseen cards (long).
+         * Output: The expected gain (double).
+         */
+        private double lastTwo(long unseen) {
+            int a = Integer.numberOfTrailingZeros(empty);
+            int b = Integer.numberOfTrailingZeros(empty & (empty - 1));
+            int sumA = 0;
+            int sumB = 0;
+            for (long rest = unseen; rest != 0; rest &= rest - 1) {
+                int card = Long.numberOfTrailingZeros(rest);
+                gainA[card] = gain(a, card);
+                gainB[card] = gain(b, card);
+                sumA += gainA[card];
+                sumB += gainB[card];
+            }
+
+            /* The line through both positions, if any. */
+            int shared = -1;
+            for (int l : PokerGame.CELL_LINES[a]) {
+                for (int m : PokerGame.CELL_LINES[b]) {
+                    if (l == m) {
+                        shared = l;
+                    }
+                }
+            }
+
+            /* On a shared line, what the second card adds after the first
+             * only depends on their ranks and on whether both are of the
+             * suit the line can still be a flush in: sum it per rank of the
+             * first card. */
+            int flushSuit = -1;
+            if (shared >= 0) {
+                sharedSums(shared, unseen);
+                flushSuit = Integer.numberOfTrailingZeros(lineSuits[shared]);
+            }
+
+            int total = Long.bitCount(unseen);
+            double sum = 0;
+            for (long rest = unseen; rest != 0; rest &= rest - 1) {
+                int first = Long.numberOfTrailingZeros(rest);
+                int both = 0;
+                if (shared >= 0) {
+                    both = plain[first % 13] + (first / 13 == flushSuit ? flushed[first % 13] : 0);
+                }
+                double toA = gainA[first] + (sumB - gainB[first] + both) / (double)(total - 1);
+                double toB = gainB[first] + (sumA - gainA[first] + both) / (double)(total - 1);
+                sum += Math.max(toA, toB);
+            }
+            return sum / total;
+        }
+
+        /*
+         * For a line with two empty positions, the sum over the unseen cards
+         * of the score of completing it with that card after a first one:
+         * plain[r] for a first card of rank r, and flushed[r] more when the
+         * first card is of the suit the line can still be a flush in.
+         */
+        private void sharedSums(int l, long unseen) {
+            int ranks = lineRanks[l];
+            int pairs = linePairs[l];
+            int suits = lineSuits[l];
+            int flushRanks = 0;
+            if ((suits & (suits - 1)) == 0) {
+                flushRanks = (int)(unseen >>> (13 * Integer.numberOfTrailingZeros(suits))) & 0x1FFF;
+            }
+            for (int rank = 0; rank < 13; rank++) {
+                int count = 0;
+                for (int suit = 0; suit < 4; suit++) {
+                    count += (int)(unseen >>> (13 * suit + rank)) & 1;
+                }
+                rankCount[rank] = count;
+            }
+            for (int first = 0; first < 13; first++) {
+                plain[first] = 0;
+                flushed[first] = 0;
+                if (rankCount[first] == 0) {
+                    continue;
+                }
+                int firstBit = 1 << first;
+                int ranks1 = ranks | firstBit;
+                int pairs1 = pairs | (ranks & firstBit);
+                for (int rank = 0; rank < 13; rank++) {
+                    int count = rankCount[rank] - (rank == first ? 1 : 0);
+                    int flushCount = (flushRanks >>> rank & 1) - (rank == first ? 1 : 0);
+                    if (count <= 0) {
+                        continue;
+                    }
+                    int bit = 1 << rank;
+                    /* Two suits: not a flush. */
+                    int mixed = HandEvaluator.lookup(ranks1 | bit, pairs1 | (ranks1 & bit), 0x3);
+                    plain[first] += count * mixed;
+                    if (flushCount > 0) {
+                        flushed[first] += HandEvaluator.lookup(ranks1 | bit,
+                                pairs1 | (ranks1 & bit), suits) - mixed;
+                    }
+                }
+            }
+        }
+
+        /*
+         * The best expected gain of placing a drawn card.
+         *
+         * Input : The number of empty positions (int), the card (int) and
+         *         search depth (int).
+         * Output: The expected gain (double).
+         */
+        double best(int nrEmpty, int card, int depth) {
+            double best = Double.NEGATIVE_INFINITY;
+            for (int rest = empty; rest != 0; rest &= rest - 1) {
+                int cell = Integer.numberOfTrailingZeros(rest);
+                double value;
+                if (nrEmpty == 1) {
+                    value = gain(cell, card);
+                }
+                else {
+                    value = place(cell, card, depth);
+                    value += expect(nrEmpty - 1, depth + 1);
+                    remove(cell, card, depth);
+                }
+                if (value > best) {
+                    best = value;
+                }
+            }
+            return best;
+        }
+
+        /*
+         * The score gained by placing a card, without placing it.
+         */
+        private int gain(int cell, int card) {
+            int rankBit = 1 << (card % 13);
+            int suitBit = 1 << (card / 13);
+            int gained = 0;
+            for (int l : PokerGame.CELL_LINES[cell]) {
+                if (lineFill[l] == 4) {
+                    gained += HandEvaluator.lookup(lineRanks[l] | rankBit,
+                            linePairs[l] | (lineRanks[l] & rankBit), lineSuits[l] | suitBit);
+                }
+            }
+            return gained;
+        }
+
+        /*
+         * Place a card, saving the old line state at the given depth.
+         *
+         * Input : The position (int), the card (int) and the depth (int).
+         * Output: The score gained (int).
+         */
+        int place(int cell, int card, int depth) {
+            int rankBit = 1 << (card % 13);
+            int suitBit = 1 << (card / 13);
+            int gained = 0;
+            int[] lines = PokerGame.CELL_LINES[cell];
+            for (int i = 0; i < lines.length; i++) {
+                int l = lines[i];
+                int saved = depth * 16 + i * 4;
+                undo[saved] = lineRanks[l];
+                undo[saved + 1] = linePairs[l];
+                undo[saved + 2] = lineSuits[l];
+                undo[saved + 3] = lineFill[l];
+
+                linePairs[l] |= lineRanks[l] & rankBit;
+                lineRanks[l] |= rankBit;
+                lineSuits[l] |= suitBit;
+                if (++lineFill[l] == 5) {
+                    gained += HandEvaluator.lookup(lineRanks[l], linePairs[l], lineSuits[l]);
+                }
+            }
+            used |= 1L << card;
+            empty &= ~(1 << cell);
+            emptyHash ^= ZOBRIST[cell];
+            return gained;
+        }
+
+        /*
+         * Undo the placement made at the given depth.
+         */
+        private void remove(int cell, int card, int depth) {
+            int[] lines = PokerGame.CELL_LINES[cell];
+            for (int i = 0; i < lines.length; i++) {
+                int l = lines[i];
+                int saved = depth * 16 + i * 4;
+                lineRanks[l] = undo[saved];
+                linePairs[l] = undo[saved + 1];
+                lineSuits[l] = undo[saved + 2];
+                lineFill[l] = undo[saved + 3];
+            }
+            used &= ~(1L << card);
+            empty |= 1 << cell;
+            emptyHash ^= ZOBRIST[cell];
+        }
+    }
+
+    /*
+     * Store a value, keeping the deeper of the first entry of the bucket and
+     * always replacing the second.
+     */
+    private void store(int bucket, long key, int nrEmpty, double value) {
+        int slot = 2 * bucket;
+        long old = keys[slot] ^ values[slot];
+        if (old != 0 && (old & DEPTH_BITS) > nrEmpty) {
+            slot += 1;
+        }
+        long bits = Double.doubleToRawLongBits(value);
+        values[slot] = bits;
+        keys[slot] = key ^ bits;
+    }
+
+    /*
+     * Main function. Plays a game until the given number of positions is
+     * left, then solves the remaining placements one by one.
+     *
+     * Input : Empty positions, memory in megabytes, seed and threads
+     *         (String[]).
+     * Output: -
+     */
+    public static void main(String[] args) {
+        int nrEmpty = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+        long memory = args.length > 1 ? Long.parseLong(args[1]) << 20 : DEFAULT_MEMORY;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : System.nanoTime();
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) :
+                Runtime.getRuntime().availableProcessors();
+
+        Random rnd = new Random(seed);
+        PokerGame game = new PokerGame();
+        game.reset(rnd);
+        PlacementPolicy policy = new MonteCarloPolicy(Simulator.MONTE_CARLO_ROLLOUTS);
+        while (25 - game.nr_used > nrEmpty) {
+            int cell = policy.choose(game, game.deck.get(0), rnd);
+            game.place(cell / 5, cell % 5);
+        }
+
+        EndgameSolver solver = new EndgameSolver(memory, threads);
+        while (game.nr_used < 25) {
+            double[] values = solver.solve(game);
+            int cell = PlacementAdvisor.best(values);
+            System.out.printf("%2d empty: card %2d to (%d,%d), expected final score %.3f%n",
+                    25 - game.nr_used, game.deck.get(0), cell / 5, cell % 5, values[cell]);
+            System.out.println("    " + solver.report());
+            game.place(cell / 5, cell % 5);
+        }
+        System.out.println("Final score: " + game.score);
+    }
+}
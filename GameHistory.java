@@ -0,0 +1,202 @@
+/*
+ * GameHistory.java
+ *
+ * This file contains the undo and redo history of a game, with the branches
+ * of placements that were taken back and then made differently.
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/*
+ * Keeps a game in step with a tree of snapshots (see Snapshot). Undo takes
+ * back the last placement and restores the score from the snapshot before
+ * it; redo makes the placement again. Making a different placement after an
+ * undo starts a new branch, and the placements taken back are kept as a
+ * branch that can be switched to later, to compare "what if I had placed it
+ * there".
+ *
+ * The snapshots of the branches share their common start, and the branches
+ * are kept as long as all snapshots together fit in the memory budget; the
+ * oldest branches are dropped first.
+ */
+public class GameHistory {
+    /* The memory budget, unless given otherwise: 256 KB. */
+    public static final long DEFAULT_BUDGET = 256 * 1024;
+
+    /* The game that follows the history. */
+    public final PokerGame game;
+    private final long budget;
+
+    /* The state of the game, the placements taken back (the last undone
+     * first) and the last snapshots of the other branches (oldest first). */
+    private Snapshot current = null;
+    private final ArrayDeque<Snapshot> redo = new ArrayDeque<Snapshot>();
+    private final List<Snapshot> branches = new ArrayList<Snapshot>();
+
+    /*
+     * Create the history of a game.
+     *
+     * Input : The game (PokerGame) and the memory budget (long, in bytes).
+     * Output: -
+     */
+    public GameHistory(PokerGame game, long budget) {
+        this.game = game;
+        this.budget = budget;
+    }
+
+    /*
+     * Start over from the current state of the game, e.g. after a reset.
+     *
+     * Input : -
+     * Output: -
+     */
+    public void start() {
+        current = Snapshot.of(game);
+        redo.clear();
+        branches.clear();
+    }
+
+    /*
+     * Record the placement the game has just made. The placements that were
+     * taken back are kept as a branch, unless this is the same placement.
+     *
+     * Input : -
+     * Output: -
+     */
+    public void placed() {
+        if (current == null) {
+            start();
+            return;
+        }
+        int cell = game.moves[game.nr_used - 1];
+        if (!redo.isEmpty() && redo.peekFirst().cell == cell) {
+            current = redo.pollFirst();
+            return;
+        }
+        if (!redo.isEmpty()) {
+            branches.add(redo.peekLast());
+            redo.clear();
+        }
+        current = current.child(cell, game.score);
+        trim();
+    }
+
+    public boolean canUndo() {
+        return current != null && current.parent != null;
+    }
+
+    public boolean canRedo() {
+        return !redo.isEmpty();
+    }
+
+    /*
+     * The number of other branches that can be switched to.
+     */
+    public int branchCount() {
+        return branches.size();
+    }
+
+    /*
+     * Take back the last placement.
+     *
+     * Input : -
+     * Output: Whether there was a placement to take back (boolean).
+     */
+    public boolean undo() {
+        if (!canUndo()) {
+            return false;
+        }
+        game.undo(current.parent.score);
+        redo.addFirst(current);
+        current = current.parent;
+        return true;
+    }
+
+    /*
+     * Make the last placement taken back again.
+     *
+     * Input : -
+     * Output: Whether there was a placement to make (boolean).
+     */
+    public boolean redo() {
+        if (!canRedo()) {
+            return false;
+        }
+        Snapshot next = redo.pollFirst();
+        game.place(next.cell / game.size, next.cell % game.size);
+        current = next;
+        return true;
+    }
+
+    /*
+     * Switch to the most recent other branch, at the furthest placement it
+     * reached. The branch left behind becomes the oldest, so repeated
+     * switches visit all branches in turn.
+     *
+     * Input : -
+     * Output: Whether there was a branch to switch to (boolean).
+     */
+    public boolean switchBranch() {
+        if (branches.isEmpty()) {
+            return false;
+        }
+        Snapshot target = branches.remove(branches.size() - 1);
+        Snapshot tip = redo.isEmpty() ? current : redo.peekLast();
+        branches.add(0, tip);
+
+        /* Go back to where the branches part and follow the other one. */
+        Snapshot fork = Snapshot.common(current, target);
+        while (current != fork) {
+            game.undo(current.parent.score);
+            current = current.parent;
+        }
+        redo.clear();
+        for (Snapshot s = target; s != fork; s = s.parent) {
+            redo.addFirst(s);
+        }
+        while (!redo.isEmpty()) {
+            redo();
+        }
+        return true;
+    }
+
+    /*
+     * The memory taken by the snapshots of all branches, counting the shared
+     * ones once.
+     *
+     * Input : -
+     * Output: The size (long, in bytes).
+     */
+    public long retainedBytes() {
+        Map<Snapshot, Boolean> seen = new IdentityHashMap<Snapshot, Boolean>();
+        count(current, seen);
+        if (!redo.isEmpty()) {
+            count(redo.peekLast(), seen);
+        }
+        for (Snapshot tip : branches) {
+            count(tip, seen);
+        }
+        return (long)seen.size() * Snapshot.BYTES;
+    }
+
+    private static void count(Snapshot tip, Map<Snapshot, Boolean> seen) {
+        Snapshot s = tip;
+        while (s != null && seen.put(s, Boolean.TRUE) == null) {
+            s = s.parent;
+        }
+    }
+
+    /*
+     * Drop the oldest branches until the snapshots fit in the budget.
+     */
+    private void trim() {
+        while (!branches.isEmpty() && retainedBytes() > budget) {
+            branches.remove(0);
+        }
+    }
+}
@@ -0,0 +1,393 @@
+/*
+ * GameJournal.java
+ *
+ * This file contains the journal of played games, from which every game can
+ * be replayed (see JournalVerifier).
+ */
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import java.util.Arrays;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/*
+ * An append-only journal of complete games, split over segment files of a
+ * fixed number of records. Each game is a 40-byte record:
+ *
+ *   bytes  0-1   the final score (unsigned)
+ *   bytes  2-36  the 25 placements in order, 11 bits each (card * 25 + cell)
+ *   byte   37    a checksum of bytes 0-36
+ *   bytes 38-39  reserved (zero)
+ *
+ * The placements hold the whole deck order that was used, so a record can
+ * be replayed without the generator that shuffled the deck. Every segment
+ * starts with a 16-byte header (magic, version, record size), after which
+ * the records follow back to back. A journal continues the last segment of
+ * its directory while that has room, so the user interface does not leave a
+ * nearly empty segment behind on every start; a torn record at the end of
+ * that segment is cut off first.
+ */
+public class GameJournal implements Closeable {
+    /* The default journal directory of the user interface. */
+    public static final String DIRECTORY = "journal";
+
+    /* Layout of a segment. */
+    public static final int MAGIC = 0x504B474A;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int RECORD_SIZE = 40;
+    public static final int CHECKSUM = 37;
+
+    /* Default number of games per segment (40 MB). */
+    public static final int DEFAULT_SEGMENT_RECORDS = 1 << 20;
+
+    /* Bits per placement. */
+    private static final int STEP_BITS = 11;
+
+    /* The journal of the user interface, created on first use. */
+    private static GameJournal shared = null;
+    private static ExecutorService sharedWriter = null;
+    private static final AtomicLong sharedFailed = new AtomicLong();
+    private static volatile Exception sharedError = null;
+
+    private final File directory;
+    private final int segmentRecords;
+    private final ByteBuffer buffer = ByteBuffer.allocate(256 * RECORD_SIZE)
+            .order(ByteOrder.LITTLE_ENDIAN);
+    private final byte[] record = new byte[RECORD_SIZE];
+    private int segment;
+    private RandomAccessFile file = null;
+    private FileChannel channel = null;
+    private long inSegment = 0;
+    private long written = 0;
+
+    /*
+     * Open a journal in a directory, creating the directory if needed.
+     *
+     * Input : The directory (File) and the games per segment (int).
+     * Output: -
+     */
+    public GameJournal(File directory, int segmentRecords) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+        File[] existing = segments(directory);
+        segment = existing.length == 0 ? 0 : number(existing[existing.length - 1]) + 1;
+        if (existing.length > 0) {
+            reopen(existing[existing.length - 1]);
+        }
+    }
+
+    /*
+     * Continue a segment if its header is valid and it is not full.
+     *
+     * Input : The segment (File).
+     * Output: -
+     */
+    private void reopen(File path) throws IOException {
+        RandomAccessFile last = new RandomAccessFile(path, "rw");
+        FileChannel lastChannel = last.getChannel();
+        long size = lastChannel.size();
+        long records = (size - HEADER_SIZE) / RECORD_SIZE;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        if (size >= HEADER_SIZE) {
+            while (header.hasRemaining()) {
+                lastChannel.read(header, header.position());
+            }
+        }
+        if (size < HEADER_SIZE || header.getInt(0) != MAGIC || header.getInt(4) != VERSION ||
+                header.getInt(8) != RECORD_SIZE || records >= segmentRecords) {
+            last.close();
+            return;
+        }
+        lastChannel.truncate(HEADER_SIZE + records * RECORD_SIZE);
+        file = last;
+        channel = lastChannel;
+        inSegment = records;
+    }
+
+    /*
+     * The segment files of a journal, in order.
+     *
+     * Input : The directory (File).
+     * Output: The segments (File[]), empty if there are none.
+     */
+    public static File[] segments(File directory) {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.matches("journal-\\d{6}\\.bin");
+            }
+        });
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static int number(File segment) {
+        String name = segment.getName();
+        return Integer.parseInt(name.substring(8, 14));
+    }
+
+    /*
+     * Add a finished game.
+     *
+     * Input : The game (PokerGame), with all 25 positions filled.
+     * Output: -
+     */
+    public synchronized void append(PokerGame game) throws IOException {
+        encode(game, record, 0);
+        append(record, 0, 1);
+    }
+
+    /*
+     * Add a number of encoded games.
+     *
+     * Input : The records (byte[]), the offset of the first (int) and the
+     *         number of records (int).
+     * Output: -
+     */
+    public synchronized void append(byte[] records, int offset, int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            if (buffer.remaining() < RECORD_SIZE) {
+                flush();
+            }
+            buffer.put(records, offset + i * RECORD_SIZE, RECORD_SIZE);
+        }
+    }
+
+    /*
+     * Write the buffered games to the segment files.
+     *
+     * Input : -
+     * Output: -
+     */
+    public synchronized void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            if (channel == null || inSegment == segmentRecords) {
+                nextSegment();
+            }
+            int n = (int)Math.min(buffer.remaining() / RECORD_SIZE, segmentRecords - inSegment);
+            ByteBuffer part = buffer.duplicate();
+            part.limit(part.position() + n * RECORD_SIZE);
+            long position = HEADER_SIZE + inSegment * RECORD_SIZE;
+            while (part.hasRemaining()) {
+                position += channel.write(part, position);
+            }
+            buffer.position(part.limit());
+            inSegment += n;
+            written += n;
+        }
+        buffer.clear();
+    }
+
+    /* The number of games written to the segment files. */
+    public synchronized long written() {
+        return written;
+    }
+
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+            if (channel != null) {
+                channel.force(false);
+            }
+        }
+        finally {
+            if (file != null) {
+                file.close();
+                file = null;
+                channel = null;
+            }
+        }
+    }
+
+    private void nextSegment() throws IOException {
+        if (file != null) {
+            channel.force(false);
+            file.close();
+        }
+        File path = new File(directory, String.format("journal-%06d.bin", segment++));
+        file = new RandomAccessFile(path, "rw");
+        channel = file.getChannel();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putInt(0);
+        header.flip();
+        channel.write(header, 0);
+        inSegment = 0;
+    }
+
+    /*
+     * Encode a finished game into a record.
+     *
+     * Input : The game (PokerGame), the target (byte[]) and offset (int).
+     * Output: -
+     */
+    public static void encode(PokerGame game, byte[] out, int offset) {
+        if (!game.rules.isStandard()) {
+            throw new IllegalArgumentException("Only standard games are journaled.");
+        }
+        if (game.nr_used != 25) {
+            throw new IllegalArgumentException("The game is not finished.");
+        }
+        Arrays.fill(out, offset, offset + RECORD_SIZE, (byte)0);
+        out[offset] = (byte)game.score;
+        out[offset + 1] = (byte)(game.score >>> 8);
+        long bits = 0;
+        int nrBits = 0;
+        int at = offset + 2;
+        for (int step = 0; step < 25; step++) {
+            int cell = game.moves[step];
+            int card = game.board[cell / 5][cell % 5];
+            bits |= (long)(card * 25 + cell) << nrBits;
+            nrBits += STEP_BITS;
+            while (nrBits >= 8) {
+                out[at++] = (byte)bits;
+                bits >>>= 8;
+                nrBits -= 8;
+            }
+        }
+        out[at] = (byte)bits;
+        out[offset + CHECKSUM] = checksum(out, offset);
+    }
+
+    /*
+     * Decode the placements of a record.
+     *
+     * Input : The record (ByteBuffer, read from its position, which is left
+     *         unchanged), and the cards (int[25]) and cells (int[25]) to fill.
+     * Output: The stored final score (int), or -1 if the record is corrupt.
+     */
+    public static int decode(ByteBuffer in, int[] cards, int[] cells) {
+        int base = in.position();
+        byte sum = 0;
+        for (int i = 0; i < CHECKSUM; i++) {
+            sum = (byte)(sum * 31 + in.get(base + i));
+        }
+        if (sum != in.get(base + CHECKSUM)) {
+            return -1;
+        }
+        long bits = 0;
+        int nrBits = 0;
+        int at = base + 2;
+        long seen = 0;
+        int free = (1 << 25) - 1;
+        for (int step = 0; step < 25; step++) {
+            while (nrBits < STEP_BITS) {
+                bits |= (long)(in.get(at++) & 0xFF) << nrBits;
+                nrBits += 8;
+            }
+            int value = (int)(bits & ((1 << STEP_BITS) - 1));
+            bits >>>= STEP_BITS;
+            nrBits -= STEP_BITS;
+            int card = value / 25;
+            int cell = value % 25;
+            /* Every card and every position may only be used once. */
+            if (card >= 52 || (seen & (1L << card)) != 0 || (free & (1 << cell)) == 0) {
+                return -1;
+            }
+            seen |= 1L << card;
+            free &= ~(1 << cell);
+            cards[step] = card;
+            cells[step] = cell;
+        }
+        return (in.get(base) & 0xFF) | (in.get(base + 1) & 0xFF) << 8;
+    }
+
+    private static byte checksum(byte[] record, int offset) {
+        byte sum = 0;
+        for (int i = 0; i < CHECKSUM; i++) {
+            sum = (byte)(sum * 31 + record[offset + i]);
+        }
+        return sum;
+    }
+
+    /*
+     * Queue a finished game for the journal of the user interface, which is
+     * written on a background thread and closed when the program exits.
+     *
+     * Input : The game (PokerGame).
+     * Output: -
+     */
+    public static synchronized void submit(PokerGame game) {
+        final byte[] encoded = new byte[RECORD_SIZE];
+        encode(game, encoded, 0);
+        if (sharedWriter == null) {
+            sharedWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "game-journal");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                public void run() {
+                    closeShared();
+                }
+            }, "game-journal-shutdown"));
+        }
+        sharedWriter.execute(new Runnable() {
+            public void run() {
+                try {
+                    if (shared == null) {
+                        shared = new GameJournal(new File(DIRECTORY), DEFAULT_SEGMENT_RECORDS);
+                    }
+                    shared.append(encoded, 0, 1);
+                    shared.flush();
+                }
+                catch (IOException e) {
+                    sharedError = e;
+                    sharedFailed.incrementAndGet();
+                }
+            }
+        });
+    }
+
+    /* The number of games the shared journal failed to write. */
+    public static long sharedFailed() {
+        return sharedFailed.get();
+    }
+
+    /* The last error of the shared journal, or null. */
+    public static Exception sharedError() {
+        return sharedError;
+    }
+
+    private static void closeShared() {
+        ExecutorService writer;
+        synchronized (GameJournal.class) {
+            writer = sharedWriter;
+        }
+        writer.shutdown();
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+            if (shared != null) {
+                shared.close();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (IOException e) {
+            sharedError = e;
+        }
+    }
+}
@@ -13,14 +13,17 @@ import javax.swing.JOptionPane;
 
 import java.awt.Color;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Dimension;
+import java.awt.Rectangle;
+
+import java.awt.image.VolatileImage;
 
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseMotionAdapter;
 import java.awt.event.MouseEvent;
 
-import java.io.File;
-import java.io.FileWriter;
+import java.lang.management.ManagementFactory;
 
 /*
  * The primary panel of the poker game. This panel displays the poker cards
@@ -29,38 +32,98 @@ import java.io.FileWriter;
  */
 public class GamePanel extends JPanel {
     /* Instance of the poker game itself. */
-    public PokerGame game = new PokerGame();
+    public PokerGame game;
+    
+    /* Undo, redo and the branches of the current round. */
+    public GameHistory history;
+    /* Whether the score of the current round has been recorded. */
+    private boolean recorded = false;
     
     /* Add a status bar to show the score. */
     public StatusBar status = new StatusBar();
     
-    /* Coordinates for the pile of new cards. */
-    public final int originalX = 50;
-    public final int originalY = 314;
-    /* Additional coordinates to help drag new cards to the board. */
-    public int diffX = 0;
-    public int diffY = 0;
-    public int mouseX = originalX;
-    public int mouseY = originalY;
-    
-    /* Coordinates of the 5x5 grid. */
+    /* Coordinates of the grid. */
     public int cardboardX = 240;
     public int cardboardY = 28;
     public int offsetX = 100;
     public int offsetY = 140;
     
+    /* Coordinates for the pile of new cards, halfway down the grid. */
+    public final int originalX = 50;
+    public final int originalY;
+    /* Additional coordinates to help drag new cards to the board. */
+    public int diffX = 0;
+    public int diffY = 0;
+    public int mouseX;
+    public int mouseY;
+    
     /* Boolean to track the use of the mouse click. */
     public boolean pressed = false;
+    
+    /* Whether the first frame has been drawn (to report the startup time). */
+    private boolean painted = false;
+    /* When the last frame of the current drag was drawn, or 0 (for Metrics). */
+    private long lastDragFrame = 0;
+    
+    /* Midly dark green as main board color. */
+    private static final Color BOARD_COLOR = new Color(50,200,50);
+    
+    /*
+     * Cached image of everything except the dragged card: the background,
+     * the grid, the placed cards and the pile outline. It is only redrawn
+     * when the board changes, so a drag just copies the damaged area.
+     */
+    private VolatileImage layer = null;
+    private boolean layerDirty = true;
+    
+    /*
+     * The placement hints: the expected final score of each position for the
+     * card on the pile, refined in the background and drawn over the layer.
+     */
+    private boolean showHints = false;
+    private HintEngine hintEngine = null;
+    private double[] hints = null;
+    private boolean hintsDone = false;
+    
+    /*
+     * What paintHints() draws, worked out once per update of the hints: the
+     * shade and the label of each position and the best position. The
+     * shades run from red (worst) to green (best).
+     */
+    private static final Color[] HINT_SHADES = new Color[64];
+    private final int[] hintShade;
+    private final String[] hintLabels;
+    private int hintBest = -1;
+    
+    static {
+        for (int k = 0; k < HINT_SHADES.length; k++) {
+            float t = k / (float)(HINT_SHADES.length - 1);
+            HINT_SHADES[k] = new Color(1 - t, t, 0f, 0.35f);
+        }
+    }
 
+    public GamePanel() {
+        this(Rules.STANDARD);
+    }
+    
     /*
      * Create the board and set the mouse activities.
      *
-     * Input : -
+     * Input : The rules of the game (Rules).
      * Output: -
      */
-    public GamePanel() {
-        /* Midly dark green as main board color. */
-        setBackground(new Color(50,200,50));
+    public GamePanel(Rules rules) {
+        game = new PokerGame(rules);
+        history = new GameHistory(game, GameHistory.DEFAULT_BUDGET);
+        originalY = 314 + (game.size - 5) * offsetY / 2;
+        mouseX = originalX;
+        mouseY = originalY;
+        hintShade = new int[game.nr_cells];
+        hintLabels = new String[game.nr_cells];
+        setPreferredSize(new Dimension(cardboardX + game.size * offsetX,
+                cardboardY + game.size * offsetY));
+        setBackground(BOARD_COLOR);
+        setOpaque(true);
         
         /*
          * Mouse listener ofr both mouse clicks and mouse movements.
@@ -73,8 +136,8 @@ public class GamePanel extends JPanel {
             public void mousePressed(MouseEvent e) {
                 if (pressed == false && game.state == "play") {
                     if (e.getX() > originalX && e.getX() < originalX +
-                            game.cwidth && e.getY() > originalY && e.getY() <
-                            originalY + game.cheight) {
+                            CardArt.cwidth && e.getY() > originalY && e.getY() <
+                            originalY + CardArt.cheight) {
                         diffX = e.getX() - originalX;
                         diffY = e.getY() - originalY; 
                         pressed = true; 
@@ -91,26 +154,37 @@ public class GamePanel extends JPanel {
                 int ny = mouseY;
 
                 /* Check whether mouse coordinates are on the grid. */
-                for (int i = 0; i < 5; i++) {
-                    for (int j = 0; j < 5; j++) {
+                for (int i = 0; i < game.size; i++) {
+                    for (int j = 0; j < game.size; j++) {
                         int px = cardboardX + i*offsetX;
                         int py = cardboardY + j*offsetY;
-                        if (nx > px && nx < px + game.cwidth && ny > py &&
-                                ny < py + game.cheight) {
+                        if (nx > px && nx < px + CardArt.cwidth && ny > py &&
+                                ny < py + CardArt.cheight) {
                             /* Only place a new card on an empty spot. */
                             if (game.board[i][j] == -1) {
                                 /* Place the card and check for scores. */
-                                game.board[i][j] = game.deck.get(0);
-                                game.deck.remove(0);
-                                game.updateScore(i,j);
+                                game.place(i,j);
+                                history.placed();
+                                layerDirty = true;
+                                /* The old hints are for the card just placed. */
+                                startHints();
                                 status.setText("Score: " + game.score);
                                 
                                 /* Check whether the board is full. */
-                                if (game.nr_used == 25) {
-                                    game.state = "end";
+                                if (game.state == "end") {
+                                    /* Queue the score and the game for the records,
+                                     * only the first time the board is full. The
+                                     * records only hold standard games. */
+                                    if (!recorded && game.rules.isStandard()) {
+                                        recorded = true;
+                                        ScoreWriter.shared().submit(game.score);
+                                        GameJournal.submit(game);
+                                        ScoreStats.record(game);
+                                    }
+                                    
                                     /* Inform the user on the final score. */
                                     String endstring = "Final score: " + game.score;
-                                    if (game.score >= 75) {
+                                    if (game.won()) {
                                         endstring += "\nYour have WON!";
                                     }
                                     else {
@@ -118,29 +192,26 @@ public class GamePanel extends JPanel {
                                     }
                                     JOptionPane.showMessageDialog(null, endstring,
                                     "End of the Round", JOptionPane.PLAIN_MESSAGE);
-                                    
-                                    /* Write the score to file. */
-                                    try {
-                                        FileWriter writer = new FileWriter("stats.txt", true);
-                                        writer.write("" + game.score + "\n");
-                                        writer.close();
-                                    }
-                                    catch (Exception ex) {
-                                    
-                                    }
                                 }
                             }
                         }
                     }
                 }
                 
+                /* Repaint where the card was dropped and the pile. */
+                Rectangle damaged = dragBounds();
                 pressed = false;
                 mouseX = originalX;
                 mouseY = originalY;
                 diffX = 0;
                 diffY = 0;
                 
-                repaint();
+                if (layerDirty) {
+                    repaint();
+                }
+                else {
+                    repaint(damaged.union(dragBounds()));
+                }
             }
         });
         
@@ -150,42 +221,298 @@ public class GamePanel extends JPanel {
         addMouseMotionListener(new MouseMotionAdapter() {
             public void mouseDragged(MouseEvent e) {
                 if (pressed == true) {
+                    /* Only the old and the new position of the card change. */
+                    Rectangle old = dragBounds();
                     mouseX = e.getX();
                     mouseY = e.getY(); 
+                    repaint(old.union(dragBounds()));
                 }
-                repaint();
             }
         });
     }
     
     /*
-     * Diplay the current state of the game.
+     * Start a new round and redraw the board.
+     *
+     * Input : -
+     * Output: -
+     */
+    public void newGame() {
+        game.reset();
+        history.start();
+        recorded = false;
+        status.setText("Score: " + game.score);
+        layerDirty = true;
+        startHints();
+        repaint();
+    }
+    
+    /*
+     * Take back the last placement.
+     *
+     * Input : -
+     * Output: -
+     */
+    public void undo() {
+        if (!pressed && history.undo()) {
+            boardChanged();
+        }
+    }
+    
+    /*
+     * Make the last placement taken back again.
+     *
+     * Input : -
+     * Output: -
+     */
+    public void redo() {
+        if (!pressed && history.redo()) {
+            boardChanged();
+        }
+    }
+    
+    /*
+     * Switch to another branch of placements of this round.
+     *
+     * Input : -
+     * Output: -
+     */
+    public void switchBranch() {
+        if (!pressed && history.switchBranch()) {
+            boardChanged();
+        }
+    }
+    
+    /*
+     * Redraw the board after the history changed it.
+     */
+    private void boardChanged() {
+        String text = "Score: " + game.score;
+        if (history.branchCount() > 0) {
+            text += "   (other branches: " + history.branchCount() + ")";
+        }
+        status.setText(text);
+        layerDirty = true;
+        startHints();
+        repaint();
+    }
+    
+    /*
+     * Turn the placement hints on or off.
+     *
+     * Input : Whether to show the hints (boolean).
+     * Output: -
+     */
+    public void setShowHints(boolean show) {
+        /* The hints only know the standard game. */
+        showHints = show && game.rules.isStandard();
+        if (showHints && hintEngine == null) {
+            hintEngine = new HintEngine();
+        }
+        startHints();
+        repaint(gridBounds());
+    }
+    
+    /*
+     * Drop the current hints and, if they are shown, start computing the
+     * hints for the card on the pile. A computation that is still running
+     * is cancelled.
+     */
+    private void startHints() {
+        hints = null;
+        hintsDone = false;
+        if (hintEngine == null) {
+            return;
+        }
+        hintEngine.cancel();
+        if (showHints) {
+            hintEngine.start(game, new HintEngine.Listener() {
+                public void update(double[] estimates, boolean done) {
+                    setHints(estimates, done);
+                    repaint(gridBounds());
+                }
+            });
+        }
+    }
+    
+    /*
+     * Take new estimates and work out the shades and labels to draw.
+     */
+    private void setHints(double[] estimates, boolean done) {
+        hints = estimates;
+        hintsDone = done;
+        hintBest = PlacementAdvisor.best(estimates);
+        if (hintBest == -1) {
+            return;
+        }
+        double low = estimates[hintBest];
+        for (int cell = 0; cell < game.nr_cells; cell++) {
+            if (!Double.isNaN(estimates[cell]) && estimates[cell] < low) {
+                low = estimates[cell];
+            }
+        }
+        double range = estimates[hintBest] - low;
+        int top = HINT_SHADES.length - 1;
+        for (int cell = 0; cell < game.nr_cells; cell++) {
+            if (Double.isNaN(estimates[cell])) {
+                hintLabels[cell] = null;
+                continue;
+            }
+            hintShade[cell] = range > 0 ?
+                    (int)Math.round((estimates[cell] - low) / range * top) : top;
+            hintLabels[cell] = String.format("%.1f", estimates[cell]);
+        }
+    }
+    
+    /*
+     * The area covered by the grid, including the border of a highlight.
+     *
+     * Input : -
+     * Output: The bounds (Rectangle).
+     */
+    private Rectangle gridBounds() {
+        return new Rectangle(cardboardX - 4, cardboardY - 4,
+                (game.size - 1) * offsetX + CardArt.cwidth + 8,
+                (game.size - 1) * offsetY + CardArt.cheight + 8);
+    }
+    
+    /*
+     * The area covered by the card on the pile at its current position.
+     *
+     * Input : -
+     * Output: The bounds (Rectangle).
+     */
+    private Rectangle dragBounds() {
+        return new Rectangle(mouseX - diffX, mouseY - diffY,
+                CardArt.cwidth, CardArt.cheight);
+    }
+    
+    /*
+     * Diplay the current state of the game. The static part comes from the
+     * cached layer; only the card on the pile is drawn on top of it.
      */
     protected void paintComponent(Graphics g) {
-        /* Call parent method. */
-        super.paintComponent(g);
-        /* Set appropriate background color. */
-        setBackground(new Color(50,200,50));
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        long start = Metrics.PAINT.start();
+        
+        /* The time between the frames of a drag gives its frame rate. */
+        if (Metrics.ENABLED && pressed) {
+            long now = System.nanoTime();
+            if (lastDragFrame != 0) {
+                Metrics.DRAG_FRAME.record(now - lastDragFrame);
+            }
+            lastDragFrame = now;
+        }
+        else {
+            lastDragFrame = 0;
+        }
+        
+        do {
+            int status = VolatileImage.IMAGE_INCOMPATIBLE;
+            if (layer != null && layer.getWidth() == width &&
+                    layer.getHeight() == height) {
+                status = layer.validate(getGraphicsConfiguration());
+            }
+            /* (Re)create the layer when needed, e.g. after a resize. */
+            if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+                if (layer != null) {
+                    layer.flush();
+                }
+                layer = createVolatileImage(width, height);
+                if (layer == null) {
+                    /* Not displayable yet, draw directly. */
+                    paintBoard(g, width, height);
+                    break;
+                }
+                status = VolatileImage.IMAGE_RESTORED;
+            }
+            /* Redraw its contents when the board changed or they were lost. */
+            if (layerDirty || status == VolatileImage.IMAGE_RESTORED) {
+                Graphics2D lg = layer.createGraphics();
+                paintBoard(lg, width, height);
+                lg.dispose();
+                layerDirty = false;
+            }
+            g.drawImage(layer, 0, 0, this);
+        } while (layer.contentsLost());
+        
+        /* Draw the hints over the empty positions. */
+        if (hints != null && game.state == "play") {
+            paintHints(g);
+        }
+        
+        /* Draw the card on the pile, possibly while it is being dragged. */
+        if(game.state == "play") {
+            g.drawImage(CardArt.get(game.deck.get(0) % 52), mouseX - diffX,
+                    mouseY - diffY, this);
+        }
+        
+        /* Record the time from the start of the program to the first frame. */
+        if (!painted) {
+            painted = true;
+            Metrics.FIRST_FRAME.record(
+                    ManagementFactory.getRuntimeMXBean().getUptime() * 1000000L);
+        }
+        Metrics.PAINT.stop(start);
+    }
+    
+    /*
+     * Shade each empty position by its expected final score, and outline the
+     * best one. Nothing is allocated here; setHints() prepared it all.
+     */
+    private void paintHints(Graphics g) {
+        int best = hintBest;
+        if (best == -1) {
+            return;
+        }
+        for (int cell = 0; cell < game.nr_cells; cell++) {
+            if (hintLabels[cell] == null) {
+                continue;
+            }
+            int x = cardboardX + (cell / game.size) * offsetX;
+            int y = cardboardY + (cell % game.size) * offsetY;
+            g.setColor(HINT_SHADES[hintShade[cell]]);
+            g.fillRect(x, y, CardArt.cwidth, CardArt.cheight);
+            g.setColor(Color.BLACK);
+            g.drawString(hintLabels[cell], x + 6, y + 16);
+        }
+        /* White while the estimate is refined, yellow when it is final. */
+        int x = cardboardX + (best / game.size) * offsetX;
+        int y = cardboardY + (best % game.size) * offsetY;
+        g.setColor(hintsDone ? Color.YELLOW : Color.WHITE);
+        for (int k = 2; k <= 4; k++) {
+            g.drawRect(x - k, y - k, CardArt.cwidth - 1 + 2 * k, CardArt.cheight - 1 + 2 * k);
+        }
+    }
+    
+    /*
+     * Draw the static part of the board: the background, the grid with the
+     * placed cards and the outline of the pile.
+     */
+    private void paintBoard(Graphics g, int width, int height) {
+        g.setColor(BOARD_COLOR);
+        g.fillRect(0, 0, width, height);
+        g.setColor(getForeground());
         
         /* Draw the board grid and the possible cards on that grid. */
-        for (int i = 0; i < 5; i++) {
-            for (int j = 0; j < 5; j++) {
+        for (int i = 0; i < game.size; i++) {
+            for (int j = 0; j < game.size; j++) {
                 g.drawRect(cardboardX-1+i*offsetX,cardboardY-1+j*offsetY,
-                        game.cwidth+1, game.cheight+1);
+                        CardArt.cwidth+1, CardArt.cheight+1);
                 
                 if (game.board[i][j] >= 0) {
-                    g.drawImage(game.cards[game.board[i][j]], cardboardX+i*offsetX,
-                            cardboardY+j*offsetY, game.cwidth, game.cheight, this);
+                    g.drawImage(CardArt.get(game.board[i][j] % 52),
+                            cardboardX+i*offsetX, cardboardY+j*offsetY, this);
                 }
             }
         }
         
         /* Draw the pile where the new cards emerge. */
-        g.drawRect(originalX-1,originalY-1, game.cwidth+1, game.cheight+1);
-        if(game.state == "play") {
-            g.drawImage(game.cards[game.deck.get(0)], mouseX - diffX, mouseY - diffY,
-                    game.cwidth, game.cheight, this);
-        }
+        g.drawRect(originalX-1,originalY-1, CardArt.cwidth+1, CardArt.cheight+1);
     }
 }
 
@@ -0,0 +1,73 @@
+/*
+ * GamePool.java
+ *
+ * This file contains a pool of reusable game instances.
+ */
+
+import java.util.Random;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+
+/*
+ * A bounded, thread-safe pool of games. Games are reset when they are taken
+ * from the pool, so a caller always starts a fresh round. When the pool is
+ * empty a new game is created, and games returned to a full pool are left to
+ * the garbage collector.
+ */
+public class GamePool {
+    /* The idle games, and the rules of new ones. */
+    private final ArrayBlockingQueue<PokerGame> idle;
+    private final Rules rules;
+    
+    public GamePool(int capacity) {
+        this(capacity, Rules.STANDARD);
+    }
+    
+    /*
+     * Create a pool holding at most the given number of idle games.
+     *
+     * Input : The capacity (int) and the rules of the games (Rules).
+     * Output: -
+     */
+    public GamePool(int capacity, Rules rules) {
+        idle = new ArrayBlockingQueue<PokerGame>(capacity);
+        this.rules = rules;
+    }
+    
+    /*
+     * Take a game from the pool and start a new round.
+     *
+     * Input : The generator used to shuffle (Random), or null for the shared
+     *         one.
+     * Output: The game (PokerGame).
+     */
+    public PokerGame acquire(Random rnd) {
+        PokerGame game = idle.poll();
+        if (game == null) {
+            game = new PokerGame(rules);
+        }
+        game.reset(rnd);
+        return game;
+    }
+    
+    /*
+     * Return a game to the pool.
+     *
+     * Input : The game (PokerGame).
+     * Output: -
+     */
+    public void release(PokerGame game) {
+        idle.offer(game);
+    }
+    
+    /*
+     * The number of idle games in the pool.
+     *
+     * Input : -
+     * Output: The number of games (int).
+     */
+    public int size() {
+        return idle.size();
+    }
+}
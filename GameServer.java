@@ -0,0 +1,412 @@
+/*
+ * GameServer.java
+ *
+ * This file contains the headless server, which hosts games for many players
+ * over a simple text protocol on TCP.
+ *
+ * To run, type 'java GameServer [port] [idle seconds] [max sessions]
+ * [address]'. The server listens on the loopback address unless another
+ * address is given. The commands, one per line, are:
+ *
+ *   NEW                    start a game    -> OK <session> <card>
+ *   CARD <session>         the card to place -> OK <card> (-1 at the end)
+ *   PLACE <session> <i> <j> place the card on board[i][j]
+ *                                          -> OK <score> <next card>
+ *   SCORE <session>        -> OK <score> <placed cards>
+ *   END <session>          forget the game -> OK
+ *   STATS                  the finished games -> OK <games> <average> <p50>
+ *                                          <p90> <p99>
+ *   QUIT                   close the connection
+ *
+ * Any error is answered with 'ERR <message>'.
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import java.nio.charset.StandardCharsets;
+
+import java.security.SecureRandom;
+
+import java.util.Iterator;
+import java.util.Locale;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/*
+ * Keeps the sessions in a concurrent map, each holding the game as a
+ * BoardState (a few hundred bytes, against several kilobytes for a
+ * PokerGame with its boxed deck), with the same rules and scoring. Every
+ * connection is served by its own thread: a virtual thread when the Java
+ * runtime has them (21 and later), otherwise a thread from a cached pool. A
+ * session is not tied to a connection, so a player can reconnect and carry
+ * on; its number is a random 63-bit number, so that it cannot be guessed by
+ * the other players. Sessions that are not used for the idle time are
+ * removed by a sweeper thread.
+ */
+public class GameServer {
+    /* Defaults of the command line. */
+    public static final int DEFAULT_PORT = 7777;
+    public static final long DEFAULT_IDLE_SECONDS = 600;
+    public static final int DEFAULT_MAX_SESSIONS = 1000000;
+
+    /* The sessions by number, and the source of the numbers. */
+    private final ConcurrentHashMap<Long, Session> sessions =
+            new ConcurrentHashMap<Long, Session>();
+    private final SecureRandom sessionIds = new SecureRandom();
+    private final long idleNanos;
+    private final int maxSessions;
+
+    /* Counters for the status line. */
+    public final AtomicLong created = new AtomicLong();
+    public final AtomicLong evicted = new AtomicLong();
+    public final AtomicLong moves = new AtomicLong();
+
+    private final ExecutorService connections = newThreadPerTaskExecutor("game-server");
+    private final ScheduledExecutorService sweeper;
+    private ServerSocket socket = null;
+
+    /*
+     * A single game.
+     */
+    private static class Session {
+        final BoardState state = new BoardState();
+        volatile long lastUsed = System.nanoTime();
+    }
+
+    /*
+     * Create a server.
+     *
+     * Input : The idle time after which a session is removed (long, in
+     *         seconds) and the largest number of sessions (int).
+     * Output: -
+     */
+    public GameServer(long idleSeconds, int maxSessions) {
+        this.idleNanos = TimeUnit.SECONDS.toNanos(idleSeconds);
+        this.maxSessions = maxSessions;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "session-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long period = Math.max(1, idleSeconds / 4);
+        sweeper.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                evictIdle();
+            }
+        }, period, period, TimeUnit.SECONDS);
+    }
+
+    /*
+     * An executor that starts a new thread for every task: virtual threads if
+     * the runtime supports them, platform threads otherwise. The method is
+     * looked up at run time, so the code still builds for Java 17.
+     *
+     * Input : The name of the platform threads (String).
+     * Output: The executor (ExecutorService).
+     */
+    public static ExecutorService newThreadPerTaskExecutor(final String name) {
+        try {
+            return (ExecutorService)Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, name);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    /* Whether this runtime serves connections on virtual threads. */
+    public static boolean virtualThreads() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        }
+        catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /* The number of sessions in memory. */
+    public int size() {
+        return sessions.size();
+    }
+
+    /*
+     * Accept connections until the server is stopped.
+     *
+     * Input : The port (int), 0 for any free port.
+     * Output: -
+     */
+    public void serve(int port) throws IOException {
+        ServerSocket server = bind(port);
+        while (!server.isClosed()) {
+            final Socket client;
+            try {
+                client = server.accept();
+            }
+            catch (IOException e) {
+                if (server.isClosed()) {
+                    break;
+                }
+                System.err.println("Could not accept a connection: " + e);
+                continue;
+            }
+            connections.execute(new Runnable() {
+                public void run() {
+                    handle(client);
+                }
+            });
+        }
+    }
+
+    /*
+     * Open the listening socket on the loopback address, so serve() can run
+     * on another thread once the port is known.
+     *
+     * Input : The port (int), 0 for any free port.
+     * Output: The socket (ServerSocket).
+     */
+    public ServerSocket bind(int port) throws IOException {
+        return bind(InetAddress.getLoopbackAddress(), port);
+    }
+
+    /*
+     * Open the listening socket on the given address. Does nothing if the
+     * socket is open already.
+     *
+     * Input : The address (InetAddress) and the port (int).
+     * Output: The socket (ServerSocket).
+     */
+    public synchronized ServerSocket bind(InetAddress address, int port) throws IOException {
+        if (socket == null) {
+            socket = new ServerSocket();
+            socket.setReuseAddress(true);
+            socket.bind(new InetSocketAddress(address, port), 4096);
+        }
+        return socket;
+    }
+
+    /*
+     * Stop accepting connections and close the server.
+     *
+     * Input : -
+     * Output: -
+     */
+    public synchronized void stop() {
+        try {
+            if (socket != null) {
+                socket.close();
+            }
+        }
+        catch (IOException e) {
+            System.err.println("Could not close the server socket: " + e);
+        }
+        connections.shutdownNow();
+        sweeper.shutdownNow();
+    }
+
+    /*
+     * Serve one connection until it is closed or sends QUIT.
+     */
+    private void handle(Socket client) {
+        try {
+            client.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                    client.getInputStream(), StandardCharsets.US_ASCII));
+            Writer out = new BufferedWriter(new OutputStreamWriter(
+                    client.getOutputStream(), StandardCharsets.US_ASCII));
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.trim().equalsIgnoreCase("QUIT")) {
+                    break;
+                }
+                out.write(execute(line));
+                out.write('\n');
+                /* Only flush when no other request is waiting. */
+                if (!in.ready()) {
+                    out.flush();
+                }
+            }
+            out.flush();
+        }
+        catch (IOException e) {
+            System.err.println("Connection from " + client.getRemoteSocketAddress() +
+                    " failed: " + e);
+        }
+        finally {
+            try {
+                client.close();
+            }
+            catch (IOException e) {
+                System.err.println("Could not close the connection from " +
+                        client.getRemoteSocketAddress() + ": " + e);
+            }
+        }
+    }
+
+    /*
+     * Run a single command.
+     *
+     * Input : The command line (String).
+     * Output: The answer, without the line end (String).
+     */
+    public String execute(String line) {
+        String[] words = line.trim().split("\\s+");
+        String command = words[0].toUpperCase();
+        try {
+            if (command.equals("NEW")) {
+                return newGame();
+            }
+            if (command.equals("STATS")) {
+                ScoreStats stats = ScoreStats.shared();
+                return String.format(Locale.ROOT, "OK %d %.2f %d %d %d", stats.count(), stats.mean(),
+                        stats.quantile(0.5), stats.quantile(0.9), stats.quantile(0.99));
+            }
+            if (words.length < 2) {
+                return "ERR missing session";
+            }
+            long id = Long.parseLong(words[1]);
+            if (command.equals("END")) {
+                return sessions.remove(id) == null ? "ERR unknown session" : "OK";
+            }
+            Session session = sessions.get(id);
+            if (session == null) {
+                return "ERR unknown session";
+            }
+            session.lastUsed = System.nanoTime();
+            synchronized (session) {
+                BoardState state = session.state;
+                if (command.equals("CARD")) {
+                    return "OK " + card(state);
+                }
+                if (command.equals("SCORE")) {
+                    return "OK " + state.score + " " + state.nrUsed;
+                }
+                if (command.equals("PLACE")) {
+                    if (words.length < 4) {
+                        return "ERR usage: PLACE <session> <i> <j>";
+                    }
+                    int i = Integer.parseInt(words[2]);
+                    int j = Integer.parseInt(words[3]);
+                    if (i < 0 || i > 4 || j < 0 || j > 4) {
+                        return "ERR no position " + i + " " + j;
+                    }
+                    if (state.nrUsed == 25) {
+                        return "ERR game over";
+                    }
+                    if (state.cells[i * 5 + j] != -1) {
+                        return "ERR position taken";
+                    }
+                    state.place(i * 5 + j);
+                    moves.incrementAndGet();
+                    if (state.nrUsed == 25) {
+                        ScoreStats.record(state);
+                    }
+                    return "OK " + state.score + " " + card(state);
+                }
+            }
+            return "ERR unknown command " + words[0];
+        }
+        catch (NumberFormatException e) {
+            return "ERR not a number";
+        }
+    }
+
+    private String newGame() {
+        if (sessions.size() >= maxSessions) {
+            return "ERR too many sessions";
+        }
+        Session session = new Session();
+        session.state.reset(ThreadLocalRandom.current());
+        long id;
+        do {
+            id = sessionIds.nextLong() & Long.MAX_VALUE;
+        } while (sessions.putIfAbsent(id, session) != null);
+        created.incrementAndGet();
+        return "OK " + id + " " + session.state.card();
+    }
+
+    private static int card(BoardState state) {
+        return state.nrUsed == 25 ? -1 : state.card();
+    }
+
+    /*
+     * Remove the sessions that have not been used for the idle time.
+     */
+    private void evictIdle() {
+        long limit = System.nanoTime() - idleNanos;
+        Iterator<Session> it = sessions.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().lastUsed - limit < 0) {
+                it.remove();
+                evicted.incrementAndGet();
+            }
+        }
+    }
+
+    /*
+     * Main function. Starts the server and prints a status line every ten
+     * seconds.
+     *
+     * Input : Port, idle seconds, maximum number of sessions and address
+     *         (String[]).
+     * Output: -
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        long idle = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_IDLE_SECONDS;
+        int max = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_MAX_SESSIONS;
+        InetAddress address = args.length > 3 ? InetAddress.getByName(args[3]) :
+                InetAddress.getLoopbackAddress();
+
+        Metrics.publish();
+        final GameServer server = new GameServer(idle, max);
+        server.bind(address, port);
+        System.out.println("Serving on " + address.getHostAddress() + ", port " + port +
+                ", with " +
+                (virtualThreads() ? "virtual" : "platform") + " threads.");
+        Thread status = new Thread(new Runnable() {
+            public void run() {
+                while (true) {
+                    try {
+                        Thread.sleep(10000);
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    System.out.println("Sessions: " + server.size() + ", created: " +
+                            server.created.get() + ", evicted: " + server.evicted.get() +
+                            ", moves: " + server.moves.get());
+                }
+            }
+        }, "server-status");
+        status.setDaemon(true);
+        status.start();
+        server.serve(port);
+    }
+}
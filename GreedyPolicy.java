@@ -0,0 +1,41 @@
+/*
+ * GreedyPolicy.java
+ *
+ * This file contains the greedy placement policy.
+ */
+
+import java.util.Random;
+
+
+/*
+ * Place each card where it adds the most to the score right away. Ties are
+ * broken at random, which keeps the policy from filling the board in order.
+ * It plays by any rules.
+ */
+public class GreedyPolicy implements PlacementPolicy {
+    public int choose(PokerGame game, int card, Random rnd) {
+        int best = -1;
+        int bestGain = -1;
+        int ties = 0;
+        for (int cell = 0; cell < game.nr_cells; cell++) {
+            int x = cell / game.size;
+            int y = cell % game.size;
+            if (game.board[x][y] != -1) {
+                continue;
+            }
+            int gain = game.gain(x, y, card);
+            if (gain > bestGain) {
+                best = cell;
+                bestGain = gain;
+                ties = 1;
+            }
+            else if (gain == bestGain && rnd.nextInt(++ties) == 0) {
+                best = cell;
+            }
+        }
+        if (best == -1) {
+            throw new IllegalStateException("The board is full.");
+        }
+        return best;
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * HandEvaluator.java
+ *
+ * This file contains a table-driven evaluator for the score of a single line.
+ */
+
+
+/*
+ * Table-driven replacement for the Scores helper class. A line of five cards
+ * is reduced to three bit masks: the ranks that occur, the ranks that occur
+ * more than once and the suits that occur. Those masks index one precomputed
+ * table holding the score of every possible hand, so scoring a line takes a
+ * handful of bit operations and a single lookup, without allocating or
+ * modifying the caller's array.
+ *
+ * The scores are identical to the ones given by the original Scores logic,
+ * including its treatment of straights (0-1-2-3-12 is the only wrap-around).
+ */
+public final class HandEvaluator {
+    /* The hands of the score sheet (the categories) and their points. */
+    public static final int NOTHING = 0;
+    public static final int ONE_PAIR = 1;
+    public static final int TWO_PAIR = 2;
+    public static final int FLUSH = 3;
+    public static final int THREE_OF_A_KIND = 4;
+    public static final int FULL_HOUSE = 5;
+    public static final int STRAIGHT = 6;
+    public static final int FOUR_OF_A_KIND = 7;
+    public static final int STRAIGHT_FLUSH = 8;
+    public static final String[] HANDS = {"Nothing", "One pair", "Two pair", "Flush",
+            "Three of a kind", "Full house", "Straight", "Four of a kind", "Straight flush"};
+    public static final int[] POINTS = {0, 1, 3, 5, 6, 10, 12, 16, 30};
+
+    /* Size of the table, the largest index() plus one. */
+    public static final int TABLE_SIZE = 1 << 16;
+
+    /* Bits used for the rank mask, the pair count and the flush flag. */
+    private static final int RANK_BITS = 13;
+    private static final int PAIR_SHIFT = RANK_BITS;
+    private static final int FLUSH_SHIFT = RANK_BITS + 2;
+
+    /* Categories and scores of all hands, indexed by flush, number of pairs
+     * and rank mask. */
+    private static final byte[] CATEGORY = new byte[TABLE_SIZE];
+    private static final byte[] TABLE = new byte[TABLE_SIZE];
+
+    static {
+        for (int mask = 0; mask < (1 << RANK_BITS); mask++) {
+            for (int pairs = 0; pairs < 3; pairs++) {
+                CATEGORY[(pairs << PAIR_SHIFT) | mask] =
+                        (byte)computeCategory(mask, pairs, false, POINTS);
+                CATEGORY[(1 << FLUSH_SHIFT) | (pairs << PAIR_SHIFT) | mask] =
+                        (byte)computeCategory(mask, pairs, true, POINTS);
+            }
+        }
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            TABLE[i] = (byte)POINTS[CATEGORY[i]];
+        }
+    }
+
+    private HandEvaluator() {
+    }
+
+    /*
+     * Score a line of five cards.
+     *
+     * Input : The line (int[]), which is left untouched.
+     * Output: The score (int), or 0 if the line contains an empty place.
+     */
+    public static int score(int[] line) {
+        return score(line[0], line[1], line[2], line[3], line[4]);
+    }
+
+    /*
+     * Score a line given as five separate card indexes.
+     *
+     * Input : The cards (int, int, int, int, int).
+     * Output: The score (int), or 0 if one of the cards is -1.
+     */
+    public static int score(int c0, int c1, int c2, int c3, int c4) {
+        if ((c0 | c1 | c2 | c3 | c4) < 0) {
+            return 0;
+        }
+        int ranks = 0;
+        int pairs = 0;
+        int bit;
+
+        bit = 1 << (c0 % 13);
+        ranks |= bit;
+        bit = 1 << (c1 % 13);
+        pairs |= ranks & bit;
+        ranks |= bit;
+        bit = 1 << (c2 % 13);
+        pairs |= ranks & bit;
+        ranks |= bit;
+        bit = 1 << (c3 % 13);
+        pairs |= ranks & bit;
+        ranks |= bit;
+        bit = 1 << (c4 % 13);
+        pairs |= ranks & bit;
+        ranks |= bit;
+
+        int suits = (1 << (c0 / 13)) | (1 << (c1 / 13)) | (1 << (c2 / 13)) |
+                (1 << (c3 / 13)) | (1 << (c4 / 13));
+        return lookup(ranks, pairs, suits);
+    }
+
+    /*
+     * Score a full line from its summary masks.
+     *
+     * Input : The ranks present (int), the ranks present at least twice (int)
+     *         and the suits present (int), each as a bit mask.
+     * Output: The score (int).
+     */
+    public static int lookup(int rankMask, int pairMask, int suitMask) {
+        return TABLE[index(rankMask, pairMask, suitMask)];
+    }
+
+    /*
+     * The index of a full line in the tables, for callers that keep a table
+     * with their own points per category (see Rules).
+     *
+     * Input : The ranks, repeated ranks and suits present (int, int, int).
+     * Output: The index (int), below TABLE_SIZE.
+     */
+    public static int index(int rankMask, int pairMask, int suitMask) {
+        int flush = (suitMask & (suitMask - 1)) == 0 ? 1 : 0;
+        return (flush << FLUSH_SHIFT) | (Integer.bitCount(pairMask) << PAIR_SHIFT) | rankMask;
+    }
+
+    /*
+     * The category of the hand with the given index.
+     *
+     * Input : The index (int).
+     * Output: The category (int), one of NOTHING to STRAIGHT_FLUSH.
+     */
+    public static int category(int index) {
+        return CATEGORY[index];
+    }
+
+    /*
+     * The category of the hand with the given index under other points. A
+     * flush with a pair or more (only possible with several decks) counts
+     * as whichever of the two hands is worth more under those points.
+     *
+     * Input : The index (int) and the points per category (int[]).
+     * Output: The category (int), one of NOTHING to STRAIGHT_FLUSH.
+     */
+    public static int category(int index, int[] points) {
+        return computeCategory(index & ((1 << RANK_BITS) - 1), (index >>> PAIR_SHIFT) & 3,
+                (index >>> FLUSH_SHIFT) != 0, points);
+    }
+
+    /*
+     * Compute the category of a hand from its distinct ranks, the number of
+     * ranks that occur at least twice, whether all cards share a suit and
+     * the points that decide between a flush and a pair or more.
+     */
+    private static int computeCategory(int mask, int pairs, boolean flush, int[] points) {
+        int distinct = Integer.bitCount(mask);
+
+        if (distinct == 5 && pairs == 0) {
+            boolean straight = isStraight(mask);
+            if (straight && flush) {
+                return STRAIGHT_FLUSH;
+            }
+            if (straight) {
+                return STRAIGHT;
+            }
+            return flush ? FLUSH : NOTHING;
+        }
+
+        int hand;
+        if ((distinct == 1 || distinct == 2) && pairs == 1) {
+            /* Four or five of a kind. */
+            hand = FOUR_OF_A_KIND;
+        }
+        else if (distinct == 2 && pairs == 2) {
+            hand = FULL_HOUSE;
+        }
+        else if (distinct == 3 && pairs == 1) {
+            hand = THREE_OF_A_KIND;
+        }
+        else if (distinct == 3 && pairs == 2) {
+            hand = TWO_PAIR;
+        }
+        else if (distinct == 4 && pairs == 1) {
+            hand = ONE_PAIR;
+        }
+        else {
+            /* This combination cannot occur in a line of five cards. */
+            return NOTHING;
+        }
+
+        /* A flush (only possible with multiple decks) beats the weaker hands. */
+        if (flush && points[hand] < points[FLUSH]) {
+            return FLUSH;
+        }
+        return hand;
+    }
+
+    /*
+     * Test whether five distinct ranks form a straight.
+     */
+    private static boolean isStraight(int mask) {
+        int low = Integer.numberOfTrailingZeros(mask);
+        return (mask >>> low) == 0x1F || mask == 0x100F;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * HandEvaluatorCheck.java
+ *
+ * This file contains the equivalence check of HandEvaluator against the
+ * reference scoring in Scores.
+ *
+ * To run, type 'java HandEvaluatorCheck [random lines] [seed]', which scores
+ * all 2,598,960 hands of one deck and a number of random lines dealt from
+ * several decks with both, and exits with status 1 on any difference.
+ */
+
+import java.util.Arrays;
+import java.util.Random;
+
+
+/*
+ * Compares HandEvaluator.score with Scores.score on every five-card hand of
+ * a single deck (in increasing order, and a sample of them shuffled) and on
+ * random lines in which cards may repeat, as with multiple decks.
+ * HandEvaluator must also leave the line it is given untouched.
+ */
+public class HandEvaluatorCheck {
+    /* Largest number of differences that are printed. */
+    private static final int MAX_REPORTED = 20;
+
+    private long checked = 0;
+    private long mismatches = 0;
+    private final long[] hands = new long[HandEvaluator.HANDS.length];
+
+    /*
+     * Score a line with both and record the outcome.
+     *
+     * Input : The line (int[]).
+     * Output: -
+     */
+    public void check(int[] line) {
+        int[] before = line.clone();
+        int score = HandEvaluator.score(line);
+        int expected = Scores.score(line);
+        if (score != expected || !Arrays.equals(line, before)) {
+            if (mismatches < MAX_REPORTED) {
+                System.out.println("Line " + Arrays.toString(before) + ": scored " +
+                        score + ", expected " + expected +
+                        (Arrays.equals(line, before) ? "" : " (line modified)"));
+            }
+            mismatches += 1;
+        }
+        for (int h = 0; h < HandEvaluator.POINTS.length; h++) {
+            if (HandEvaluator.POINTS[h] == expected) {
+                hands[h] += 1;
+            }
+        }
+        checked += 1;
+    }
+
+    /*
+     * Check all hands of one deck. Every 97th hand is also checked in a
+     * shuffled order.
+     *
+     * Input : The generator for the shuffles (Random).
+     * Output: The number of hands (long).
+     */
+    public long checkAllHands(Random rnd) {
+        int[] line = new int[5];
+        int[] shuffled = new int[5];
+        long count = 0;
+        for (int a = 0; a < 52; a++) {
+            for (int b = a + 1; b < 52; b++) {
+                for (int c = b + 1; c < 52; c++) {
+                    for (int d = c + 1; d < 52; d++) {
+                        for (int e = d + 1; e < 52; e++) {
+                            line[0] = a;
+                            line[1] = b;
+                            line[2] = c;
+                            line[3] = d;
+                            line[4] = e;
+                            check(line);
+                            if (count % 97 == 0) {
+                                System.arraycopy(line, 0, shuffled, 0, 5);
+                                for (int i = 4; i > 0; i--) {
+                                    int j = rnd.nextInt(i + 1);
+                                    int t = shuffled[i];
+                                    shuffled[i] = shuffled[j];
+                                    shuffled[j] = t;
+                                }
+                                check(shuffled);
+                            }
+                            count += 1;
+                        }
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /*
+     * Check random lines in which a card may occur more than once.
+     *
+     * Input : The number of lines (int) and the generator (Random).
+     * Output: -
+     */
+    public void checkRepeatedCards(int count, Random rnd) {
+        int[] line = new int[5];
+        for (int n = 0; n < count; n++) {
+            /* Draw from a few ranks and suits, so that hands repeat often. */
+            int ranks = 2 + rnd.nextInt(12);
+            int suits = 1 + rnd.nextInt(4);
+            for (int k = 0; k < 5; k++) {
+                line[k] = rnd.nextInt(suits) * 13 + rnd.nextInt(ranks);
+            }
+            check(line);
+        }
+    }
+
+    /*
+     * Main function. Runs the checks and prints the totals.
+     *
+     * Input : Number of random lines and seed (String[]).
+     * Output: -
+     */
+    public static void main(String[] args) {
+        int random = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+
+        HandEvaluatorCheck check = new HandEvaluatorCheck();
+        Random rnd = new Random(seed);
+        long start = System.nanoTime();
+        long all = check.checkAllHands(rnd);
+        check.checkRepeatedCards(random, rnd);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println("Hands of one deck: " + all + ", random lines with repeated cards: " +
+                random + " (seed " + seed + ")");
+        System.out.printf("Lines checked: %d in %.3f s%n", check.checked, seconds);
+        for (int h = HandEvaluator.HANDS.length - 1; h >= 0; h--) {
+            System.out.printf("  %-16s %d%n", HandEvaluator.HANDS[h], check.hands[h]);
+        }
+        System.out.println("Mismatches: " + check.mismatches);
+        if (all != 2598960 || check.mismatches > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * HintEngine.java
+ *
+ * This file contains the background computation of the placement hints
+ * shown by the game panel.
+ */
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+
+
+/*
+ * Estimates the expected final score of each empty position for the card on
+ * the pile, and refines the estimate in stages: Monte Carlo rounds with a
+ * time budget that doubles each stage, merged weighted by their budget, and
+ * an exact solution once few enough positions are left. After every stage
+ * the estimate is handed to a listener on the event dispatch thread.
+ *
+ * Only one analysis runs at a time. Starting a new one, or calling cancel(),
+ * interrupts the old one, and its results are never delivered, even if they
+ * were already on their way to the event dispatch thread.
+ *
+ * The exact values depend on the board only, so the table of the solver
+ * stays valid from one hint to the next, and after an undo. It is only
+ * cleared when a new round starts, to make room for its positions.
+ */
+public class HintEngine {
+    /* Time budget of the first stage and of the last one, in ns. */
+    private static final long FIRST_BUDGET = 20000000L;
+    private static final long LAST_BUDGET = 2560000000L;
+
+    /* Largest number of empty positions solved exactly, in about a second
+     * on one core. */
+    private static final int EXACT_EMPTY = 6;
+
+    /*
+     * Receives the estimates on the event dispatch thread.
+     */
+    public interface Listener {
+        /*
+         * Input : The expected final score per position x * 5 + y (double[],
+         *         NaN when taken) and whether it is the last stage (boolean).
+         * Output: -
+         */
+        void update(double[] estimates, boolean done);
+    }
+
+    /* Coordinates the stages, on a thread of its own. */
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "hint-engine");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /* Runs the rollouts and the exact search, leaving a core for the user
+     * interface. */
+    private final PlacementAdvisor advisor = new PlacementAdvisor(
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    private final EndgameSolver solver = new EndgameSolver(64L << 20,
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+
+    /* The running analysis, and its number to recognise stale results. */
+    private Future<?> running = null;
+    private volatile long current = 0;
+
+    /*
+     * Start analysing a game, cancelling any running analysis. Must be
+     * called on the event dispatch thread.
+     *
+     * Input : The game (PokerGame), which is copied, and the listener.
+     * Output: -
+     */
+    public void start(PokerGame game, final Listener listener) {
+        cancel();
+        if (game.state != "play" || game.nr_used == 25) {
+            return;
+        }
+        final PokerGame snapshot = game.copy();
+        final long id = current;
+        running = coordinator.submit(new Runnable() {
+            public void run() {
+                if (snapshot.nr_used == 0) {
+                    solver.clear();
+                }
+                analyse(snapshot, id, listener);
+            }
+        });
+    }
+
+    /*
+     * Stop the running analysis, if any. Must be called on the event
+     * dispatch thread.
+     *
+     * Input : -
+     * Output: -
+     */
+    public void cancel() {
+        current += 1;
+        if (running != null) {
+            running.cancel(true);
+            running = null;
+        }
+    }
+
+    /*
+     * Run the stages of one analysis on the coordinator thread.
+     */
+    private void analyse(PokerGame game, long id, Listener listener) {
+        double[] sums = new double[25];
+        double weight = 0;
+        for (long budget = FIRST_BUDGET; budget <= LAST_BUDGET; budget *= 2) {
+            double[] estimates = advisor.advise(game, budget);
+            if (Thread.currentThread().isInterrupted() || id != current) {
+                return;
+            }
+            /* Later stages have more rollouts, so they weigh more. */
+            weight += budget;
+            for (int cell = 0; cell < 25; cell++) {
+                sums[cell] += estimates[cell] * budget;
+                estimates[cell] = sums[cell] / weight;
+            }
+            boolean exact = 25 - game.nr_used <= EXACT_EMPTY;
+            deliver(estimates, budget * 2 > LAST_BUDGET && !exact, id, listener);
+            if (exact) {
+                deliver(solver.solve(game), true, id, listener);
+                return;
+            }
+        }
+    }
+
+    private void deliver(final double[] estimates, final boolean done, final long id,
+            final Listener listener) {
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                if (id == current) {
+                    listener.update(estimates, done);
+                }
+            }
+        });
+    }
+}
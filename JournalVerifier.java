@@ -0,0 +1,207 @@
+/*
+ * JournalVerifier.java
+ *
+ * This file contains the verifier of the game journal, which replays every
+ * recorded game and compares the score with the one that was stored.
+ *
+ * To run, type 'java JournalVerifier [directory] [threads]'. The directory
+ * defaults to the journal of the user interface.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/*
+ * Streams through the segments of a journal. Each segment is mapped into
+ * memory read-only and its records are split over a fork-join pool, so
+ * journals far larger than the heap are read at the speed of the disk (or
+ * of the page cache). Every game is replayed with PokerGame.updateScore on a
+ * game that is reused by the thread, and a game whose replayed score differs
+ * from the stored one is reported with its segment and index.
+ */
+public class JournalVerifier {
+    /* Number of records replayed by a single task without splitting. */
+    private static final int BLOCK = 1 << 14;
+
+    /* Largest number of mismatches that are printed. */
+    private static final int MAX_REPORTED = 20;
+
+    /* Game reused by each thread for the replays. */
+    private static final ThreadLocal<Replay> replays = new ThreadLocal<Replay>() {
+        protected Replay initialValue() {
+            return new Replay();
+        }
+    };
+
+    /* Totals of the last run. */
+    public final AtomicLong games = new AtomicLong();
+    public final AtomicLong mismatches = new AtomicLong();
+    public final AtomicLong corrupt = new AtomicLong();
+    private final List<String> reported = new ArrayList<String>();
+
+    /*
+     * Replay all games of a journal.
+     *
+     * Input : The directory (File) and the pool (ForkJoinPool).
+     * Output: -
+     */
+    public void verify(File directory, ForkJoinPool pool) throws IOException {
+        for (File segment : GameJournal.segments(directory)) {
+            verifySegment(segment, pool);
+        }
+    }
+
+    /*
+     * Replay all games of a single segment.
+     *
+     * Input : The segment (File) and the pool (ForkJoinPool).
+     * Output: -
+     */
+    public void verifySegment(File segment, ForkJoinPool pool) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(segment, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            if (size < GameJournal.HEADER_SIZE) {
+                report(segment.getName() + ": no header");
+                corrupt.incrementAndGet();
+                return;
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            if (map.getInt(0) != GameJournal.MAGIC || map.getInt(4) != GameJournal.VERSION ||
+                    map.getInt(8) != GameJournal.RECORD_SIZE) {
+                report(segment.getName() + ": not a journal segment");
+                corrupt.incrementAndGet();
+                return;
+            }
+            long records = (size - GameJournal.HEADER_SIZE) / GameJournal.RECORD_SIZE;
+            pool.invoke(new Range(segment.getName(), map, 0, (int)records));
+        }
+        finally {
+            file.close();
+        }
+    }
+
+    private void report(String line) {
+        synchronized (reported) {
+            if (reported.size() < MAX_REPORTED) {
+                reported.add(line);
+                System.out.println(line);
+            }
+        }
+    }
+
+    /*
+     * A range of records of a segment, split in halves until it is small.
+     */
+    private class Range extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private final MappedByteBuffer map;
+        private final int from;
+        private final int to;
+
+        Range(String name, MappedByteBuffer map, int from, int to) {
+            this.name = name;
+            this.map = map;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if (to - from > BLOCK) {
+                int mid = from + (to - from) / 2;
+                invokeAll(new Range(name, map, from, mid), new Range(name, map, mid, to));
+                return;
+            }
+            /* Each task reads through its own view of the shared mapping. */
+            ByteBuffer view = map.duplicate();
+            Replay replay = replays.get();
+            long bad = 0;
+            long broken = 0;
+            for (int i = from; i < to; i++) {
+                view.position(GameJournal.HEADER_SIZE + i * GameJournal.RECORD_SIZE);
+                int stored = GameJournal.decode(view, replay.cards, replay.cells);
+                if (stored < 0) {
+                    broken++;
+                    report(name + " #" + i + ": corrupt record");
+                    continue;
+                }
+                int score = replay.play();
+                if (score != stored) {
+                    bad++;
+                    report(name + " #" + i + ": stored " + stored + ", replayed " + score);
+                }
+            }
+            games.addAndGet(to - from);
+            mismatches.addAndGet(bad);
+            corrupt.addAndGet(broken);
+        }
+    }
+
+    /*
+     * A game and the placements of the record being replayed.
+     */
+    private static class Replay {
+        final PokerGame game = new PokerGame();
+        final int[] cards = new int[25];
+        final int[] cells = new int[25];
+
+        int play() {
+            game.clear();
+            for (int step = 0; step < 25; step++) {
+                int x = cells[step] / 5;
+                int y = cells[step] % 5;
+                game.board[x][y] = cards[step];
+                game.updateScore(x, y);
+            }
+            return game.score;
+        }
+    }
+
+    /*
+     * Main function. Verifies a journal and prints the totals.
+     *
+     * Input : Directory and threads (String[]).
+     * Output: -
+     */
+    public static void main(String[] args) throws IOException {
+        File directory = new File(args.length > 0 ? args[0] : GameJournal.DIRECTORY);
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) :
+                Runtime.getRuntime().availableProcessors();
+
+        JournalVerifier verifier = new JournalVerifier();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        verifier.verify(directory, pool);
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+
+        double seconds = elapsed / 1e9;
+        long games = verifier.games.get();
+        System.out.println("Games replayed: " + games + " from " +
+                GameJournal.segments(directory).length + " segments");
+        System.out.printf("Time: %.3f s (%.0f games/sec)%n", seconds, games / seconds);
+        System.out.println("Mismatches: " + verifier.mismatches.get() +
+                ", corrupt records: " + verifier.corrupt.get());
+        if (verifier.mismatches.get() > 0 || verifier.corrupt.get() > 0) {
+            System.exit(1);
+        }
+    }
+}
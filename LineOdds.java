@@ -0,0 +1,375 @@
+/*
+ * LineOdds.java
+ *
+ * This file contains the exact odds of the hands a partially filled line can
+ * still become.
+ */
+
+
+/*
+ * The probability of every hand of the score sheet for one line, when its
+ * empty places are filled with distinct cards drawn uniformly from the
+ * unseen cards, and the expected score of the line.
+ *
+ * The odds are counted exactly. Going over the ranks one by one, the number
+ * of ways to fill the line is kept per shape of the hand (how many ranks
+ * occur once, twice, and so on), which gives every hand but the straights
+ * and flushes. The draws that complete one of the ten straights, and those
+ * that keep the line in one suit, are then counted directly and moved to
+ * the straight, flush or straight flush. Counting a line takes a few
+ * microseconds.
+ *
+ * Results are kept in a bounded cache. The odds only depend on the ranks in
+ * the line, the number of unseen cards of each rank and, for the suits that
+ * can still make a flush, the unseen ranks of that suit. That is the key of
+ * the cache, with the suit masks sorted, so lines that only differ by a
+ * permutation of the suits share one entry. A hit costs a few dozen bit
+ * operations and one array read, and does not allocate.
+ */
+public final class LineOdds {
+    /* The hands of the score sheet and their scores. */
+    public static final String[] HANDS = HandEvaluator.HANDS;
+    public static final int[] SCORES = HandEvaluator.POINTS;
+
+    /* Index in HANDS of each score. */
+    private static final int[] HAND_OF_SCORE = new int[31];
+
+    /* Number of cached odds, a power of two. */
+    public static final int CACHE_SIZE = 1 << 16;
+
+    /* Binomial coefficients up to 52. */
+    private static final double[][] CHOOSE = new double[53][6];
+
+    /* The unseen cards of each rank, as a mask of 4 bits 13 apart. */
+    private static final long RANK_COLUMN = 1L | 1L << 13 | 1L << 26 | 1L << 39;
+
+    /* The straights as rank masks, including 0-1-2-3-12. */
+    private static final int[] STRAIGHTS = {0x1F, 0x3E, 0x7C, 0xF8, 0x1F0, 0x3E0, 0x7C0,
+            0xF80, 0x1F00, 0x100F};
+
+    /*
+     * The shape of a hand is the number of ranks occurring once, twice,
+     * three and four times, numbered n1 + 6 * n2 + 18 * n3 + 36 * n4.
+     */
+    private static final int SHAPES = 72;
+    private static final int[] SHAPE_STEP = {0, 1, 6, 18, 36};
+    private static final int[] SHAPE_SIZE = new int[SHAPES];
+    private static final int[] SHAPE_SCORE = new int[SHAPES];
+
+    /* The cache, replacing the old entry on a collision. */
+    private static final Entry[] cache = new Entry[CACHE_SIZE];
+
+    static {
+        for (int h = 0; h < SCORES.length; h++) {
+            HAND_OF_SCORE[SCORES[h]] = h;
+        }
+        for (int shape = 0; shape < SHAPES; shape++) {
+            int n1 = shape % 6;
+            int n2 = shape / 6 % 3;
+            int n3 = shape / 18 % 2;
+            int n4 = shape / 36;
+            SHAPE_SIZE[shape] = n1 + 2 * n2 + 3 * n3 + 4 * n4;
+            /* Score the shape on ranks that are never a straight. */
+            int rankMask = 0x155 & ((1 << (2 * (n1 + n2 + n3 + n4))) - 1);
+            int pairMask = 0x155 & ((1 << (2 * (n2 + n3 + n4))) - 1);
+            SHAPE_SCORE[shape] = HandEvaluator.lookup(rankMask, pairMask, 3);
+        }
+        for (int n = 0; n <= 52; n++) {
+            CHOOSE[n][0] = 1;
+            for (int k = 1; k <= 5 && k <= n; k++) {
+                CHOOSE[n][k] = CHOOSE[n - 1][k - 1] + (k <= n - 1 ? CHOOSE[n - 1][k] : 0);
+            }
+        }
+    }
+
+    /* The probability of each hand in HANDS, do not modify. */
+    public final double[] probabilities;
+    /* The expected score of the line. */
+    public final double expected;
+
+    private LineOdds(double[] counts, double total) {
+        probabilities = new double[SCORES.length];
+        double sum = 0;
+        if (total > 0) {
+            for (int h = 0; h < SCORES.length; h++) {
+                probabilities[h] = counts[h] / total;
+                sum += probabilities[h] * SCORES[h];
+            }
+        }
+        expected = sum;
+    }
+
+    /*
+     * A cached result and its key.
+     */
+    private static final class Entry {
+        final long ranks;
+        final long avail;
+        final long suits;
+        final LineOdds odds;
+
+        Entry(long ranks, long avail, long suits, LineOdds odds) {
+            this.ranks = ranks;
+            this.avail = avail;
+            this.suits = suits;
+            this.odds = odds;
+        }
+    }
+
+    /*
+     * The odds of a line.
+     *
+     * Input : The five cards of the line (int[], -1 for empty) and the unseen
+     *         cards, one bit per card (long). The cards in the line must not
+     *         be in the unseen set.
+     * Output: The odds (LineOdds). If there are fewer unseen cards than
+     *         empty places, all probabilities are 0.
+     */
+    public static LineOdds of(int[] line, long unseen) {
+        return of(line[0], line[1], line[2], line[3], line[4], unseen);
+    }
+
+    /*
+     * The odds of a line given as five separate cards.
+     *
+     * Input : The cards (int, int, int, int, int; -1 for empty) and the
+     *         unseen cards (long).
+     * Output: The odds (LineOdds).
+     */
+    public static LineOdds of(int c0, int c1, int c2, int c3, int c4, long unseen) {
+        /* Counts per rank (3 bits each) and suits of the cards in the line. */
+        long ranks = rankCount(c0) + rankCount(c1) + rankCount(c2) + rankCount(c3) +
+                rankCount(c4);
+        int suits = suitBit(c0) | suitBit(c1) | suitBit(c2) | suitBit(c3) | suitBit(c4);
+        int placed = (c0 >= 0 ? 1 : 0) + (c1 >= 0 ? 1 : 0) + (c2 >= 0 ? 1 : 0) +
+                (c3 >= 0 ? 1 : 0) + (c4 >= 0 ? 1 : 0);
+
+        /* Unseen cards per rank. */
+        long avail = 0;
+        for (int r = 0; r < 13; r++) {
+            avail |= (long)Long.bitCount((unseen >>> r) & RANK_COLUMN) << (3 * r);
+        }
+
+        /* Unseen ranks of the suits that can still make a flush, sorted. */
+        long flushSuits = 0;
+        if (placed == 0) {
+            int m0 = (int)(unseen & 0x1FFF);
+            int m1 = (int)((unseen >>> 13) & 0x1FFF);
+            int m2 = (int)((unseen >>> 26) & 0x1FFF);
+            int m3 = (int)((unseen >>> 39) & 0x1FFF);
+            /* A sorting network for the four masks. */
+            int a = Math.min(m0, m1);
+            int b = Math.max(m0, m1);
+            int c = Math.min(m2, m3);
+            int d = Math.max(m2, m3);
+            m0 = Math.min(a, c);
+            m3 = Math.max(b, d);
+            m1 = Math.min(Math.max(a, c), Math.min(b, d));
+            m2 = Math.max(Math.max(a, c), Math.min(b, d));
+            flushSuits = m0 | (long)m1 << 13 | (long)m2 << 26 | (long)m3 << 39;
+        }
+        else if ((suits & (suits - 1)) == 0) {
+            flushSuits = (unseen >>> (13 * Integer.numberOfTrailingZeros(suits))) & 0x1FFF;
+        }
+        else {
+            /* Marks a line that can no longer be a flush. */
+            flushSuits = -1;
+        }
+
+        long hash = (ranks * 0x9E3779B97F4A7C15L) ^ (avail * 0xC2B2AE3D27D4EB4FL) ^
+                (flushSuits * 0x165667B19E3779F9L);
+        int slot = (int)(hash ^ (hash >>> 29)) & (CACHE_SIZE - 1);
+        Entry entry = cache[slot];
+        if (entry != null && entry.ranks == ranks && entry.avail == avail &&
+                entry.suits == flushSuits) {
+            return entry.odds;
+        }
+
+        LineOdds odds = compute(ranks, avail, placed, flushSuits);
+        cache[slot] = new Entry(ranks, avail, flushSuits, odds);
+        return odds;
+    }
+
+    private static long rankCount(int card) {
+        return card < 0 ? 0 : 1L << (3 * (card % 13));
+    }
+
+    private static int suitBit(int card) {
+        return card < 0 ? 0 : 1 << (card / 13);
+    }
+
+    /*
+     * The odds of a line of a game, drawing from the cards that are not on
+     * the board.
+     *
+     * Input : The game (PokerGame) and the line (int, numbered as in
+     *         PokerGame).
+     * Output: The odds (LineOdds).
+     */
+    public static LineOdds of(PokerGame game, int line) {
+        return of(game, line, unseen(game));
+    }
+
+    /*
+     * The odds of a line of a game with a given set of unseen cards.
+     *
+     * Input : The game (PokerGame), the line (int) and the unseen cards
+     *         (long).
+     * Output: The odds (LineOdds).
+     */
+    public static LineOdds of(PokerGame game, int line, long unseen) {
+        int[] cells = PokerGame.LINE_CELLS[line];
+        int[][] b = game.board;
+        return of(b[cells[0] / 5][cells[0] % 5], b[cells[1] / 5][cells[1] % 5],
+                b[cells[2] / 5][cells[2] % 5], b[cells[3] / 5][cells[3] % 5],
+                b[cells[4] / 5][cells[4] % 5], unseen);
+    }
+
+    /*
+     * The cards that are not on the board of a game.
+     *
+     * Input : The game (PokerGame).
+     * Output: The cards, one bit per card (long).
+     */
+    public static long unseen(PokerGame game) {
+        long unseen = (1L << 52) - 1;
+        for (int x = 0; x < 5; x++) {
+            for (int y = 0; y < 5; y++) {
+                if (game.board[x][y] != -1) {
+                    unseen &= ~(1L << game.board[x][y]);
+                }
+            }
+        }
+        return unseen;
+    }
+
+    /*
+     * Forget all cached odds.
+     *
+     * Input : -
+     * Output: -
+     */
+    public static void clearCache() {
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            cache[i] = null;
+        }
+    }
+
+    /*
+     * Count the draws that give each hand.
+     *
+     * Input : The counts per rank in the line (long, 3 bits per rank), the
+     *         unseen cards per rank (long, 3 bits per rank), the number of
+     *         cards in the line (int) and the unseen ranks of the suits that
+     *         can make a flush (long, 13 bits per suit, -1 for none).
+     * Output: The odds (LineOdds).
+     */
+    private static LineOdds compute(long ranks, long avail, int placed, long flushSuits) {
+        int empty = 5 - placed;
+        int nrUnseen = 0;
+        int lineMask = 0;
+        boolean distinct = true;
+        for (int r = 0; r < 13; r++) {
+            int have = (int)(ranks >>> (3 * r)) & 7;
+            nrUnseen += (int)(avail >>> (3 * r)) & 7;
+            if (have > 0) {
+                lineMask |= 1 << r;
+            }
+            if (have > 1) {
+                distinct = false;
+            }
+        }
+        double[] counts = new double[SCORES.length];
+        if (nrUnseen < empty) {
+            return new LineOdds(counts, 0);
+        }
+
+        /* All draws, scored as hands without a straight or a flush. */
+        double[] shapes = shapes(ranks, avail);
+        for (int shape = 0; shape < SHAPES; shape++) {
+            if (shapes[shape] > 0) {
+                counts[HAND_OF_SCORE[SHAPE_SCORE[shape]]] += shapes[shape];
+            }
+        }
+
+        /* Move the draws that complete a straight. */
+        if (distinct) {
+            for (int straight : STRAIGHTS) {
+                int need = straight & ~lineMask;
+                if ((lineMask & ~straight) != 0 || Integer.bitCount(need) != empty) {
+                    continue;
+                }
+                double ways = 1;
+                for (int rest = need; rest != 0; rest &= rest - 1) {
+                    ways *= (avail >>> (3 * Integer.numberOfTrailingZeros(rest))) & 7;
+                }
+                counts[HAND_OF_SCORE[0]] -= ways;
+                counts[HAND_OF_SCORE[12]] += ways;
+            }
+        }
+
+        /* Move the draws that stay in the one suit of the line. */
+        if (flushSuits != -1) {
+            int nrSuits = placed == 0 ? 4 : 1;
+            for (int s = 0; s < nrSuits; s++) {
+                int mask = (int)(flushSuits >>> (13 * s)) & 0x1FFF & ~lineMask;
+                double flushes = CHOOSE[Integer.bitCount(mask)][empty];
+                double straightFlushes = 0;
+                for (int straight : STRAIGHTS) {
+                    int need = straight & ~lineMask;
+                    if ((lineMask & ~straight) == 0 && Integer.bitCount(need) == empty &&
+                            (need & ~mask) == 0) {
+                        straightFlushes += 1;
+                    }
+                }
+                counts[HAND_OF_SCORE[0]] -= flushes - straightFlushes;
+                counts[HAND_OF_SCORE[5]] += flushes - straightFlushes;
+                counts[HAND_OF_SCORE[12]] -= straightFlushes;
+                counts[HAND_OF_SCORE[30]] += straightFlushes;
+            }
+        }
+        return new LineOdds(counts, CHOOSE[nrUnseen][empty]);
+    }
+
+    /*
+     * Count the ways to fill the line per shape of the final hand: how many
+     * ranks occur once, twice, three and four times. The ranks are added one
+     * at a time, keeping the number of ways per shape so far.
+     *
+     * Input : The counts per rank in the line and the unseen cards per rank
+     *         (long, long, 3 bits per rank).
+     * Output: The ways per shape (double[SHAPES]); only shapes of five cards
+     *         are filled in.
+     */
+    private static double[] shapes(long ranks, long avail) {
+        double[] ways = new double[SHAPES];
+        double[] next = new double[SHAPES];
+        ways[0] = 1;
+        for (int r = 0; r < 13; r++) {
+            int have = (int)(ranks >>> (3 * r)) & 7;
+            int free = (int)(avail >>> (3 * r)) & 7;
+            for (int shape = 0; shape < SHAPES; shape++) {
+                next[shape] = 0;
+            }
+            for (int shape = 0; shape < SHAPES; shape++) {
+                if (ways[shape] == 0) {
+                    continue;
+                }
+                int size = SHAPE_SIZE[shape];
+                for (int c = 0; c <= free && size + have + c <= 5; c++) {
+                    int to = have + c == 0 ? shape : shape + SHAPE_STEP[have + c];
+                    next[to] += ways[shape] * CHOOSE[free][c];
+                }
+            }
+            double[] t = ways;
+            ways = next;
+            next = t;
+        }
+        for (int shape = 0; shape < SHAPES; shape++) {
+            if (SHAPE_SIZE[shape] != 5) {
+                ways[shape] = 0;
+            }
+        }
+        return ways;
+    }
+}
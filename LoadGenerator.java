@@ -0,0 +1,199 @@
+/*
+ * LoadGenerator.java
+ *
+ * This file contains the load generator for the game server.
+ *
+ * To run, type 'java LoadGenerator [host] [port] [sessions] [connections]
+ * [games]'. Without a host (or with host '-') a server is started in the
+ * same process on a free port.
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.net.Socket;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+
+/*
+ * Plays many games against a server at once. The sessions are spread over
+ * the connections, and each connection plays its sessions in turns, one
+ * placement per session per turn, so all sessions stay open for the whole
+ * run. Every placement is timed from sending the command to reading the
+ * answer, and the percentiles are reported at the end.
+ */
+public class LoadGenerator {
+    /*
+     * A connection playing a share of the sessions.
+     */
+    private static class Player implements Callable<long[]> {
+        private final String host;
+        private final int port;
+        private final int nrSessions;
+        private final int nrGames;
+        private final Random rnd;
+
+        Player(String host, int port, int nrSessions, int nrGames, long seed) {
+            this.host = host;
+            this.port = port;
+            this.nrSessions = nrSessions;
+            this.nrGames = nrGames;
+            this.rnd = new Random(seed);
+        }
+
+        public long[] call() throws IOException {
+            long[] latencies = new long[nrSessions * nrGames * 25];
+            int n = 0;
+            Socket socket = new Socket(host, port);
+            try {
+                socket.setTcpNoDelay(true);
+                BufferedReader in = new BufferedReader(new InputStreamReader(
+                        socket.getInputStream(), StandardCharsets.US_ASCII));
+                Writer out = new BufferedWriter(new OutputStreamWriter(
+                        socket.getOutputStream(), StandardCharsets.US_ASCII));
+                long[] ids = new long[nrSessions];
+                int[][] free = new int[nrSessions][25];
+
+                for (int game = 0; game < nrGames; game++) {
+                    for (int s = 0; s < nrSessions; s++) {
+                        ids[s] = Long.parseLong(ask(in, out, "NEW").split(" ")[1]);
+                        for (int cell = 0; cell < 25; cell++) {
+                            free[s][cell] = cell;
+                        }
+                    }
+                    /* One placement per session per turn, on a random free cell. */
+                    for (int turn = 0; turn < 25; turn++) {
+                        for (int s = 0; s < nrSessions; s++) {
+                            int k = rnd.nextInt(25 - turn);
+                            int cell = free[s][k];
+                            free[s][k] = free[s][24 - turn];
+                            long start = System.nanoTime();
+                            ask(in, out, "PLACE " + ids[s] + " " + cell / 5 + " " + cell % 5);
+                            latencies[n++] = System.nanoTime() - start;
+                        }
+                    }
+                    for (int s = 0; s < nrSessions; s++) {
+                        ask(in, out, "END " + ids[s]);
+                    }
+                }
+                out.write("QUIT\n");
+                out.flush();
+            }
+            finally {
+                socket.close();
+            }
+            return latencies;
+        }
+
+        private static String ask(BufferedReader in, Writer out, String command)
+                throws IOException {
+            out.write(command);
+            out.write('\n');
+            out.flush();
+            String answer = in.readLine();
+            if (answer == null || !answer.startsWith("OK")) {
+                throw new IOException(command + ": " + answer);
+            }
+            return answer;
+        }
+    }
+
+    /*
+     * Main function. Runs the load and prints the latency percentiles.
+     *
+     * Input : Host, port, sessions, connections and games per session
+     *         (String[]).
+     * Output: -
+     */
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "-";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : GameServer.DEFAULT_PORT;
+        int nrSessions = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+        int nrConnections = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        int nrGames = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+        nrConnections = Math.min(nrConnections, nrSessions);
+
+        GameServer server = null;
+        if (host.equals("-")) {
+            final GameServer local = new GameServer(GameServer.DEFAULT_IDLE_SECONDS,
+                    GameServer.DEFAULT_MAX_SESSIONS);
+            port = local.bind(0).getLocalPort();
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        local.serve(0);
+                    }
+                    catch (IOException e) {
+                        System.err.println("The local server stopped: " + e);
+                    }
+                }
+            }, "local-server");
+            thread.setDaemon(true);
+            thread.start();
+            server = local;
+            host = "localhost";
+        }
+        System.out.println("Playing " + nrGames + " game(s) in each of " + nrSessions +
+                " sessions over " + nrConnections + " connections on " +
+                (GameServer.virtualThreads() ? "virtual" : "platform") + " threads.");
+
+        ExecutorService players = GameServer.newThreadPerTaskExecutor("load-generator");
+        List<Future<long[]>> results = new ArrayList<Future<long[]>>(nrConnections);
+        long start = System.nanoTime();
+        for (int c = 0; c < nrConnections; c++) {
+            int share = nrSessions / nrConnections + (c < nrSessions % nrConnections ? 1 : 0);
+            results.add(players.submit(new Player(host, port, share, nrGames, c)));
+        }
+        long[][] parts = new long[nrConnections][];
+        int total = 0;
+        try {
+            for (int c = 0; c < nrConnections; c++) {
+                parts[c] = results.get(c).get();
+                total += parts[c].length;
+            }
+        }
+        catch (ExecutionException e) {
+            System.out.println("Failed: " + e.getCause());
+            System.exit(1);
+        }
+        long elapsed = System.nanoTime() - start;
+        players.shutdown();
+
+        long[] latencies = new long[total];
+        int n = 0;
+        for (long[] part : parts) {
+            System.arraycopy(part, 0, latencies, n, part.length);
+            n += part.length;
+        }
+        Arrays.sort(latencies);
+        double seconds = elapsed / 1e9;
+        System.out.printf("Moves: %d in %.3f s (%.0f moves/sec)%n", total, seconds,
+                total / seconds);
+        System.out.printf("Latency per move: p50 %.1f us, p99 %.1f us, max %.1f us%n",
+                percentile(latencies, 0.50) / 1e3, percentile(latencies, 0.99) / 1e3,
+                latencies[total - 1] / 1e3);
+        if (server != null) {
+            System.out.println("Server sessions left: " + server.size());
+            server.stop();
+        }
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int)(p * sorted.length))];
+    }
+}
@@ -0,0 +1,450 @@
+/*
+ * Metrics.java
+ *
+ * This file contains the counters and timers of the hot paths of the game,
+ * and their publication through JMX and a periodic text dump.
+ *
+ * The metrics are on unless the program is started with
+ * '-Dpokergame.metrics=false'. With '-Dpokergame.metrics.dump=<seconds>'
+ * the report is printed to the standard error at that interval.
+ */
+
+import java.io.PrintStream;
+
+import java.lang.management.ManagementFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+
+/*
+ * A registry of counters and timers that threads update without locks: the
+ * counts are LongAdders, which spread concurrent updates over cells, and a
+ * timer keeps its durations in a histogram with one LongAdder per power of
+ * two of nanoseconds. Every timed call is also a JFR event (see
+ * ProbeEvents), which costs next to nothing unless a recording is running.
+ *
+ * The hot paths, such as updateScore, take a few tens of nanoseconds, as
+ * long as reading the clock twice, so only one in SAMPLE of their calls is
+ * timed; the count of such a timer is the estimated number of calls. When
+ * the metrics are off, ENABLED is a constant false and the JIT removes the
+ * probes altogether.
+ */
+public final class Metrics {
+    /* Whether the probes are active, fixed at startup. */
+    public static final boolean ENABLED =
+            !"false".equalsIgnoreCase(System.getProperty("pokergame.metrics"));
+
+    /* One in this many calls of a sampled timer is timed (a power of two). */
+    public static final int SAMPLE = 64;
+
+    /* The kinds of probes, which decide the JFR event type. */
+    public static final int GAME = 0;
+    public static final int SCORING = 1;
+    public static final int RENDERING = 2;
+    public static final int IO = 3;
+
+    private static final List<Timer> TIMERS = new CopyOnWriteArrayList<Timer>();
+    private static final List<Counter> COUNTERS = new CopyOnWriteArrayList<Counter>();
+
+    /* The probes of the game. */
+    public static final Timer GAME_NEW = timer("game.new", GAME, false);
+    public static final Timer CARD_ART = timer("cardart.load", GAME, false);
+    public static final Timer UPDATE_SCORE = timer("score.update", SCORING, true);
+    public static final Timer CHECK_SCORE = timer("score.check", SCORING, true);
+    public static final Timer PAINT = timer("panel.paint", RENDERING, false);
+    public static final Timer DRAG_FRAME = timer("panel.dragframe", RENDERING, false);
+    public static final Timer FIRST_FRAME = timer("panel.firstframe", RENDERING, false);
+    public static final Timer STATS_OPEN = timer("stats.open", IO, false);
+    public static final Timer STATS_APPEND = timer("stats.append", IO, false);
+    public static final Timer STATS_SYNC = timer("stats.sync", IO, false);
+    public static final Timer STATS_RESET = timer("stats.reset", IO, false);
+    public static final Counter STATS_BYTES = counter("stats.bytes");
+
+    /* Whether publish() has run. */
+    private static boolean published = false;
+
+    private Metrics() {
+    }
+
+    /*
+     * A count that many threads can add to at once.
+     */
+    public static final class Counter {
+        public final String name;
+        private final LongAdder value = new LongAdder();
+
+        private Counter(String name) {
+            this.name = name;
+        }
+
+        public void add(long n) {
+            if (ENABLED) {
+                value.add(n);
+            }
+        }
+
+        public long value() {
+            return value.sum();
+        }
+    }
+
+    /*
+     * The distribution of the durations of an operation.
+     */
+    public static final class Timer {
+        /* Number of buckets: bucket b holds durations below 2^b ns. */
+        private static final int BUCKETS = 40;
+
+        public final String name;
+        public final int kind;
+        public final boolean sampled;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+        private Timer(String name, int kind, boolean sampled) {
+            this.name = name;
+            this.kind = kind;
+            this.sampled = sampled;
+            for (int b = 0; b < BUCKETS; b++) {
+                buckets[b] = new LongAdder();
+            }
+        }
+
+        /*
+         * Start timing a call, if it is to be timed.
+         *
+         * Input : -
+         * Output: The start time (long), for stop(), or 0 when not timed.
+         */
+        public long start() {
+            if (!ENABLED || (sampled &&
+                    (ThreadLocalRandom.current().nextInt() & (SAMPLE - 1)) != 0)) {
+                return 0;
+            }
+            return System.nanoTime();
+        }
+
+        /*
+         * Stop timing a call.
+         *
+         * Input : The start time given by start() (long).
+         * Output: -
+         */
+        public void stop(long start) {
+            if (ENABLED && start != 0) {
+                record(System.nanoTime() - start);
+            }
+        }
+
+        /*
+         * Add a duration measured elsewhere.
+         *
+         * Input : The duration (long, in ns).
+         * Output: -
+         */
+        public void record(long nanos) {
+            if (!ENABLED) {
+                return;
+            }
+            nanos = Math.max(0, nanos);
+            count.increment();
+            total.add(nanos);
+            buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos))].increment();
+            long old = max.get();
+            while (nanos > old && !max.compareAndSet(old, nanos)) {
+                old = max.get();
+            }
+            ProbeEvents.emit(kind, name, nanos, sampled);
+        }
+
+        /* The number of calls, estimated from the samples if sampled. */
+        public long count() {
+            return count.sum() * (sampled ? SAMPLE : 1);
+        }
+
+        public double meanNanos() {
+            long n = count.sum();
+            return n == 0 ? 0 : total.sum() / (double)n;
+        }
+
+        public long maxNanos() {
+            return max.get();
+        }
+
+        /*
+         * The duration below which the given fraction of the timed calls
+         * took, rounded up to a power of two.
+         *
+         * Input : The fraction (double, 0 to 1).
+         * Output: The duration (long, in ns).
+         */
+        public long quantileNanos(double q) {
+            long[] counts = new long[BUCKETS];
+            long n = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                counts[b] = buckets[b].sum();
+                n += counts[b];
+            }
+            long rank = Math.max(1, (long)Math.ceil(q * n));
+            long seen = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += counts[b];
+                if (seen >= rank) {
+                    return Math.min(1L << b, maxNanos());
+                }
+            }
+            return maxNanos();
+        }
+
+        private void reset() {
+            count.reset();
+            total.reset();
+            max.set(0);
+            for (LongAdder bucket : buckets) {
+                bucket.reset();
+            }
+        }
+    }
+
+    /*
+     * Register a new timer.
+     *
+     * Input : The name (String), the kind (int, GAME to IO) and whether
+     *         only some calls are timed (boolean).
+     * Output: The timer (Timer).
+     */
+    public static Timer timer(String name, int kind, boolean sampled) {
+        Timer timer = new Timer(name, kind, sampled);
+        TIMERS.add(timer);
+        return timer;
+    }
+
+    /*
+     * Register a new counter.
+     *
+     * Input : The name (String).
+     * Output: The counter (Counter).
+     */
+    public static Counter counter(String name) {
+        Counter counter = new Counter(name);
+        COUNTERS.add(counter);
+        return counter;
+    }
+
+    /*
+     * The state of all metrics that have been used, one per line.
+     *
+     * Input : -
+     * Output: The report (String).
+     */
+    public static String report() {
+        StringBuilder text = new StringBuilder();
+        if (!ENABLED) {
+            return "Metrics are disabled.\n";
+        }
+        for (Timer timer : TIMERS) {
+            if (timer.count() == 0) {
+                continue;
+            }
+            text.append(String.format("%-18s %12d calls  mean %10.0f ns  p50 %10d ns  " +
+                    "p99 %10d ns  max %10d ns%s%n", timer.name, timer.count(),
+                    timer.meanNanos(), timer.quantileNanos(0.5), timer.quantileNanos(0.99),
+                    timer.maxNanos(), timer.sampled ? "  (sampled)" : ""));
+        }
+        if (DRAG_FRAME.count() > 0) {
+            text.append(String.format("%-18s %12.1f frames/sec while dragging%n",
+                    "panel.framerate", 1e9 / DRAG_FRAME.meanNanos()));
+        }
+        for (Counter counter : COUNTERS) {
+            if (counter.value() != 0) {
+                text.append(String.format("%-18s %12d%n", counter.name, counter.value()));
+            }
+        }
+        return text.toString();
+    }
+
+    /*
+     * Clear all metrics.
+     *
+     * Input : -
+     * Output: -
+     */
+    public static void reset() {
+        for (Timer timer : TIMERS) {
+            timer.reset();
+        }
+        for (Counter counter : COUNTERS) {
+            counter.value.reset();
+        }
+    }
+
+    /*
+     * Publish the metrics as the MBean 'pokergame:type=Metrics' and, if
+     * the property 'pokergame.metrics.dump' gives an interval in seconds,
+     * print the report at that interval. Only the first call does anything.
+     *
+     * Input : -
+     * Output: -
+     */
+    public static synchronized void publish() {
+        if (!ENABLED || published) {
+            return;
+        }
+        published = true;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new Bean(), new ObjectName("pokergame:type=Metrics"));
+        }
+        catch (JMException e) {
+            System.err.println("Metrics not published over JMX: " + e);
+        }
+        long seconds = Long.getLong("pokergame.metrics.dump", 0);
+        if (seconds > 0) {
+            dump(seconds, System.err);
+        }
+    }
+
+    /*
+     * Print the report at a fixed interval on a daemon thread.
+     *
+     * Input : The interval (long, in s) and the stream (PrintStream).
+     * Output: -
+     */
+    public static void dump(long seconds, final PrintStream out) {
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "metrics-dump");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        timer.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                String report = report();
+                if (!report.isEmpty()) {
+                    out.print("Metrics:\n" + report);
+                    out.flush();
+                }
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    /*
+     * The MBean, with for every timer the attributes '<name>.count',
+     * '.meanNanos', '.p99Nanos' and '.maxNanos', for every counter one with
+     * its name, and the operations 'report' and 'reset'.
+     */
+    private static final class Bean implements DynamicMBean {
+        private static final String[] FIELDS = {"count", "meanNanos", "p99Nanos", "maxNanos"};
+
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            for (Counter counter : COUNTERS) {
+                if (counter.name.equals(attribute)) {
+                    return counter.value();
+                }
+            }
+            for (Timer timer : TIMERS) {
+                if (!attribute.startsWith(timer.name + ".")) {
+                    continue;
+                }
+                String field = attribute.substring(timer.name.length() + 1);
+                if (field.equals("count")) {
+                    return timer.count();
+                }
+                if (field.equals("meanNanos")) {
+                    return timer.meanNanos();
+                }
+                if (field.equals("p99Nanos")) {
+                    return timer.quantileNanos(0.99);
+                }
+                if (field.equals("maxNanos")) {
+                    return timer.maxNanos();
+                }
+            }
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    list.add(new Attribute(attribute, getAttribute(attribute)));
+                }
+                catch (AttributeNotFoundException e) {
+                }
+            }
+            return list;
+        }
+
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("The metrics are read-only.");
+        }
+
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        public Object invoke(String action, Object[] params, String[] signature)
+                throws ReflectionException {
+            if (action.equals("report")) {
+                return report();
+            }
+            if (action.equals("reset")) {
+                reset();
+                return null;
+            }
+            throw new ReflectionException(new NoSuchMethodException(action));
+        }
+
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+            for (Timer timer : TIMERS) {
+                for (String field : FIELDS) {
+                    attributes.add(new MBeanAttributeInfo(timer.name + "." + field,
+                            field.equals("meanNanos") ? "double" : "long",
+                            field + " of " + timer.name, true, false, false));
+                }
+            }
+            for (Counter counter : COUNTERS) {
+                attributes.add(new MBeanAttributeInfo(counter.name, "long", counter.name,
+                        true, false, false));
+            }
+            MBeanOperationInfo[] operations = {
+                new MBeanOperationInfo("report", "The metrics as text",
+                        new MBeanParameterInfo[0], "java.lang.String",
+                        MBeanOperationInfo.INFO),
+                new MBeanOperationInfo("reset", "Clear all metrics",
+                        new MBeanParameterInfo[0], "void", MBeanOperationInfo.ACTION)
+            };
+            return new MBeanInfo(Metrics.class.getName(), "Poker game metrics",
+                    attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null,
+                    operations, null);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * MonteCarloPolicy.java
+ *
+ * This file contains the Monte Carlo placement policy.
+ */
+
+import java.util.Random;
+
+
+/*
+ * Place each card on the position with the best expected final score, as
+ * estimated by a fixed number of random rollouts per position. The rollouts
+ * run on the calling thread, since the simulator already plays its games in
+ * parallel.
+ */
+public class MonteCarloPolicy implements PlacementPolicy {
+    /* The number of rollouts per empty position. */
+    public final int rollouts;
+
+    /* Estimates of the calling thread, reused for every decision. */
+    private final ThreadLocal<double[]> estimates = new ThreadLocal<double[]>() {
+        protected double[] initialValue() {
+            return new double[25];
+        }
+    };
+
+    public MonteCarloPolicy(int rollouts) {
+        this.rollouts = rollouts;
+    }
+
+    public int choose(PokerGame game, int card, Random rnd) {
+        double[] out = estimates.get();
+        PlacementAdvisor.evaluate(game, rollouts, rnd, out);
+        return PlacementAdvisor.best(out);
+    }
+}
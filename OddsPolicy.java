@@ -0,0 +1,60 @@
+/*
+ * OddsPolicy.java
+ *
+ * This file contains the placement policy based on the exact line odds.
+ */
+
+import java.util.Random;
+
+
+/*
+ * Place each card where it raises the expected score of its lines the most.
+ * The expected score of a line is taken from LineOdds, drawing the empty
+ * places of the line from the cards that are not on the board, before and
+ * after the card is placed. Ties are broken at random.
+ */
+public class OddsPolicy implements PlacementPolicy {
+    public int choose(PokerGame game, int card, Random rnd) {
+        long unseen = LineOdds.unseen(game) & ~(1L << card);
+        int best = -1;
+        double bestGain = Double.NEGATIVE_INFINITY;
+        int ties = 0;
+        for (int cell = 0; cell < 25; cell++) {
+            if (game.board[cell / 5][cell % 5] != -1) {
+                continue;
+            }
+            double gain = 0;
+            for (int l : PokerGame.CELL_LINES[cell]) {
+                gain += expected(game, l, cell, card, unseen) -
+                        expected(game, l, -1, -1, unseen);
+            }
+            if (gain > bestGain) {
+                best = cell;
+                bestGain = gain;
+                ties = 1;
+            }
+            else if (gain == bestGain && rnd.nextInt(++ties) == 0) {
+                best = cell;
+            }
+        }
+        if (best == -1) {
+            throw new IllegalStateException("The board is full.");
+        }
+        return best;
+    }
+
+    /*
+     * The expected score of a line, with a card placed on one of its cells
+     * (or on no cell when the cell is -1).
+     */
+    private static double expected(PokerGame game, int line, int cell, int card, long unseen) {
+        int[] cells = PokerGame.LINE_CELLS[line];
+        return LineOdds.of(at(game, cells[0], cell, card), at(game, cells[1], cell, card),
+                at(game, cells[2], cell, card), at(game, cells[3], cell, card),
+                at(game, cells[4], cell, card), unseen).expected;
+    }
+
+    private static int at(PokerGame game, int c, int cell, int card) {
+        return c == cell ? card : game.board[c / 5][c % 5];
+    }
+}
@@ -0,0 +1,1183 @@
+/*
+ * OptimalSolver.java
+ *
+ * This file contains the search for the best board of a known deal, which
+ * reports the best board found with an upper bound on any board, and the
+ * batch mode that runs it for ranges of seeds.
+ *
+ * To solve a single deal, type 'java OptimalSolver solve [seed] [nodes]'.
+ * For a range of seeds, type 'java OptimalSolver batch [from] [to] [shards]
+ * [threads] [directory] [shards to run]', which splits the seeds in
+ * shards, solves them on a pool of threads and appends every finished seed
+ * to the checkpoint file of its shard. A batch that is stopped picks up where it
+ * left off when started again. To run shards in separate processes, give
+ * each process the same range and number of shards, and the shards it
+ * should run as a comma separated list (e.g. '0,1'). The results of all
+ * shards are combined with 'java OptimalSolver merge [directory]'.
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+
+/*
+ * Finds the best board for a deal whose order is known. With the whole deal
+ * known, the order in which the 25 cards arrive no longer matters: every
+ * assignment of the cards to the 25 positions can be reached. The solver
+ * therefore fills the positions one by one (row by row, so the rows are
+ * complete early) and tries each remaining card on the position.
+ *
+ * The search is branch-and-bound. The bound of a partial board is the sum
+ * over the lines of the best hand each line could still become, looking at
+ * its own cards and the cards that are left; for the rows, and for the
+ * columns, which share no cards, the cards one line takes for its hand are
+ * no longer there for the others. The bound never underestimates, so a
+ * branch whose bound does not beat the best board found so far is cut, and
+ * the cards on a position are tried in the order of their bound.
+ *
+ * The 8 rotations and reflections of the board map lines onto lines, so a
+ * board and its images have the same score. Only the image with the lowest
+ * card in the top left corner, and a lower card in the top right than in
+ * the bottom left corner, is searched.
+ *
+ * The bound is far from tight while the board is mostly empty, so the
+ * search for all boards only ends within its node limit for some deals.
+ * The best board is therefore first found by simulated annealing and then
+ * improved by the same branch-and-bound on part of the board: a number of
+ * positions are emptied and refilled in the best way, while the others
+ * keep their cards. When the search for all boards stops at its limit,
+ * the best board is a lower bound on the optimum, and the largest bound
+ * of the branches not searched an upper bound. That bound is loose: with
+ * the default limit none of the deals of seeds 0 to 5 was proven, and the
+ * bound was about 60 points above the best board found on average, so the
+ * results are the best boards found, not the optimum. The search itself is
+ * exact when it ends, which OptimalSolverCheck tests on small refills.
+ */
+public class OptimalSolver {
+    /* Default largest number of nodes searched per deal. */
+    public static final long DEFAULT_NODE_LIMIT = 200000L;
+
+    /* The policies whose scores are compared with the best board in a batch. */
+    public static final String[] POLICIES = {"greedy", "weighted", "odds"};
+
+    /* The annealing that finds the first board: the number of runs, the
+     * swaps per run and the temperatures at the start and the end. */
+    private static final int ANNEAL_RUNS = 4;
+    private static final int ANNEAL_STEPS = 1 << 20;
+    private static final double START_TEMPERATURE = 8.0;
+    private static final double END_TEMPERATURE = 0.2;
+
+    /* The searches around the best board after the annealing: the number
+     * of them, the positions opened up and the nodes of each. */
+    private static final int NEIGHBOURHOOD_ROUNDS = 200;
+    private static final int NEIGHBOURHOOD_CELLS = 14;
+    private static final long NEIGHBOURHOOD_NODES = 50000;
+
+    /* The positions in the order they are filled: row by row. */
+    private static final int[] ORDER = new int[25];
+
+    /* The corners, for the symmetry pruning. */
+    private static final int TOP_LEFT = 0;
+    private static final int TOP_RIGHT = 4 * 5;
+    private static final int BOTTOM_LEFT = 4;
+    private static final int BOTTOM_RIGHT = 4 * 5 + 4;
+
+    /* The ranks of the ten straights, the wheel first. */
+    private static final int[] STRAIGHTS = new int[10];
+
+    /* The cards of each straight flush, as a bit per card, by suit. */
+    private static final long[][] STRAIGHT_FLUSHES = new long[4][10];
+
+    static {
+        for (int y = 0; y < 5; y++) {
+            for (int x = 0; x < 5; x++) {
+                ORDER[y * 5 + x] = x * 5 + y;
+            }
+        }
+        STRAIGHTS[0] = 0x100F;
+        for (int i = 0; i < 9; i++) {
+            STRAIGHTS[i + 1] = 0x1F << i;
+        }
+        for (int s = 0; s < 4; s++) {
+            for (int w = 0; w < STRAIGHTS.length; w++) {
+                for (int r = 0; r < 13; r++) {
+                    if ((STRAIGHTS[w] & (1 << r)) != 0) {
+                        STRAIGHT_FLUSHES[s][w] |= 1L << (s * 13 + r);
+                    }
+                }
+            }
+        }
+    }
+
+    /* The largest number of nodes searched for all boards, per deal. */
+    public long nodeLimit = DEFAULT_NODE_LIMIT;
+
+    /* Result of the last call to solve(). */
+    public int best;
+    public final int[] bestBoard = new int[25];
+    public boolean proven;
+    public int upper;
+    public long nodes;
+    public long nanos;
+
+    /* The positions to fill, whether the symmetry pruning applies to them,
+     * and the node count at which the search stops. */
+    private final int[] free = new int[25];
+    private int nrFree;
+    private boolean symmetric;
+    private long limit;
+    private boolean aborted;
+
+    /* The board being searched, -1 for an empty position. */
+    private final int[] board = new int[25];
+
+    /* Line state, as in PokerGame, plus the cards of each line as bits. */
+    private final byte[][] lineRanks = new byte[PokerGame.NR_LINES][13];
+    private final int[] lineRankMask = new int[PokerGame.NR_LINES];
+    private final int[] linePairs = new int[PokerGame.NR_LINES];
+    private final byte[][] lineSuits = new byte[PokerGame.NR_LINES][4];
+    private final int[] lineSuitMask = new int[PokerGame.NR_LINES];
+    private final int[] lineFill = new int[PokerGame.NR_LINES];
+    private final long[] lineCards = new long[PokerGame.NR_LINES];
+
+    /* The cards that are left, by rank and suit and as bits. */
+    private final int[] restRanks = new int[13];
+    private final int[] restSuits = new int[4];
+    private long rest;
+
+    /* Bounds and candidate cards per search depth, with the bound of the
+     * board reached and the number of candidates tried so far. */
+    private final int[][] bounds = new int[26][PokerGame.NR_LINES];
+    private final int[][] candidates = new int[25][25];
+    private final int[][] values = new int[25][25];
+    private final int[] reached = new int[26];
+    private final int[] tried = new int[26];
+    private final int[] tries = new int[26];
+
+    /*
+     * The first 25 cards of the deal of a seed: the cards PokerGame deals
+     * after reset(new Random(seed)).
+     *
+     * Input : The seed (long).
+     * Output: The cards in the order they are dealt (int[]).
+     */
+    public static int[] deal(long seed) {
+        List<Integer> deck = new ArrayList<Integer>();
+        for (int card = 0; card < 52; card++) {
+            deck.add(card);
+        }
+        Collections.shuffle(deck, new Random(seed));
+        int[] cards = new int[25];
+        for (int i = 0; i < 25; i++) {
+            cards[i] = deck.get(i);
+        }
+        return cards;
+    }
+
+    /*
+     * Find the best board for 25 cards.
+     *
+     * Input : The cards (int[], 25 different cards).
+     * Output: The best score found (int); the board is left in bestBoard,
+     *         with the card on every position x * 5 + y. Whether it is
+     *         proven to be the best is left in proven, and the bound on
+     *         the best score in upper.
+     */
+    public int solve(int[] cards) {
+        if (cards.length != 25) {
+            throw new IllegalArgumentException("A board takes 25 cards.");
+        }
+        long check = 0;
+        for (int card : cards) {
+            if (card < 0 || card >= 52 || (check & (1L << card)) != 0) {
+                throw new IllegalArgumentException("Not 25 different cards.");
+            }
+            check |= 1L << card;
+        }
+        long start = System.nanoTime();
+        Random rnd = new Random(check);
+        nodes = 0;
+        best = anneal(cards, rnd);
+
+        /* Search again, exactly, around the best board so far. */
+        int[] cells = new int[25];
+        boolean[] open = new boolean[25];
+        for (int round = 0; round < NEIGHBOURHOOD_ROUNDS; round++) {
+            for (int i = 0; i < 25; i++) {
+                cells[i] = ORDER[i];
+            }
+            for (int i = 0; i < NEIGHBOURHOOD_CELLS; i++) {
+                int j = i + rnd.nextInt(25 - i);
+                int t = cells[i];
+                cells[i] = cells[j];
+                cells[j] = t;
+            }
+            Arrays.fill(open, false);
+            for (int i = 0; i < NEIGHBOURHOOD_CELLS; i++) {
+                open[cells[i]] = true;
+            }
+            improve(open, NEIGHBOURHOOD_NODES);
+        }
+
+        /* Search all boards. */
+        clear();
+        for (int card : cards) {
+            take(card);
+        }
+        System.arraycopy(ORDER, 0, free, 0, 25);
+        nrFree = 25;
+        symmetric = true;
+        limit = nodes + nodeLimit;
+        aborted = false;
+        search(0);
+        proven = !aborted;
+        upper = proven ? best : Math.max(best, Math.min(openBound(0), PokerGame.MAX_SCORE));
+        nanos = System.nanoTime() - start;
+        return best;
+    }
+
+    /*
+     * Refill some positions of a board in the best way, while the other
+     * positions keep their cards. Used to check the search against trying
+     * every order of the cards (see OptimalSolverCheck).
+     *
+     * Input : The board (int[], a card on every position x * 5 + y), the
+     *         positions to refill (boolean[]) and the node limit (long).
+     * Output: The best score found (int), at least that of the board; the
+     *         board is left in bestBoard, and whether the search ended
+     *         within the limit in proven.
+     */
+    public int refill(int[] cards, boolean[] open, long nodeLimit) {
+        long start = System.nanoTime();
+        nodes = 0;
+        best = score(cards);
+        System.arraycopy(cards, 0, bestBoard, 0, 25);
+        improve(open, nodeLimit);
+        proven = !aborted;
+        upper = proven ? best : PokerGame.MAX_SCORE;
+        nanos = System.nanoTime() - start;
+        return best;
+    }
+
+    /*
+     * Search the boards that keep the cards of the best board so far on
+     * every position that is not open.
+     */
+    private void improve(boolean[] open, long nodeLimit) {
+        int[] kept = bestBoard.clone();
+        clear();
+        nrFree = 0;
+        for (int i = 0; i < 25; i++) {
+            int cell = ORDER[i];
+            take(kept[cell]);
+            if (open[cell]) {
+                free[nrFree++] = cell;
+            }
+            else {
+                place(cell, kept[cell]);
+            }
+        }
+        symmetric = false;
+        limit = nodeLimit > Long.MAX_VALUE - nodes ? Long.MAX_VALUE : nodes + nodeLimit;
+        aborted = false;
+        search(0);
+    }
+
+    /* Put a card with the cards that are left. */
+    private void take(int card) {
+        rest |= 1L << card;
+        restRanks[card % 13]++;
+        restSuits[card / 13]++;
+    }
+
+    private void clear() {
+        for (int l = 0; l < PokerGame.NR_LINES; l++) {
+            Arrays.fill(lineRanks[l], (byte)0);
+            Arrays.fill(lineSuits[l], (byte)0);
+            lineRankMask[l] = 0;
+            linePairs[l] = 0;
+            lineSuitMask[l] = 0;
+            lineFill[l] = 0;
+            lineCards[l] = 0;
+        }
+        Arrays.fill(board, -1);
+        Arrays.fill(restRanks, 0);
+        Arrays.fill(restSuits, 0);
+        rest = 0;
+    }
+
+    /*
+     * Search the boards that extend the current one, filling the position
+     * free[depth] next.
+     */
+    private void search(int depth) {
+        tried[depth] = 0;
+        tries[depth] = 0;
+        if (nodes++ >= limit) {
+            aborted = true;
+            reached[depth] = Integer.MAX_VALUE;
+            return;
+        }
+        int[] bound = bounds[depth];
+        int total = 0;
+        for (int l = 0; l < PokerGame.NR_LINES; l++) {
+            bound[l] = lineBound(l);
+            total += bound[l];
+        }
+        reached[depth] = total;
+        if (total <= best) {
+            return;
+        }
+        if (depth == nrFree) {
+            best = total;
+            System.arraycopy(board, 0, bestBoard, 0, 25);
+            return;
+        }
+
+        /* The rows share no cards, nor do the columns: bound each of them
+         * together. */
+        int diagonals = bound[10] + bound[11];
+        int columns = bound[5] + bound[6] + bound[7] + bound[8] + bound[9];
+        int rows = family(0, bound);
+        if (rows + columns + diagonals <= best) {
+            return;
+        }
+        columns = family(5, bound);
+        reached[depth] = Math.min(total, rows + columns + diagonals);
+        if (reached[depth] <= best) {
+            return;
+        }
+
+        /* Bound every card on the next position, from the lines through it;
+         * the bounds of the other lines can only go down. */
+        int cell = free[depth];
+        int[] lines = PokerGame.CELL_LINES[cell];
+        int others = total;
+        for (int l : lines) {
+            others -= bound[l];
+        }
+        int[] cards = candidates[depth];
+        int[] value = values[depth];
+        int n = 0;
+        for (long left = rest; left != 0; left &= left - 1) {
+            int card = Long.numberOfTrailingZeros(left);
+            if (symmetric && !canonical(cell, card)) {
+                continue;
+            }
+            place(cell, card);
+            int v = others;
+            for (int l : lines) {
+                v += lineBound(l);
+            }
+            remove(cell, card);
+            if (v > best) {
+                /* Keep the candidates sorted, highest bound first. */
+                int i = n++;
+                while (i > 0 && value[i - 1] < v) {
+                    cards[i] = cards[i - 1];
+                    value[i] = value[i - 1];
+                    i--;
+                }
+                cards[i] = card;
+                value[i] = v;
+            }
+        }
+        tries[depth] = n;
+        for (int i = 0; i < n && value[i] > best; i++) {
+            tried[depth] = i + 1;
+            place(cell, cards[i]);
+            search(depth + 1);
+            remove(cell, cards[i]);
+            if (aborted) {
+                return;
+            }
+        }
+    }
+
+    /*
+     * After an aborted search, the bound on the boards it did not get to:
+     * those below the position it stopped at, and those below the cards
+     * not yet tried on each position on the way there.
+     */
+    private int openBound(int depth) {
+        if (reached[depth] == Integer.MAX_VALUE) {
+            return Integer.MAX_VALUE;
+        }
+        int open = 0;
+        if (tried[depth] < tries[depth]) {
+            open = values[depth][tried[depth]];
+        }
+        if (tried[depth] > 0) {
+            open = Math.max(open, Math.min(values[depth][tried[depth] - 1],
+                    openBound(depth + 1)));
+        }
+        return Math.min(open, reached[depth]);
+    }
+
+    /*
+     * Whether a card may go on a position without leaving the one image of
+     * the board that is searched: the top left corner holds the lowest of
+     * the corner cards, and the top right a lower card than the bottom left.
+     */
+    private boolean canonical(int cell, int card) {
+        switch (cell) {
+            case TOP_RIGHT:
+                return card > board[TOP_LEFT];
+            case BOTTOM_LEFT:
+                return card > board[TOP_RIGHT];
+            case BOTTOM_RIGHT:
+                return card > board[TOP_LEFT];
+            default:
+                return true;
+        }
+    }
+
+    private void place(int cell, int card) {
+        int rank = card % 13;
+        int suit = card / 13;
+        board[cell] = card;
+        for (int l : PokerGame.CELL_LINES[cell]) {
+            if (++lineRanks[l][rank] == 2) {
+                linePairs[l] |= 1 << rank;
+            }
+            lineRankMask[l] |= 1 << rank;
+            lineSuits[l][suit]++;
+            lineSuitMask[l] |= 1 << suit;
+            lineFill[l]++;
+            lineCards[l] |= 1L << card;
+        }
+        restRanks[rank]--;
+        restSuits[suit]--;
+        rest &= ~(1L << card);
+    }
+
+    private void remove(int cell, int card) {
+        int rank = card % 13;
+        int suit = card / 13;
+        board[cell] = -1;
+        for (int l : PokerGame.CELL_LINES[cell]) {
+            int left = --lineRanks[l][rank];
+            if (left == 1) {
+                linePairs[l] &= ~(1 << rank);
+            }
+            else if (left == 0) {
+                lineRankMask[l] &= ~(1 << rank);
+            }
+            if (--lineSuits[l][suit] == 0) {
+                lineSuitMask[l] &= ~(1 << suit);
+            }
+            lineFill[l]--;
+            lineCards[l] &= ~(1L << card);
+        }
+        restRanks[rank]++;
+        restSuits[suit]++;
+        rest |= 1L << card;
+    }
+
+    /*
+     * The most points a line can still score: the exact score of a full
+     * line, and otherwise the best hand that its cards and the cards that
+     * are left could make.
+     */
+    private int lineBound(int l) {
+        int fill = lineFill[l];
+        int ranks = lineRankMask[l];
+        int suits = lineSuitMask[l];
+        if (fill == 5) {
+            return HandEvaluator.lookup(ranks, linePairs[l], suits);
+        }
+        int[] points = HandEvaluator.POINTS;
+        byte[] count = lineRanks[l];
+        int distinct = Integer.bitCount(ranks);
+        boolean oneSuit = (suits & (suits - 1)) == 0;
+
+        /* A straight flush needs one suit and the missing cards of a
+         * straight around the ranks of the line. */
+        if (oneSuit) {
+            for (int s = 0; s < 4; s++) {
+                if (suits != 0 && suits != 1 << s) {
+                    continue;
+                }
+                for (int w = 0; w < STRAIGHTS.length; w++) {
+                    if ((ranks & ~STRAIGHTS[w]) == 0 &&
+                            (STRAIGHT_FLUSHES[s][w] & ~lineCards[l] & ~rest) == 0) {
+                        return points[HandEvaluator.STRAIGHT_FLUSH];
+                    }
+                }
+            }
+        }
+
+        /* Four of a kind needs four of a rank and at most one other card. */
+        int restMask = 0;
+        int restPairs = 0;
+        int restTrips = 0;
+        for (int r = 0; r < 13; r++) {
+            int c = count[r];
+            int left = restRanks[r];
+            if (fill - c <= 1 && c + left >= 4) {
+                return points[HandEvaluator.FOUR_OF_A_KIND];
+            }
+            if (left > 0) {
+                restMask |= 1 << r;
+            }
+            if (left >= 2) {
+                restPairs |= 1 << r;
+            }
+            if (left >= 3) {
+                restTrips |= 1 << r;
+            }
+        }
+
+        /* A straight needs different ranks and a card of each missing rank. */
+        if (distinct == fill) {
+            for (int w = 0; w < STRAIGHTS.length; w++) {
+                int missing = STRAIGHTS[w] & ~ranks;
+                if ((ranks & ~STRAIGHTS[w]) == 0 && (missing & ~restMask) == 0) {
+                    return points[HandEvaluator.STRAIGHT];
+                }
+            }
+        }
+
+        /* A full house needs at most two ranks on the line. */
+        if (distinct == 2) {
+            int a = Integer.numberOfTrailingZeros(ranks);
+            int b = 31 - Integer.numberOfLeadingZeros(ranks);
+            int ca = count[a] + restRanks[a];
+            int cb = count[b] + restRanks[b];
+            if ((ca >= 3 && cb >= 2) || (ca >= 2 && cb >= 3)) {
+                return points[HandEvaluator.FULL_HOUSE];
+            }
+        }
+        else if (distinct == 1) {
+            int a = Integer.numberOfTrailingZeros(ranks);
+            int ca = count[a] + restRanks[a];
+            int others = ~(1 << a);
+            if ((ca >= 3 && (restPairs & others) != 0) || (ca >= 2 && (restTrips & others) != 0)) {
+                return points[HandEvaluator.FULL_HOUSE];
+            }
+        }
+        else if (distinct == 0 && restTrips != 0 &&
+                (restPairs & ~Integer.lowestOneBit(restTrips)) != 0) {
+            return points[HandEvaluator.FULL_HOUSE];
+        }
+
+        /* Three of a kind needs three of a rank and at most two others. */
+        for (int r = 0; r < 13; r++) {
+            if (fill - count[r] <= 2 && count[r] + restRanks[r] >= 3) {
+                return points[HandEvaluator.THREE_OF_A_KIND];
+            }
+        }
+
+        /* A flush needs one suit and enough cards of it left. */
+        if (oneSuit) {
+            for (int s = 0; s < 4; s++) {
+                if ((suits == 0 || suits == 1 << s) && restSuits[s] >= 5 - fill) {
+                    return points[HandEvaluator.FLUSH];
+                }
+            }
+        }
+
+        /* Two pair leaves room for three ranks at most. */
+        if (distinct <= 3) {
+            return points[HandEvaluator.TWO_PAIR];
+        }
+        return points[HandEvaluator.ONE_PAIR];
+    }
+
+    /* The most points the lines after each line of a family can score on
+     * their own, during family(). */
+    private final int[] ceiling = new int[6];
+
+    /*
+     * The most points five lines that share no positions can score
+     * together: every line takes the cards its hand needs from the cards
+     * that are left, so that no card goes to two lines.
+     *
+     * Input : The first line of the family (int, 0 for the rows and 5 for
+     *         the columns) and the bounds of the lines on their own (int[]).
+     * Output: The bound of the family (int).
+     */
+    private int family(int first, int[] bound) {
+        ceiling[5] = 0;
+        for (int i = 4; i >= 0; i--) {
+            ceiling[i] = ceiling[i + 1] + bound[first + i];
+        }
+        return pack(first, 0);
+    }
+
+    /*
+     * The best total of the lines first + i to first + 4, choosing for each
+     * line a hand and taking the ranks (or for a flush, the suit) of the
+     * cards it still needs from the cards that are left. A card may count
+     * for a flush and for another hand, so the bound stays optimistic.
+     */
+    private int pack(int first, int i) {
+        if (i == 5) {
+            return 0;
+        }
+        int l = first + i;
+        int fill = lineFill[l];
+        int ranks = lineRankMask[l];
+        int suits = lineSuitMask[l];
+        if (fill == 5) {
+            return HandEvaluator.lookup(ranks, linePairs[l], suits) + pack(first, i + 1);
+        }
+        int[] points = HandEvaluator.POINTS;
+        int next = ceiling[i + 1];
+        byte[] count = lineRanks[l];
+        int distinct = Integer.bitCount(ranks);
+        boolean oneSuit = (suits & (suits - 1)) == 0;
+        int found = -1;
+
+        if (oneSuit) {
+            for (int s = 0; s < 4; s++) {
+                if (suits != 0 && suits != 1 << s) {
+                    continue;
+                }
+                for (int w = 0; w < STRAIGHTS.length; w++) {
+                    int missing = STRAIGHTS[w] & ~ranks;
+                    if ((ranks & ~STRAIGHTS[w]) == 0 &&
+                            (STRAIGHT_FLUSHES[s][w] & ~lineCards[l] & ~rest) == 0 &&
+                            available(missing)) {
+                        found = Math.max(found, points[HandEvaluator.STRAIGHT_FLUSH] +
+                                packEach(first, i, missing));
+                    }
+                }
+            }
+        }
+        if (found >= points[HandEvaluator.FOUR_OF_A_KIND] + next) {
+            return found;
+        }
+        for (int r = 0; r < 13; r++) {
+            int need = 4 - count[r];
+            if (fill - count[r] <= 1 && restRanks[r] >= need) {
+                found = Math.max(found, points[HandEvaluator.FOUR_OF_A_KIND] +
+                        packRank(first, i, r, need));
+            }
+        }
+        if (found >= points[HandEvaluator.STRAIGHT] + next) {
+            return found;
+        }
+        if (distinct == fill) {
+            for (int w = 0; w < STRAIGHTS.length; w++) {
+                int missing = STRAIGHTS[w] & ~ranks;
+                if ((ranks & ~STRAIGHTS[w]) == 0 && available(missing)) {
+                    found = Math.max(found, points[HandEvaluator.STRAIGHT] +
+                            packEach(first, i, missing));
+                }
+            }
+        }
+        if (found >= points[HandEvaluator.FULL_HOUSE] + next) {
+            return found;
+        }
+        if (distinct <= 2) {
+            for (int a = 0; a < 13; a++) {
+                int needA = 3 - count[a];
+                if (needA < 0 || restRanks[a] < needA) {
+                    continue;
+                }
+                for (int b = 0; b < 13; b++) {
+                    int needB = 2 - count[b];
+                    if (b == a || needB < 0 || restRanks[b] < needB ||
+                            (ranks & ~(1 << a) & ~(1 << b)) != 0) {
+                        continue;
+                    }
+                    restRanks[a] -= needA;
+                    found = Math.max(found, points[HandEvaluator.FULL_HOUSE] +
+                            packRank(first, i, b, needB));
+                    restRanks[a] += needA;
+                }
+            }
+        }
+        if (found >= points[HandEvaluator.THREE_OF_A_KIND] + next) {
+            return found;
+        }
+        for (int r = 0; r < 13; r++) {
+            int need = 3 - count[r];
+            if (fill - count[r] <= 2 && need >= 0 && restRanks[r] >= need) {
+                found = Math.max(found, points[HandEvaluator.THREE_OF_A_KIND] +
+                        packRank(first, i, r, need));
+            }
+        }
+        if (found >= points[HandEvaluator.FLUSH] + next) {
+            return found;
+        }
+        if (oneSuit) {
+            int need = 5 - fill;
+            for (int s = 0; s < 4; s++) {
+                if ((suits == 0 || suits == 1 << s) && restSuits[s] >= need) {
+                    restSuits[s] -= need;
+                    found = Math.max(found, points[HandEvaluator.FLUSH] + pack(first, i + 1));
+                    restSuits[s] += need;
+                }
+            }
+        }
+        if (found >= points[HandEvaluator.TWO_PAIR] + next) {
+            return found;
+        }
+        for (int a = 0; a < 13; a++) {
+            int needA = 2 - count[a];
+            if (needA < 0 || restRanks[a] < needA) {
+                continue;
+            }
+            for (int b = a + 1; b < 13; b++) {
+                int needB = 2 - count[b];
+                if (needB < 0 || restRanks[b] < needB || fill - count[a] - count[b] > 1) {
+                    continue;
+                }
+                restRanks[a] -= needA;
+                found = Math.max(found, points[HandEvaluator.TWO_PAIR] +
+                        packRank(first, i, b, needB));
+                restRanks[a] += needA;
+            }
+        }
+        if (found >= points[HandEvaluator.ONE_PAIR] + next) {
+            return found;
+        }
+        for (int r = 0; r < 13; r++) {
+            int need = 2 - count[r];
+            if (fill - count[r] <= 3 && need >= 0 && restRanks[r] >= need) {
+                found = Math.max(found, points[HandEvaluator.ONE_PAIR] +
+                        packRank(first, i, r, need));
+                if (need == 0) {
+                    break;
+                }
+            }
+        }
+        if (found >= next) {
+            return found;
+        }
+        return Math.max(found, pack(first, i + 1));
+    }
+
+    /* Whether a card of every rank in the mask is left. */
+    private boolean available(int mask) {
+        for (int m = mask; m != 0; m &= m - 1) {
+            if (restRanks[Integer.numberOfTrailingZeros(m)] == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* Pack the next lines after taking a card of every rank in the mask. */
+    private int packEach(int first, int i, int mask) {
+        for (int m = mask; m != 0; m &= m - 1) {
+            restRanks[Integer.numberOfTrailingZeros(m)]--;
+        }
+        int total = pack(first, i + 1);
+        for (int m = mask; m != 0; m &= m - 1) {
+            restRanks[Integer.numberOfTrailingZeros(m)]++;
+        }
+        return total;
+    }
+
+    /* Pack the next lines after taking cards of one rank. */
+    private int packRank(int first, int i, int rank, int need) {
+        restRanks[rank] -= need;
+        int total = pack(first, i + 1);
+        restRanks[rank] += need;
+        return total;
+    }
+
+    /*
+     * A good first board, by simulated annealing over swaps of two
+     * positions: a swap that lowers the score is still taken with a
+     * probability that shrinks as the temperature goes down.
+     */
+    private int anneal(int[] cards, Random rnd) {
+        int[] trial = new int[25];
+        int found = -1;
+        for (int run = 0; run < ANNEAL_RUNS; run++) {
+            System.arraycopy(cards, 0, trial, 0, 25);
+            int score = score(trial);
+            if (score > found) {
+                found = score;
+                System.arraycopy(trial, 0, bestBoard, 0, 25);
+            }
+            for (int step = 0; step < ANNEAL_STEPS; step++) {
+                double temperature = START_TEMPERATURE *
+                        Math.pow(END_TEMPERATURE / START_TEMPERATURE, step / (double)ANNEAL_STEPS);
+                int i = rnd.nextInt(25);
+                int j = rnd.nextInt(25);
+                int t = trial[i];
+                trial[i] = trial[j];
+                trial[j] = t;
+                int s = score(trial);
+                if (s >= score || rnd.nextDouble() < Math.exp((s - score) / temperature)) {
+                    score = s;
+                    if (score > found) {
+                        found = score;
+                        System.arraycopy(trial, 0, bestBoard, 0, 25);
+                    }
+                }
+                else {
+                    trial[j] = trial[i];
+                    trial[i] = t;
+                }
+            }
+        }
+        return found;
+    }
+
+    /*
+     * The score of a full board.
+     *
+     * Input : The cards on the positions x * 5 + y (int[]).
+     * Output: The score (int).
+     */
+    public static int score(int[] cards) {
+        int score = 0;
+        for (int[] cells : PokerGame.LINE_CELLS) {
+            score += HandEvaluator.score(cards[cells[0]], cards[cells[1]], cards[cells[2]],
+                    cards[cells[3]], cards[cells[4]]);
+        }
+        return score;
+    }
+
+    /*
+     * The solver and the games of one thread of a batch.
+     */
+    private static final class Worker {
+        final OptimalSolver solver = new OptimalSolver();
+        final PokerGame game = new PokerGame();
+        final PlacementPolicy[] policies = new PlacementPolicy[POLICIES.length];
+
+        Worker(long nodeLimit) {
+            solver.nodeLimit = nodeLimit;
+            for (int p = 0; p < POLICIES.length; p++) {
+                policies[p] = Simulator.policy(POLICIES[p]);
+            }
+        }
+
+        /*
+         * Solve the deal of a seed and play it with each policy. A policy
+         * that happens to beat the solver still shows a board that can be
+         * reached, so the best score is at least its score.
+         */
+        String run(long seed) {
+            int best = solver.solve(deal(seed));
+            StringBuilder scores = new StringBuilder();
+            for (PlacementPolicy policy : policies) {
+                int score = Simulator.play(game, policy, new Random(seed));
+                best = Math.max(best, score);
+                scores.append(' ').append(score);
+            }
+            return seed + " " + best + " " + Math.max(best, solver.upper) + " " +
+                    (solver.proven ? 1 : 0) + " " + solver.nodes + " " +
+                    solver.nanos / 1000000 + scores;
+        }
+    }
+
+    /*
+     * The seeds of one shard of a batch and its checkpoint file, which has
+     * a line for every finished seed:
+     *
+     *   seed best bound proven nodes milliseconds score-of-each-policy
+     *
+     * The best score is the best board found and the bound the most any
+     * board could score, by the loose bound of the search; proven is 1 only
+     * when the search got through every board, and the two are the same.
+     */
+    static final class Shard {
+        final long from;
+        final long to;
+        final File file;
+
+        Shard(File directory, long from, long to, int index, int count) {
+            long size = to - from;
+            this.from = from + size * index / count;
+            this.to = from + size * (index + 1) / count;
+            this.file = new File(directory, "shard-" + index + "-of-" + count + ".txt");
+        }
+
+        /*
+         * The seeds that are already in the checkpoint file. A new file is
+         * started with a header of the range and the columns.
+         *
+         * Input : -
+         * Output: The seeds (Set<Long>).
+         */
+        Set<Long> finished() throws IOException {
+            Set<Long> seeds = new HashSet<Long>();
+            String range = "# seeds " + from + " " + to;
+            if (!file.exists()) {
+                PrintWriter out = new PrintWriter(new FileWriter(file));
+                try {
+                    out.println(range);
+                    out.println("# seed best bound proven nodes ms " + String.join(" ", POLICIES));
+                }
+                finally {
+                    out.close();
+                }
+                return seeds;
+            }
+            for (String[] fields : read(file)) {
+                if (fields[0].equals("#")) {
+                    if (fields[1].equals("seeds") && !range.equals(String.join(" ", fields))) {
+                        throw new IllegalStateException(file + " holds another range: " +
+                                String.join(" ", fields));
+                    }
+                    continue;
+                }
+                seeds.add(Long.parseLong(fields[0]));
+            }
+            return seeds;
+        }
+
+        /*
+         * Append the line of a finished seed. The file is opened for every
+         * line, so a line is on disk as soon as the seed is finished.
+         *
+         * Input : The line (String).
+         * Output: -
+         */
+        synchronized void record(String line) throws IOException {
+            PrintWriter out = new PrintWriter(new FileWriter(file, true));
+            try {
+                out.println(line);
+            }
+            finally {
+                out.close();
+            }
+        }
+    }
+
+    /*
+     * The lines of a checkpoint file, split in fields. A line cut off when
+     * a batch was stopped is left out.
+     */
+    private static List<String[]> read(File file) throws IOException {
+        List<String[]> lines = new ArrayList<String[]>();
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.trim().split("\\s+");
+                if (fields[0].equals("#") || fields.length == 6 + POLICIES.length) {
+                    lines.add(fields);
+                }
+            }
+        }
+        finally {
+            in.close();
+        }
+        return lines;
+    }
+
+    /*
+     * Solve the seeds of some shards of a range, skipping the seeds that
+     * are already in their checkpoint files.
+     *
+     * Input : The range of seeds (long, long, the last one excluded), the
+     *         number of shards (int), the shards to run (int[]), the
+     *         number of threads (int), the node limit (long) and the
+     *         directory of the checkpoint files (File).
+     * Output: -
+     */
+    public static void batch(long from, long to, int count, int[] shards, int threads,
+            final long nodeLimit, File directory) throws IOException, InterruptedException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        final ThreadLocal<Worker> workers = new ThreadLocal<Worker>() {
+            protected Worker initialValue() {
+                return new Worker(nodeLimit);
+            }
+        };
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int index : shards) {
+            final Shard shard = new Shard(directory, from, to, index, count);
+            Set<Long> done = shard.finished();
+            System.out.println("Shard " + index + " of " + count + ": seeds " + shard.from +
+                    " to " + shard.to + ", " + done.size() + " done before.");
+            for (long seed = shard.from; seed < shard.to; seed++) {
+                if (done.contains(seed)) {
+                    continue;
+                }
+                final long s = seed;
+                pool.execute(new Runnable() {
+                    public void run() {
+                        String line = workers.get().run(s);
+                        try {
+                            shard.record(line);
+                        }
+                        catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        System.out.println(line);
+                    }
+                });
+            }
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /*
+     * Combine the checkpoint files of a directory and print how far the
+     * policies are from the best boards found, and on how many deals a
+     * winning board was found. The bounds are not reported: they are too
+     * loose to tell how far the boards found are from the best ones.
+     *
+     * Input : The directory (File).
+     * Output: -
+     */
+    public static void merge(File directory) throws IOException {
+        Map<Long, String[]> results = new TreeMap<Long, String[]>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().startsWith("shard-") && file.getName().endsWith(".txt")) {
+                    for (String[] fields : read(file)) {
+                        if (!fields[0].equals("#")) {
+                            results.put(Long.parseLong(fields[0]), fields);
+                        }
+                    }
+                }
+            }
+        }
+        if (results.isEmpty()) {
+            System.out.println("No finished seeds in " + directory + ".");
+            return;
+        }
+
+        int n = results.size();
+        ScoreStats best = new ScoreStats(n);
+        long winnable = 0;
+        ScoreStats[] played = new ScoreStats[POLICIES.length];
+        long[] gaps = new long[POLICIES.length];
+        long[] matched = new long[POLICIES.length];
+        long[] wonWinnable = new long[POLICIES.length];
+        for (int p = 0; p < POLICIES.length; p++) {
+            played[p] = new ScoreStats(n);
+        }
+        for (String[] fields : results.values()) {
+            int score = Integer.parseInt(fields[1]);
+            best.add(score);
+            if (score >= PokerGame.WIN_SCORE) {
+                winnable++;
+            }
+            for (int p = 0; p < POLICIES.length; p++) {
+                int s = Integer.parseInt(fields[6 + p]);
+                played[p].add(s);
+                gaps[p] += score - s;
+                matched[p] += s == score ? 1 : 0;
+                if (s >= PokerGame.WIN_SCORE) {
+                    wonWinnable[p]++;
+                }
+            }
+        }
+
+        System.out.println("Deals: " + n + " (seeds " + results.keySet().iterator().next() +
+                " to " + ((TreeMap<Long, String[]>)results).lastKey() + ")");
+        System.out.printf("Best boards found: average %.2f, p10 %d, p50 %d, p90 %d, best %d%n",
+                best.mean(), best.quantile(0.1), best.quantile(0.5), best.quantile(0.9),
+                best.best());
+        System.out.printf("Deals with a board of %d or more found: %d (%.4f)%n",
+                PokerGame.WIN_SCORE, winnable, winnable / (double)n);
+        System.out.println("Policies (gap to the best board found, deals played as well, " +
+                "deals won of those):");
+        for (int p = 0; p < POLICIES.length; p++) {
+            System.out.printf("  %-10s average %.2f, gap %.2f, best %.4f, won %.4f%n",
+                    POLICIES[p], played[p].mean(), gaps[p] / (double)n, matched[p] / (double)n,
+                    winnable == 0 ? 0.0 : wonWinnable[p] / (double)winnable);
+        }
+    }
+
+    /* Parse a comma separated list of shards, or all of them. */
+    private static int[] shards(String list, int count) {
+        if (list == null) {
+            int[] all = new int[count];
+            for (int i = 0; i < count; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        String[] parts = list.split(",");
+        int[] shards = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            shards[i] = Integer.parseInt(parts[i].trim());
+            if (shards[i] < 0 || shards[i] >= count) {
+                throw new IllegalArgumentException("No shard " + shards[i] + " of " + count);
+            }
+        }
+        return shards;
+    }
+
+    /*
+     * Main function. Solves a deal, a batch of seeds or merges a batch.
+     *
+     * Input : 'solve', seed and node limit; 'batch', first and last seed,
+     *         shards, threads, directory and shards to run; or 'merge' and
+     *         directory (String[]).
+     * Output: -
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String mode = args.length > 0 ? args[0] : "solve";
+        if (mode.equals("batch")) {
+            long from = args.length > 1 ? Long.parseLong(args[1]) : 0;
+            long to = args.length > 2 ? Long.parseLong(args[2]) : from + 100;
+            int count = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+            int threads = args.length > 4 ? Integer.parseInt(args[4]) :
+                    Runtime.getRuntime().availableProcessors();
+            File directory = new File(args.length > 5 ? args[5] : "boards");
+            int[] shards = shards(args.length > 6 ? args[6] : null, count);
+            batch(from, to, count, shards, threads, DEFAULT_NODE_LIMIT, directory);
+            merge(directory);
+            return;
+        }
+        if (mode.equals("merge")) {
+            merge(new File(args.length > 1 ? args[1] : "boards"));
+            return;
+        }
+
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+        OptimalSolver solver = new OptimalSolver();
+        if (args.length > 2) {
+            solver.nodeLimit = Long.parseLong(args[2]);
+        }
+        int[] cards = deal(seed);
+        solver.solve(cards);
+        System.out.println("Seed " + seed + ": best found " + solver.best +
+                (solver.proven ? " (every board searched)" : " (search stopped, loose bound " +
+                solver.upper + ")") + ", " + solver.nodes + " nodes, " +
+                solver.nanos / 1000000 + " ms");
+        for (int y = 0; y < 5; y++) {
+            StringBuilder row = new StringBuilder();
+            for (int x = 0; x < 5; x++) {
+                row.append(String.format("%4s", name(solver.bestBoard[x * 5 + y])));
+            }
+            System.out.println(row);
+        }
+        PokerGame game = new PokerGame();
+        for (String name : POLICIES) {
+            System.out.println("  " + name + ": " +
+                    Simulator.play(game, Simulator.policy(name), new Random(seed)));
+        }
+    }
+
+    /* A short name of a card, such as 'QH' for the queen of hearts. */
+    private static String name(int card) {
+        return "23456789TJQKA".charAt(card % 13) + "" + "DHSC".charAt(card / 13);
+    }
+}
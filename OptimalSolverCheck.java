@@ -0,0 +1,141 @@
+/*
+ * OptimalSolverCheck.java
+ *
+ * This file contains the check of the branch-and-bound of OptimalSolver
+ * against trying every board.
+ *
+ * To run, type 'java OptimalSolverCheck [cases] [seed]', which refills 5 to
+ * 9 positions of random boards with both and exits with status 1 on any
+ * difference.
+ */
+
+import java.util.Arrays;
+import java.util.Random;
+
+
+/*
+ * Compares OptimalSolver.refill with a brute force over every order of the
+ * cards on the open positions. The other positions keep their cards, so up
+ * to 9! boards are tried per case. The bounds of the branch-and-bound may
+ * cut a branch only when no board in it beats the best so far, so both must
+ * find the same best score, and the search must end without a node limit.
+ */
+public class OptimalSolverCheck {
+    /* The fewest and most positions that are refilled. */
+    public static final int MIN_OPEN = 5;
+    public static final int MAX_OPEN = 9;
+
+    /* Largest number of differences that are printed. */
+    private static final int MAX_REPORTED = 20;
+
+    private final OptimalSolver solver = new OptimalSolver();
+    private long checked = 0;
+    private long mismatches = 0;
+    private long improved = 0;
+    private long boards = 0;
+    private long searchNanos = 0;
+    private long bruteNanos = 0;
+
+    /*
+     * Refill the open positions of a board with both and record the outcome.
+     *
+     * Input : The board (int[], a card on every position x * 5 + y) and the
+     *         positions to refill (int[]).
+     * Output: -
+     */
+    public void check(int[] board, int[] cells) {
+        boolean[] open = new boolean[25];
+        for (int cell : cells) {
+            open[cell] = true;
+        }
+        int found = solver.refill(board, open, Long.MAX_VALUE);
+        searchNanos += solver.nanos;
+
+        long start = System.nanoTime();
+        int[] trial = board.clone();
+        int expected = bruteForce(trial, cells, 0);
+        bruteNanos += System.nanoTime() - start;
+
+        boolean kept = true;
+        for (int cell = 0; cell < 25; cell++) {
+            kept &= open[cell] || solver.bestBoard[cell] == board[cell];
+        }
+        int scored = OptimalSolver.score(solver.bestBoard);
+        if (found != expected || !solver.proven || !kept || scored != found) {
+            if (mismatches < MAX_REPORTED) {
+                System.out.println("Board " + Arrays.toString(board) + ", open " +
+                        Arrays.toString(cells) + ": found " + found + " (board scores " +
+                        scored + (solver.proven ? "" : ", not proven") +
+                        (kept ? "" : ", closed position changed") + "), expected " + expected);
+            }
+            mismatches += 1;
+        }
+        if (expected > OptimalSolver.score(board)) {
+            improved += 1;
+        }
+        checked += 1;
+    }
+
+    /*
+     * The best score over every order of the cards on the open positions
+     * from the given one on.
+     */
+    private int bruteForce(int[] board, int[] cells, int i) {
+        if (i == cells.length) {
+            boards += 1;
+            return OptimalSolver.score(board);
+        }
+        int best = -1;
+        for (int j = i; j < cells.length; j++) {
+            swap(board, cells[i], cells[j]);
+            best = Math.max(best, bruteForce(board, cells, i + 1));
+            swap(board, cells[i], cells[j]);
+        }
+        return best;
+    }
+
+    private static void swap(int[] board, int a, int b) {
+        int t = board[a];
+        board[a] = board[b];
+        board[b] = t;
+    }
+
+    /*
+     * Main function. Runs the cases and prints the totals.
+     *
+     * Input : Number of cases and seed (String[]).
+     * Output: -
+     */
+    public static void main(String[] args) {
+        int cases = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+
+        OptimalSolverCheck check = new OptimalSolverCheck();
+        Random rnd = new Random(seed);
+        int[] cells = new int[25];
+        for (int n = 0; n < cases; n++) {
+            /* A deal on the board in a random order, with random positions
+             * opened. */
+            int[] board = OptimalSolver.deal(rnd.nextLong());
+            for (int i = 0; i < 25; i++) {
+                cells[i] = i;
+            }
+            for (int i = 24; i > 0; i--) {
+                swap(board, i, rnd.nextInt(i + 1));
+                swap(cells, i, rnd.nextInt(i + 1));
+            }
+            int nrOpen = MIN_OPEN + rnd.nextInt(MAX_OPEN - MIN_OPEN + 1);
+            check.check(board, Arrays.copyOf(cells, nrOpen));
+        }
+
+        System.out.println("Cases: " + check.checked + " with " + MIN_OPEN + " to " +
+                MAX_OPEN + " open positions (seed " + seed + "), " + check.improved +
+                " improved on the starting board");
+        System.out.printf("Branch-and-bound: %.3f s, brute force: %.3f s over %d boards%n",
+                check.searchNanos / 1e9, check.bruteNanos / 1e9, check.boards);
+        System.out.println("Mismatches: " + check.mismatches);
+        if (check.mismatches > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * PlacementAdvisor.java
+ *
+ * This file contains a Monte Carlo advisor, which estimates the final score
+ * of placing the current card on each empty position.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+
+
+/*
+ * Estimates the expected final score of each placement by random rollouts:
+ * the card is placed, the remaining empty positions are filled with cards
+ * drawn at random from the unseen cards, and the full board is scored.
+ *
+ * advise() spreads the rollouts over a pool of threads until a time budget
+ * runs out. Each thread uses its own ThreadLocalRandom and its own
+ * workspace, so the rollouts themselves allocate nothing and share nothing.
+ * evaluate() runs a fixed number of rollouts on the calling thread, which is
+ * what MonteCarloPolicy uses inside the (already parallel) simulator.
+ */
+public class PlacementAdvisor {
+    /* Workspace of each thread, reused for every rollout on that thread. */
+    private static final ThreadLocal<Workspace> workspaces = new ThreadLocal<Workspace>() {
+        protected Workspace initialValue() {
+            return new Workspace();
+        }
+    };
+
+    /* The threads running the rollouts. */
+    private final ExecutorService pool;
+    private final int threads;
+
+    /*
+     * Create an advisor using one thread per core.
+     *
+     * Input : -
+     * Output: -
+     */
+    public PlacementAdvisor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /*
+     * Create an advisor using the given number of threads.
+     *
+     * Input : The number of threads (int).
+     * Output: -
+     */
+    public PlacementAdvisor(int threads) {
+        this.threads = threads;
+        this.pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "placement-advisor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /*
+     * Estimate the final score for each empty position when the top card of
+     * the deck is placed there, using as many rollouts as fit in the budget.
+     *
+     * Input : The game (PokerGame) and the time budget (long, in ns).
+     * Output: The expected final score per position x * 5 + y (double[]),
+     *         NaN for positions that are taken.
+     */
+    public double[] advise(PokerGame game, long budgetNanos) {
+        final Workspace base = new Workspace();
+        base.load(game.board, game.deck, 0);
+        final long deadline = System.nanoTime() + budgetNanos;
+        double[] sums = new double[25];
+        long[] counts = new long[25];
+        if (base.nrEmpty == 0) {
+            return averages(sums, counts);
+        }
+
+        List<Future<double[]>> results = new ArrayList<Future<double[]>>(threads);
+        for (int t = 0; t < threads; t++) {
+            results.add(pool.submit(new Callable<double[]>() {
+                public double[] call() {
+                    Workspace ws = workspaces.get();
+                    ws.copy(base);
+                    Random rnd = ThreadLocalRandom.current();
+                    /* Always finish at least one round, even on a tiny budget. */
+                    do {
+                        ws.round(rnd);
+                    } while (System.nanoTime() < deadline &&
+                            !Thread.currentThread().isInterrupted());
+                    /* Hand back a copy, the workspace is reused by the thread. */
+                    double[] totals = new double[50];
+                    for (int cell = 0; cell < 25; cell++) {
+                        totals[cell] = ws.sums[cell];
+                        totals[25 + cell] = ws.counts[cell];
+                    }
+                    return totals;
+                }
+            }));
+        }
+
+        /* Merge the totals of all threads. */
+        try {
+            for (Future<double[]> result : results) {
+                double[] totals = result.get();
+                for (int cell = 0; cell < 25; cell++) {
+                    sums[cell] += totals[cell];
+                    counts[cell] += (long)totals[25 + cell];
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (Future<double[]> result : results) {
+                result.cancel(true);
+            }
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException("Rollout failed.", e.getCause());
+        }
+        return averages(sums, counts);
+    }
+
+    /*
+     * Estimate the final score for each empty position with a fixed number
+     * of rollouts per position, on the calling thread.
+     *
+     * Input : The game (PokerGame), the rollouts per position (int), the
+     *         generator (Random) and the output array (double[25]).
+     * Output: - (the estimates are written to the output, NaN when taken)
+     */
+    public static void evaluate(PokerGame game, int rollouts, Random rnd, double[] out) {
+        Workspace ws = workspaces.get();
+        ws.load(game.board, game.deck, 0);
+        for (int r = 0; r < rollouts; r++) {
+            ws.round(rnd);
+        }
+        for (int cell = 0; cell < 25; cell++) {
+            out[cell] = ws.counts[cell] == 0 ? Double.NaN :
+                    ws.sums[cell] / ws.counts[cell];
+        }
+    }
+
+    /*
+     * Select the position with the highest estimate.
+     *
+     * Input : The estimates (double[]).
+     * Output: The position x * 5 + y (int), or -1 if there is none.
+     */
+    public static int best(double[] estimates) {
+        int best = -1;
+        for (int cell = 0; cell < estimates.length; cell++) {
+            if (!Double.isNaN(estimates[cell]) &&
+                    (best == -1 || estimates[cell] > estimates[best])) {
+                best = cell;
+            }
+        }
+        return best;
+    }
+
+    /*
+     * Stop the threads of this advisor.
+     *
+     * Input : -
+     * Output: -
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private static double[] averages(double[] sums, long[] counts) {
+        double[] estimates = new double[25];
+        for (int cell = 0; cell < 25; cell++) {
+            estimates[cell] = counts[cell] == 0 ? Double.NaN : sums[cell] / counts[cell];
+        }
+        return estimates;
+    }
+
+    /*
+     * Score a full board given as 25 cells.
+     *
+     * Input : The board (int[25]).
+     * Output: The score (int).
+     */
+    static int scoreBoard(int[] cells) {
+        int total = 0;
+        for (int[] line : PokerGame.LINE_CELLS) {
+            total += HandEvaluator.score(cells[line[0]], cells[line[1]],
+                    cells[line[2]], cells[line[3]], cells[line[4]]);
+        }
+        return total;
+    }
+
+    /*
+     * The position being analysed and the running totals of one thread.
+     */
+    private static class Workspace {
+        /* The board as 25 cells (x * 5 + y), -1 for empty. */
+        final int[] board = new int[25];
+        /* The card to place. */
+        int card;
+        /* The empty cells. */
+        final int[] empty = new int[25];
+        int nrEmpty;
+        /* The cards that have not been seen, excluding the card to place. */
+        final int[] unseen = new int[52];
+        int nrUnseen;
+
+        /* Scratch board for a single rollout. */
+        final int[] work = new int[25];
+        /* Sum of the final scores and number of rollouts per cell. */
+        final double[] sums = new double[25];
+        final long[] counts = new long[25];
+
+        /*
+         * Load a position: the board and the deck, whose card at the given
+         * index is the one to place.
+         */
+        void load(int[][] grid, List<Integer> deck, int top) {
+            nrEmpty = 0;
+            for (int x = 0; x < 5; x++) {
+                for (int y = 0; y < 5; y++) {
+                    board[x * 5 + y] = grid[x][y];
+                    if (grid[x][y] == -1) {
+                        empty[nrEmpty++] = x * 5 + y;
+                    }
+                }
+            }
+            card = deck.get(top);
+            nrUnseen = 0;
+            for (int i = top + 1; i < deck.size(); i++) {
+                unseen[nrUnseen++] = deck.get(i);
+            }
+            clearTotals();
+        }
+
+        void copy(Workspace other) {
+            System.arraycopy(other.board, 0, board, 0, 25);
+            System.arraycopy(other.empty, 0, empty, 0, 25);
+            System.arraycopy(other.unseen, 0, unseen, 0, 52);
+            card = other.card;
+            nrEmpty = other.nrEmpty;
+            nrUnseen = other.nrUnseen;
+            clearTotals();
+        }
+
+        void clearTotals() {
+            for (int cell = 0; cell < 25; cell++) {
+                sums[cell] = 0;
+                counts[cell] = 0;
+            }
+        }
+
+        /*
+         * Run one rollout for every empty cell.
+         */
+        void round(Random rnd) {
+            for (int e = 0; e < nrEmpty; e++) {
+                int cell = empty[e];
+                sums[cell] += rollout(cell, rnd);
+                counts[cell] += 1;
+            }
+        }
+
+        /*
+         * Place the card on a cell and fill the rest of the board at random.
+         */
+        int rollout(int cell, Random rnd) {
+            System.arraycopy(board, 0, work, 0, 25);
+            work[cell] = card;
+            /* A partial Fisher-Yates shuffle draws the remaining cards. */
+            int n = nrUnseen;
+            for (int e = 0; e < nrEmpty; e++) {
+                int target = empty[e];
+                if (target == cell) {
+                    continue;
+                }
+                int k = rnd.nextInt(n);
+                int drawn = unseen[k];
+                unseen[k] = unseen[--n];
+                unseen[n] = drawn;
+                work[target] = drawn;
+            }
+            return scoreBoard(work);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * PlacementPolicy.java
+ *
+ * This file contains the interface for placement policies, which play games
+ * without a human player.
+ */
+
+import java.util.Random;
+
+
+/*
+ * A policy decides where the card on top of the pile is placed. It may look
+ * at the board and at which cards are still in the deck (LineOdds.unseen()
+ * gives them as a bit mask), but not at their order, which a player cannot
+ * see. Policies are shared between simulation threads, so they should not
+ * keep mutable state; any randomness comes from the generator of the calling
+ * thread. Only the greedy and random policies play by other rules than the
+ * standard ones.
+ */
+public interface PlacementPolicy {
+    /*
+     * Choose an empty position for a card.
+     *
+     * Input : The game (PokerGame), the card to place (int) and the random
+     *         generator of the calling thread (Random).
+     * Output: The chosen position as x * game.size + y (int).
+     */
+    int choose(PokerGame game, int card, Random rnd);
+}
@@ -9,37 +9,34 @@
 import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.Collections;
-
-import javax.swing.ImageIcon;
-
-import java.awt.Image;
-import java.awt.Color;
-import java.awt.Toolkit;
-
-import java.awt.image.ImageFilter;
-import java.awt.image.FilteredImageSource;
-import java.awt.image.RGBImageFilter;
-import java.awt.image.ImageProducer;
+import java.util.Random;
 
 
 /*
- * The actual poker game essentials. This class contains the playing cards,
- * the deck, the game state, and the current score. Furthermore, the scores
- * are computed here.
+ * The actual poker game essentials. This class contains the deck, the game
+ * state, and the current score. Furthermore, the scores are computed here.
+ * It does not depend on the user interface (the card images are kept in
+ * CardArt), so instances are cheap and can be reused through reset().
+ *
+ * The grid, its lines, the points per hand and the score to win come from
+ * the rules of the game (see Rules). Grids of more than 52 cells are dealt
+ * from several decks; card c then shows the face c % 52, so cards from
+ * different decks only differ in their number.
  */
 public class PokerGame {
-    /* The images containing the playing cards. */
-    public Image[] cards = new Image[52];
-    
-    /* Hardcoded values for the card with and height in pixels. */
-    public int cwidth = 79;
-    public int cheight = 123;
+    /* The rules of the game, and the grid size and number of cells. */
+    public final Rules rules;
+    public final int size;
+    public final int nr_cells;
     
     /* The game board and deck. */
-    public int[][] board = new int[5][5];
+    public int[][] board;
     public ArrayList<Integer> deck = new ArrayList<Integer>();
     public ArrayList<Integer> originaldeck = new ArrayList<Integer>();
     
+    /* Minimal final score needed to win a round by the standard rules. */
+    public static final int WIN_SCORE = Rules.STANDARD.winScore;
+    
     /* Game state. */
     public String state = "start";
     
@@ -47,241 +44,397 @@ public class PokerGame {
     public int score = 0;
     public int nr_used = 0;
     
+    /* The positions (x * size + y) in the order in which they were filled. */
+    public int[] moves;
+    
+    /*
+     * Running state of the scoring lines, in the order of rules.lines. Each
+     * line keeps a rank histogram, the ranks seen at all and at least twice,
+     * the suits seen and the number of cards placed on it.
+     */
+    public byte[][] lineRanks;
+    public int[] lineRankMask;
+    public int[] linePairs;
+    public int[] lineSuits;
+    public int[] lineFill;
+    
     /*
-     * Initialize the game by loading the images, shuffling the deck, and
-     * setting the board.
+     * The lines of the standard rules, for the code that only plays the
+     * standard game: 5 rows (indexed by y), 5 columns (indexed by x) and the
+     * two diagonals.
+     */
+    public static final int NR_LINES = Rules.STANDARD.lines.length;
+    
+    /* The highest possible score by the standard rules. */
+    public static final int MAX_SCORE = Rules.STANDARD.maxScore();
+    
+    /* The standard lines passing through each cell, indexed by x * 5 + y. */
+    public static final int[][] CELL_LINES = Rules.STANDARD.cellLines;
+    
+    /* The cells (x * 5 + y) of each standard line, in the order of the lines. */
+    public static final int[][] LINE_CELLS = Rules.STANDARD.lines;
+    
+    /*
+     * Initialize a game by the standard rules.
      *
      * Input : -
      * Output: -
      */
     public PokerGame() {
-        /* Load the cards and set magenta to invisible. */
-        Color bgcolor = new Color(255,0,255);
-        for (int i = 0; i < 52; i++) {
-            Image image = new ImageIcon("images/" + i + ".png").getImage();
-            cards[i] = setColorAlpha(image, bgcolor);
+        this(Rules.STANDARD);
+    }
+    
+    /*
+     * Initialize the game by shuffling the deck and setting the board.
+     *
+     * Input : The rules (Rules).
+     * Output: -
+     */
+    public PokerGame(Rules rules) {
+        long start = Metrics.GAME_NEW.start();
+        this.rules = rules;
+        size = rules.size;
+        nr_cells = size * size;
+        allocate();
+        for (int i = 0; i < 52 * rules.decks; i++) {
             originaldeck.add(i);
         }
         /* Shuffle the deck to randomize the cards. */
-        deck = new ArrayList<Integer>(originaldeck);
+        deck.addAll(originaldeck);
         Collections.shuffle(deck);
         
         /* Set the elements of the board to empty. */
-        for (int i = 0; i < 5; i++) {
-            for (int j = 0; j < 5; j++) {
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
                 board[i][j] = -1;
             }
         }
+        Metrics.GAME_NEW.stop(start);
     }
     
     /*
-     * Reset the elements of the game to start a new round.
+     * Allocate the board, the placements and the line state for the rules.
+     */
+    private void allocate() {
+        int nrLines = rules.lines.length;
+        board = new int[size][size];
+        moves = new int[nr_cells];
+        lineRanks = new byte[nrLines][13];
+        lineRankMask = new int[nrLines];
+        linePairs = new int[nrLines];
+        lineSuits = new int[nrLines];
+        lineFill = new int[nrLines];
+    }
+    
+    /*
+     * Reset the elements of the game to start a new round. The existing
+     * board, deck and line state are reused, so nothing is allocated.
      *
      * Input : -
      * Output: -
      */
     public void reset() {
-        for (int i = 0; i < 5; i++) {
-            for (int j = 0; j < 5; j++) {
-                board[i][j] = -1;
-            }
-        }
-        deck = new ArrayList<Integer>(originaldeck);
-        Collections.shuffle(deck);
-        state = "play";
-        score = 0;
-        nr_used = 0;
+        reset(null);
     }
     
     /*
-     * Check whether a new card has created a scoring hand.
+     * Reset the game, shuffling the deck with the given random generator.
+     * Used by the simulation code, which needs one generator per thread.
      *
-     * Input : Updated position (int, int).
+     * Input : The random generator (Random), or null for the shared one.
      * Output: -
      */
-    public void updateScore(int x, int y) {
-        int[] listX = new int[5];
-        int[] listY = new int[5];
-        int[] listD1 = new int[5];
-        int[] listD2 = new int[5];
-        
-        /* Load the affected lines. */
-        for (int i = 0; i < 5; i++) {
-            listX[i] = board[i][y];
-            listY[i] = board[x][i];
-            listD1[i] = board[i][i];
-            listD2[i] = board[i][4-i];
+    public void reset(Random rnd) {
+        clear();
+        deck.clear();
+        for (int i = 0; i < originaldeck.size(); i++) {
+            deck.add(originaldeck.get(i));
         }
-        
-        /* Check for new scores for the horizontal and vertical lines. */
-        score += checkScore(listX);
-        score += checkScore(listY);
-        
-        /* Check for new scores for the diagonal lines. */
-        if (x == y) {
-            score += checkScore(listD1);
+        if (rnd == null) {
+            Collections.shuffle(deck);
         }
-        else if (x + y == 4) {
-            score += checkScore(listD2);
+        else {
+            Collections.shuffle(deck, rnd);
         }
-        
-        nr_used += 1;
     }
     
     /*
-     * Create a new image from an old image by setting a specific color to
-     * transparent (used to remove the corners from the playing cards).
+     * Create an independent copy of the game, e.g. to analyse it on another
+     * thread.
      *
-     * Input : The input image (Image) and color (Color).
-     * Output: The new image (Image).
+     * Input : -
+     * Output: The copy (PokerGame).
      */
-    public static Image setColorAlpha(Image image, final Color color) {
-        /* Create the filter. */
-        ImageFilter filter = new RGBImageFilter() {
-            int marker = color.getRGB();
-            
-            public final int filterRGB(int x, int y, int rgb) {
-                if ((rgb | 0xFF000000 ) == marker) {
-                    return 0x00FFFFFF & rgb;
-                }
-                else {
-                    return rgb;
-                }
-            }
-        };
-        
-        /* Use the filter to create a new image. */
-        ImageProducer ip = new FilteredImageSource(image.getSource(), filter);
-        return Toolkit.getDefaultToolkit().createImage(ip);
+    public PokerGame copy() {
+        return new PokerGame(this);
     }
     
     /*
-     * Check the score for a single line.
+     * Initialize a game as a copy of another one. Unlike the public
+     * constructor, nothing is shuffled and no new game is counted.
      *
-     * Input : The line (int[]).
-     * Output: The score (int).
+     * Input : The game to copy (PokerGame).
+     * Output: -
      */
-    public static int checkScore(int[] array) {
-        /* Sort the array for efficient score computation. */
-        Arrays.sort(array);
-        /* If a line is not yet filled, there is no score. */
-        if (array[0] == -1) {
-            return 0;
-        }
-        
-        /* Check for each possible score. */
-        if (Scores.isFlush(array) && Scores.isStraight(array.clone())) {
-            return 30;
-        }
-        else if(Scores.hasFourofaKind(array.clone())) {
-            return 16;
-        }
-        else if(Scores.isStraight(array.clone())) {
-            return 12;
+    private PokerGame(PokerGame source) {
+        rules = source.rules;
+        size = source.size;
+        nr_cells = source.nr_cells;
+        allocate();
+        originaldeck.addAll(source.originaldeck);
+        deck.addAll(source.deck);
+        for (int x = 0; x < size; x++) {
+            System.arraycopy(source.board[x], 0, board[x], 0, size);
         }
-        else if(Scores.hasThreeofaKind(array.clone()) && Scores.countPairs(array.clone()) == 2) {
-            return 10;
-        }
-        else if(Scores.hasThreeofaKind(array.clone())) {
-            return 6;
+        state = source.state;
+        System.arraycopy(source.moves, 0, moves, 0, nr_cells);
+        nr_used = source.nr_used;
+        recompute();
+    }
+    
+    /*
+     * Empty the board and clear the score, leaving the deck as it is. Used
+     * to replay a recorded game.
+     *
+     * Input : -
+     * Output: -
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                board[i][j] = -1;
+            }
         }
-        else if(Scores.isFlush(array.clone())) {
-            return 5;
+        state = "play";
+        clearLines();
+    }
+    
+    /*
+     * Clear the score and the state of all lines.
+     *
+     * Input : -
+     * Output: -
+     */
+    private void clearLines() {
+        score = 0;
+        nr_used = 0;
+        for (int l = 0; l < lineFill.length; l++) {
+            Arrays.fill(lineRanks[l], (byte)0);
+            lineRankMask[l] = 0;
+            linePairs[l] = 0;
+            lineSuits[l] = 0;
+            lineFill[l] = 0;
         }
-        else if(Scores.countPairs(array.clone()) == 2) {
-            return 3;
+    }
+    
+    /*
+     * Recompute the score, the number of used places and the line state
+     * from the board, after the board has been set directly. The order of
+     * the placements is kept: the positions of moves (up to nr_used) that
+     * still hold a card come first, in their order, followed by any other
+     * filled positions in position order.
+     *
+     * Input : -
+     * Output: -
+     */
+    public void recompute() {
+        int[] order = moves.clone();
+        int known = nr_used;
+        boolean[] done = new boolean[nr_cells];
+        clearLines();
+        for (int i = 0; i < known; i++) {
+            int cell = order[i];
+            if (board[cell / size][cell % size] != -1 && !done[cell]) {
+                done[cell] = true;
+                updateScore(cell / size, cell % size);
+            }
         }
-        else if(Scores.countPairs(array.clone()) == 1) {
-            return 1;
+        for (int cell = 0; cell < nr_cells; cell++) {
+            if (board[cell / size][cell % size] != -1 && !done[cell]) {
+                updateScore(cell / size, cell % size);
+            }
         }
-        return 0;
     }
-}
-
-/*
- * This is a helper class which contains a set of static functions to check
- * the presence of certain hands.
- */
-class Scores {
+    
     /*
-     * Test whether the hand is a straight.
+     * Check whether a new card has created a scoring hand. Only the lines
+     * through the updated position are touched, and a line is scored once,
+     * when its fifth card is placed.
+     *
+     * Input : Updated position (int, int).
+     * Output: -
      */
-    public static boolean isStraight(int[] array) {
-        for (int i = 0; i < 5; i++) {
-            array[i] = array[i] % 13;
-        }
-        Arrays.sort(array);
+    public void updateScore(int x, int y) {
+        long start = Metrics.UPDATE_SCORE.start();
+        int face = board[x][y] % 52;
+        int rank = face % 13;
+        int rankBit = 1 << rank;
+        int suitBit = 1 << (face / 13);
         
-        for (int i = 1; i < 4; i++) {
-            if (array[i] - array[i-1] != 1) {
-                return false;
+        for (int l : rules.cellLines[x * size + y]) {
+            if (lineRanks[l][rank]++ > 0) {
+                linePairs[l] |= rankBit;
+            }
+            lineRankMask[l] |= rankBit;
+            lineSuits[l] |= suitBit;
+            if (++lineFill[l] == 5) {
+                score += scoreLine(l);
             }
         }
-        if (array[4] - array[3] == 1 || array[4] - array[0] == 12) {
-            return true;
-        }
-
-        return false;
+        
+        moves[nr_used] = x * size + y;
+        nr_used += 1;
+        Metrics.UPDATE_SCORE.stop(start);
     }
     
     /*
-     * Test whether the hand is a flush.
+     * Place the top card of the deck on an empty position and update the
+     * score. The game ends when the board is full.
+     *
+     * Input : Position (int, int).
+     * Output: -
      */
-    public static boolean isFlush(int[] array) {
-        for (int i = 0; i < 4; i++) {
-            if (array[0] >= i*13 && array[4] < (i+1)*13) {
-                return true;
-            }
+    public void place(int x, int y) {
+        board[x][y] = deck.remove(0);
+        updateScore(x, y);
+        if (nr_used == nr_cells) {
+            state = "end";
         }
-        return false;
     }
     
     /*
-     * Test whether the hand has a 4 of a kind.
+     * Take back the last placement: the card goes back on the pile and the
+     * score is set to the given one, known from before the placement, so no
+     * line is scored again. Only the lines through the position change.
+     *
+     * Input : The score before the placement (int).
+     * Output: -
      */
-    public static boolean hasFourofaKind(int[] array) {
-        for (int i = 0; i < 5; i++) {
-            array[i] = array[i] % 13;
+    public void undo(int previousScore) {
+        if (nr_used == 0) {
+            throw new IllegalStateException("Nothing to undo.");
         }
-        Arrays.sort(array);
+        int cell = moves[nr_used - 1];
+        int x = cell / size;
+        int y = cell % size;
+        int card = board[x][y];
+        int rank = card % 52 % 13;
+        int rankBit = 1 << rank;
+        board[x][y] = -1;
+        deck.add(0, card);
         
-        if ((array[3] - array[0] == 0) || (array[4] - array[1] == 0)) {
-            return true;
+        for (int l : rules.cellLines[cell]) {
+            int left = --lineRanks[l][rank];
+            if (left == 1) {
+                linePairs[l] &= ~rankBit;
+            }
+            else if (left == 0) {
+                lineRankMask[l] &= ~rankBit;
+            }
+            lineFill[l] -= 1;
+            /* A suit may still be on the line, so collect them again. */
+            int suits = 0;
+            for (int c : rules.lines[l]) {
+                int other = board[c / size][c % size];
+                if (other != -1) {
+                    suits |= 1 << (other % 52 / 13);
+                }
+            }
+            lineSuits[l] = suits;
         }
-        return false;
+        
+        score = previousScore;
+        nr_used -= 1;
+        state = "play";
     }
     
     /*
-     * Test whether the hand has a three of a kind.
+     * Compute the score that placing a card on an empty position would add,
+     * without changing the game.
+     *
+     * Input : Position (int, int) and card (int).
+     * Output: The score gained (int).
      */
-    public static boolean hasThreeofaKind(int[] array) {
-        for (int i = 0; i < 5; i++) {
-            array[i] = array[i] % 13;
-        }
-        Arrays.sort(array);
+    public int gain(int x, int y, int card) {
+        int face = card % 52;
+        int rankBit = 1 << (face % 13);
+        int suitBit = 1 << (face / 13);
+        int gained = 0;
         
-        if (array[2] - array[0] == 0 || array[3] - array[1] == 0 || array[4] - array[2] == 0) {
-            return true;
+        for (int l : rules.cellLines[x * size + y]) {
+            if (lineFill[l] == 4) {
+                int pairs = linePairs[l] | (lineRankMask[l] & rankBit);
+                gained += rules.lookup(lineRankMask[l] | rankBit,
+                        pairs, lineSuits[l] | suitBit);
+            }
         }
-        return false;
+        return gained;
     }
     
     /*
-     * Count the number of pairs in the hand.
+     * Score a full line from its running state.
+     *
+     * Input : The line index (int).
+     * Output: The score (int).
      */
-    public static int countPairs(int[] array) {
-        for (int i = 0; i < 5; i++) {
-            array[i] = array[i] % 13;
-        }
-        Arrays.sort(array);
-        
-        int nr_pairs = 0;
-        for (int i = 1; i < 5; i++) {
-            if (array[i] - array[i-1] == 0 && (i == 1 || array[i-1] - array[i-2] != 0)) {
-                nr_pairs += 1;
+    public int scoreLine(int l) {
+        return rules.lookup(lineRankMask[l], linePairs[l], lineSuits[l]);
+    }
+    
+    /*
+     * Whether the final score wins the round.
+     *
+     * Input : -
+     * Output: Whether the score reaches the score to win (boolean).
+     */
+    public boolean won() {
+        return score >= rules.winScore;
+    }
+    
+    /*
+     * Score every full line from the cards on the board, ignoring the
+     * running state. This is what a placement would cost without the lines
+     * through each cell, and serves to check the incremental score.
+     *
+     * Input : -
+     * Output: The score (int).
+     */
+    public int rescan() {
+        int total = 0;
+        for (int[] line : rules.lines) {
+            int ranks = 0;
+            int pairs = 0;
+            int suits = 0;
+            boolean full = true;
+            for (int cell : line) {
+                int card = board[cell / size][cell % size];
+                if (card == -1) {
+                    full = false;
+                    break;
+                }
+                int face = card % 52;
+                int rankBit = 1 << (face % 13);
+                pairs |= ranks & rankBit;
+                ranks |= rankBit;
+                suits |= 1 << (face / 13);
+            }
+            if (full) {
+                total += rules.lookup(ranks, pairs, suits);
             }
         }
-        
-        return nr_pairs;
+        return total;
+    }
+    
+    /*
+     * Check the score for a single line. The line is not modified.
+     *
+     * Input : The line (int[]).
+     * Output: The score (int).
+     */
+    public static int checkScore(int[] array) {
+        long start = Metrics.CHECK_SCORE.start();
+        int score = HandEvaluator.score(array);
+        Metrics.CHECK_SCORE.stop(start);
+        return score;
     }
 }
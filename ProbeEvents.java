@@ -0,0 +1,101 @@
+/*
+ * ProbeEvents.java
+ *
+ * This file contains the Java Flight Recorder events of the metrics probes.
+ *
+ * To record them, start the program with for example
+ * '-XX:StartFlightRecording=filename=poker.jfr,settings=profile' and open
+ * the file in JDK Mission Control, or print the events with
+ * 'jfr print --categories "Poker Game" poker.jfr'.
+ */
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+
+/*
+ * One event type per kind of probe (see Metrics). An event is committed when
+ * a timer records a duration, so it carries the duration in the field
+ * 'elapsed' rather than as the span of the event itself. Stack traces are
+ * left out, which keeps the cost of an enabled event low.
+ */
+final class ProbeEvents {
+    private ProbeEvents() {
+    }
+
+    @Category("Poker Game")
+    @StackTrace(false)
+    abstract static class Probe extends Event {
+        @Label("Probe")
+        String probe;
+
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+
+        @Label("Sampled")
+        @Description("Whether only some of the calls of this probe are recorded")
+        boolean sampled;
+    }
+
+    @Name("pokergame.Game")
+    @Label("Game Setup")
+    @Description("Creating a game or loading the card art")
+    static final class GameEvent extends Probe {
+    }
+
+    @Name("pokergame.Scoring")
+    @Label("Scoring")
+    @Description("Scoring a placement or a line")
+    static final class ScoringEvent extends Probe {
+    }
+
+    @Name("pokergame.Rendering")
+    @Label("Rendering")
+    @Description("Painting the board, or the time between frames while dragging")
+    static final class RenderingEvent extends Probe {
+    }
+
+    @Name("pokergame.StatsIO")
+    @Label("Statistics I/O")
+    @Description("Reading and writing the score log")
+    static final class StatsEvent extends Probe {
+    }
+
+    /*
+     * Commit an event for a recorded duration, if its type is enabled.
+     *
+     * Input : The kind (int, see Metrics), the probe name (String), the
+     *         duration (long, in ns) and whether the probe is sampled
+     *         (boolean).
+     * Output: -
+     */
+    static void emit(int kind, String name, long nanos, boolean sampled) {
+        Probe event;
+        switch (kind) {
+            case Metrics.GAME:
+                event = new GameEvent();
+                break;
+            case Metrics.SCORING:
+                event = new ScoringEvent();
+                break;
+            case Metrics.RENDERING:
+                event = new RenderingEvent();
+                break;
+            default:
+                event = new StatsEvent();
+                break;
+        }
+        if (event.shouldCommit()) {
+            event.probe = name;
+            event.elapsed = nanos;
+            event.sampled = sampled;
+            event.commit();
+        }
+    }
+}
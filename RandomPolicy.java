@@ -0,0 +1,23 @@
+/*
+ * RandomPolicy.java
+ *
+ * This file contains the random placement policy.
+ */
+
+import java.util.Random;
+
+
+/*
+ * Place each card on a uniformly chosen empty position, by any rules.
+ */
+public class RandomPolicy implements PlacementPolicy {
+    public int choose(PokerGame game, int card, Random rnd) {
+        int skip = rnd.nextInt(game.nr_cells - game.nr_used);
+        for (int cell = 0; cell < game.nr_cells; cell++) {
+            if (game.board[cell / game.size][cell % game.size] == -1 && skip-- == 0) {
+                return cell;
+            }
+        }
+        throw new IllegalStateException("The board is full.");
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * Rules.java
+ *
+ * This file contains the configurable rules of the game: the size of the
+ * grid, the lines that score, the points per hand and the score needed to
+ * win.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+
+/*
+ * The rules of a game on an N by N grid. Every line is a run of five cells,
+ * so a row of a 7 by 7 grid holds three overlapping lines. The kinds of
+ * lines are 'rows', 'columns', 'diagonals' (in both directions) and
+ * 'broken' (diagonals that wrap around the edges of the grid); a run of
+ * cells is only counted once, even if it belongs to several kinds. Grids
+ * with more than 52 cells are dealt from several decks.
+ *
+ * Cells are numbered x * size + y, as the positions of PokerGame, which
+ * plays by a Rules (STANDARD unless given otherwise). The lines of the
+ * standard rules are 5 rows (indexed by y), 5 columns (indexed by x) and
+ * the two diagonals, in that order.
+ *
+ * The code that searches or records standard games (the advisors, the
+ * solvers, the journal, the score log and the dataset) only accepts games
+ * by the standard rules; see isStandard().
+ */
+public final class Rules {
+    /* The kinds of lines, as named in the configuration. */
+    public static final String[] KINDS = {"rows", "columns", "diagonals", "broken"};
+    private static final String[] KIND_NAMES = {"horizontal", "vertical", "diagonal",
+            "broken diagonal"};
+
+    /* The score to win with the standard 12 lines. */
+    private static final int STANDARD_WIN_SCORE = 75;
+    private static final int STANDARD_LINES = 12;
+
+    /* The standard rules: a 5 by 5 grid, 12 lines and the standard points. */
+    public static final Rules STANDARD = square(5, "rows,columns,diagonals");
+
+    /* The grid is size by size cells, dealt from the given number of decks. */
+    public final int size;
+    public final int decks;
+
+    /* The cells of each line, and the lines through each cell. */
+    public final int[][] lines;
+    public final int[][] cellLines;
+    /* The number of lines of each kind (see KINDS). */
+    public final int[] kindCounts = new int[KINDS.length];
+
+    /* The points per hand, indexed as HandEvaluator.HANDS. */
+    public final int[] points;
+    /* Minimal final score needed to win. */
+    public final int winScore;
+
+    /* The hand and the points of every full line, by HandEvaluator.index(). */
+    private final byte[] categories = new byte[HandEvaluator.TABLE_SIZE];
+    private final int[] table = new int[HandEvaluator.TABLE_SIZE];
+
+    /*
+     * Create the rules.
+     *
+     * Input : The size of the grid (int), the number of decks (int, 0 for
+     *         as few as needed), the kinds of lines separated by commas
+     *         (String), the points per hand (int[]) and the score to win
+     *         (int, -1 to scale the standard score to win by the number of
+     *         lines).
+     * Output: -
+     */
+    public Rules(int size, int decks, String kinds, int[] points, int winScore) {
+        if (size < 5) {
+            throw new IllegalArgumentException("The grid must be at least 5 by 5.");
+        }
+        if (decks == 0) {
+            decks = (size * size + 51) / 52;
+        }
+        if (decks * 52 < size * size) {
+            throw new IllegalArgumentException(decks + " deck(s) cannot fill a " +
+                    size + " by " + size + " grid.");
+        }
+        if (points.length != HandEvaluator.HANDS.length) {
+            throw new IllegalArgumentException("Expected " + HandEvaluator.HANDS.length +
+                    " points.");
+        }
+        this.size = size;
+        this.decks = decks;
+        this.points = points.clone();
+        this.lines = buildLines(kinds);
+        if (lines.length == 0) {
+            throw new IllegalArgumentException("No lines to score.");
+        }
+        this.winScore = winScore >= 0 ? winScore :
+                (int)Math.round(STANDARD_WIN_SCORE * lines.length /
+                        (double)STANDARD_LINES);
+
+        /* Invert the lines to find the ones through each cell. */
+        int[] counts = new int[size * size];
+        for (int[] line : lines) {
+            for (int cell : line) {
+                counts[cell] += 1;
+            }
+        }
+        cellLines = new int[size * size][];
+        for (int cell = 0; cell < cellLines.length; cell++) {
+            cellLines[cell] = new int[counts[cell]];
+            counts[cell] = 0;
+        }
+        for (int l = 0; l < lines.length; l++) {
+            for (int cell : lines[l]) {
+                cellLines[cell][counts[cell]++] = l;
+            }
+        }
+
+        for (int i = 0; i < table.length; i++) {
+            categories[i] = (byte)HandEvaluator.category(i, this.points);
+            table[i] = this.points[categories[i]];
+        }
+    }
+
+    /*
+     * The rules for a square grid with the standard points.
+     *
+     * Input : The size (int) and the kinds of lines (String).
+     * Output: The rules (Rules).
+     */
+    public static Rules square(int size, String kinds) {
+        return new Rules(size, 0, kinds, HandEvaluator.POINTS, -1);
+    }
+
+    /*
+     * Read the rules from a properties file with the keys 'size', 'decks',
+     * 'lines', 'points' (nine numbers separated by commas, in the order of
+     * HandEvaluator.HANDS) and 'win'. Missing keys take the standard value.
+     *
+     * Input : The file (File).
+     * Output: The rules (Rules).
+     */
+    public static Rules load(File file) throws IOException {
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            properties.load(in);
+        }
+        finally {
+            in.close();
+        }
+        int size = Integer.parseInt(properties.getProperty("size", "5").trim());
+        int decks = Integer.parseInt(properties.getProperty("decks", "0").trim());
+        String kinds = properties.getProperty("lines", "rows,columns,diagonals");
+        int[] points = HandEvaluator.POINTS;
+        String text = properties.getProperty("points");
+        if (text != null) {
+            String[] parts = text.split(",");
+            points = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                points[i] = Integer.parseInt(parts[i].trim());
+            }
+        }
+        int win = Integer.parseInt(properties.getProperty("win", "-1").trim());
+        return new Rules(size, decks, kinds, points, win);
+    }
+
+    /*
+     * Read the rules from a properties file, or take a square grid with the
+     * standard lines when the argument is a number.
+     *
+     * Input : The file name or the size (String).
+     * Output: The rules (Rules).
+     */
+    public static Rules parse(String text) throws IOException {
+        if (text.matches("\\d+")) {
+            return square(Integer.parseInt(text), "rows,columns,diagonals");
+        }
+        return load(new File(text));
+    }
+
+    /*
+     * The points of a full line.
+     *
+     * Input : The ranks, repeated ranks and suits present (int, int, int).
+     * Output: The points (int).
+     */
+    public int lookup(int rankMask, int pairMask, int suitMask) {
+        return table[HandEvaluator.index(rankMask, pairMask, suitMask)];
+    }
+
+    /*
+     * Whether these are the standard rules, which the code that only knows
+     * the standard game requires.
+     *
+     * Input : -
+     * Output: Whether the rules are the standard ones (boolean).
+     */
+    public boolean isStandard() {
+        return this == STANDARD || (size == STANDARD.size && decks == STANDARD.decks &&
+                winScore == STANDARD.winScore && Arrays.equals(points, STANDARD.points) &&
+                Arrays.deepEquals(lines, STANDARD.lines));
+    }
+
+    /*
+     * The hand of a full line under these points.
+     *
+     * Input : The index of the line (int, see HandEvaluator.index()).
+     * Output: The hand (int), indexed as HandEvaluator.HANDS.
+     */
+    public int category(int index) {
+        return categories[index];
+    }
+
+    /*
+     * The highest possible score, with the best hand on every line.
+     *
+     * Input : -
+     * Output: The score (int).
+     */
+    public int maxScore() {
+        int best = 0;
+        for (int p : points) {
+            best = Math.max(best, p);
+        }
+        return best * lines.length;
+    }
+
+    /*
+     * The rules as shown in the help dialog.
+     *
+     * Input : -
+     * Output: The text (String).
+     */
+    public String describe() {
+        StringBuilder text = new StringBuilder();
+        text.append("Try to fill the ").append(size).append(" by ").append(size)
+                .append(" grid with poker hands.\n");
+        text.append("Point can be achieved for each of the ");
+        List<String> parts = new ArrayList<String>();
+        for (int k = 0; k < KINDS.length; k++) {
+            if (kindCounts[k] > 0) {
+                parts.add(kindCounts[k] + " " + KIND_NAMES[k]);
+            }
+        }
+        for (int i = 0; i < parts.size(); i++) {
+            if (i > 0) {
+                text.append(i == parts.size() - 1 ? ", and " : ", ");
+            }
+            text.append(parts.get(i));
+        }
+        text.append(" lines.\n");
+        if (decks > 1) {
+            text.append("The cards are dealt from ").append(decks).append(" decks.\n");
+        }
+        text.append("A score of ").append(winScore).append(" or more wins.\n\n");
+
+        /* The hands from the most to the fewest points. */
+        text.append("Score sheet:\n");
+        Integer[] order = new Integer[points.length];
+        for (int h = 0; h < order.length; h++) {
+            order[h] = h;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return points[b] - points[a];
+            }
+        });
+        for (int h : order) {
+            if (points[h] > 0) {
+                text.append(HandEvaluator.HANDS[h]).append(": ").append(points[h])
+                        .append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    /*
+     * Collect the runs of five cells of the given kinds, without duplicates.
+     */
+    private int[][] buildLines(String kinds) {
+        List<int[]> found = new ArrayList<int[]>();
+        Set<String> seen = new HashSet<String>();
+        Set<String> wanted = new HashSet<String>();
+        for (String kind : kinds.split(",")) {
+            wanted.add(kind.trim());
+        }
+        for (String kind : wanted) {
+            if (!Arrays.asList(KINDS).contains(kind)) {
+                throw new IllegalArgumentException("Unknown kind of line: " + kind);
+            }
+        }
+        int n = size;
+
+        /* Rows (along x, for each y) first, then columns, as in PokerGame. */
+        if (wanted.contains("rows")) {
+            for (int y = 0; y < n; y++) {
+                for (int x = 0; x + 4 < n; x++) {
+                    add(found, seen, 0, x, y, 1, 0, false);
+                }
+            }
+        }
+        if (wanted.contains("columns")) {
+            for (int x = 0; x < n; x++) {
+                for (int y = 0; y + 4 < n; y++) {
+                    add(found, seen, 1, x, y, 0, 1, false);
+                }
+            }
+        }
+        if (wanted.contains("diagonals")) {
+            for (int x = 0; x + 4 < n; x++) {
+                for (int y = 0; y + 4 < n; y++) {
+                    add(found, seen, 2, x, y, 1, 1, false);
+                }
+            }
+            for (int x = 0; x + 4 < n; x++) {
+                for (int y = n - 1; y - 4 >= 0; y--) {
+                    add(found, seen, 2, x, y, 1, -1, false);
+                }
+            }
+        }
+        if (wanted.contains("broken")) {
+            for (int x = 0; x < n; x++) {
+                for (int y = 0; y < n; y++) {
+                    add(found, seen, 3, x, y, 1, 1, true);
+                }
+            }
+            for (int x = 0; x < n; x++) {
+                for (int y = 0; y < n; y++) {
+                    add(found, seen, 3, x, y, 1, -1, true);
+                }
+            }
+        }
+        return found.toArray(new int[found.size()][]);
+    }
+
+    /*
+     * Add the run of five cells from (x, y) in direction (dx, dy), wrapping
+     * around the edges if asked, unless the same cells were added before.
+     */
+    private void add(List<int[]> found, Set<String> seen, int kind, int x, int y,
+            int dx, int dy, boolean wrap) {
+        int[] line = new int[5];
+        for (int k = 0; k < 5; k++) {
+            int cx = x + k * dx;
+            int cy = y + k * dy;
+            if (wrap) {
+                cx = ((cx % size) + size) % size;
+                cy = ((cy % size) + size) % size;
+            }
+            line[k] = cx * size + cy;
+        }
+        int[] sorted = line.clone();
+        Arrays.sort(sorted);
+        if (seen.add(Arrays.toString(sorted))) {
+            found.add(line);
+            kindCounts[kind] += 1;
+        }
+    }
+}
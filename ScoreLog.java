@@ -0,0 +1,391 @@
+/*
+ * ScoreLog.java
+ *
+ * This file contains the binary log of final scores used for the statistics.
+ */
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import java.util.Scanner;
+
+
+/*
+ * An append-only file of final scores. The file starts with a fixed header,
+ * mapped into memory, that keeps the running aggregates: the number of
+ * games, the number of wins, the sum and best of the scores and a histogram
+ * of all scores. The scores follow as 2-byte records. Reading the statistics
+ * only reads the header, so it takes the same time for any number of games.
+ *
+ * A record is written before the header is updated, and the game count is
+ * updated last, so an interrupted append never leaves the header counting a
+ * game that is not in the file. It may leave aggregates that already count
+ * the new games, though; that shows as a histogram whose total differs from
+ * the count, and the aggregates are then rebuilt from the records when the
+ * log is opened.
+ */
+public class ScoreLog implements Closeable {
+    /* The default log and the text file it replaces. */
+    public static final String FILE = "stats.bin";
+    public static final String LEGACY_FILE = "stats.txt";
+
+    /* Layout of the header. */
+    private static final int MAGIC = 0x50534C47;
+    private static final int VERSION = 1;
+    private static final int COUNT = 8;
+    private static final int WINS = 16;
+    private static final int SUM = 24;
+    private static final int BEST = 32;
+    private static final int HISTOGRAM = 40;
+    private static final int BUCKETS = PokerGame.MAX_SCORE + 1;
+    public static final int HEADER_SIZE = 4096;
+
+    /* Size of a single score record. */
+    public static final int RECORD_SIZE = 2;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    private final ByteBuffer batch = ByteBuffer.allocate(4096 * RECORD_SIZE);
+
+    /*
+     * Open a log, creating it if it does not exist.
+     *
+     * Input : The file (File).
+     * Output: -
+     */
+    public ScoreLog(File path) throws IOException {
+        file = new RandomAccessFile(path, "rw");
+        channel = file.getChannel();
+        boolean created = channel.size() == 0;
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        if (created) {
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+        }
+        else if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            close();
+            throw new IOException(path + " is not a score log.");
+        }
+        /* Drop records beyond the count, left by an interrupted append. */
+        long end = HEADER_SIZE + count() * RECORD_SIZE;
+        if (channel.size() > end) {
+            channel.truncate(end);
+        }
+        if (!consistent()) {
+            rebuild();
+        }
+    }
+
+    /*
+     * Whether the histogram counts as many games as the header, which is
+     * not the case after an append or a reset was interrupted.
+     */
+    private boolean consistent() {
+        long total = 0;
+        for (int s = 0; s < BUCKETS; s++) {
+            total += header.getLong(HISTOGRAM + 8 * s);
+        }
+        return total == count();
+    }
+
+    /*
+     * Recompute the aggregates from the records that the count covers.
+     */
+    private void rebuild() throws IOException {
+        long count = Math.min(count(), (channel.size() - HEADER_SIZE) / RECORD_SIZE);
+        long[] histogram = new long[BUCKETS];
+        long wins = 0;
+        long sum = 0;
+        int best = 0;
+        long position = HEADER_SIZE;
+        long end = HEADER_SIZE + count * RECORD_SIZE;
+        while (position < end) {
+            batch.clear();
+            batch.limit((int)Math.min(batch.capacity(), end - position));
+            int n = channel.read(batch, position);
+            if (n <= 0) {
+                break;
+            }
+            position += n;
+            batch.flip();
+            while (batch.remaining() >= RECORD_SIZE) {
+                int score = batch.getShort() & 0xFFFF;
+                histogram[Math.min(score, BUCKETS - 1)] += 1;
+                sum += score;
+                if (score >= PokerGame.WIN_SCORE) {
+                    wins += 1;
+                }
+                if (score > best) {
+                    best = score;
+                }
+            }
+        }
+        for (int s = 0; s < BUCKETS; s++) {
+            header.putLong(HISTOGRAM + 8 * s, histogram[s]);
+        }
+        header.putLong(SUM, sum);
+        header.putLong(WINS, wins);
+        header.putInt(BEST, best);
+        header.putLong(COUNT, count);
+        header.force();
+    }
+
+    /*
+     * Open the default log. The first time, the scores of the old text file
+     * are imported, after which it is renamed so it is not imported again.
+     * Lines that are not a score are skipped and counted. If the import
+     * fails, the new log is closed and deleted, so that the next start
+     * tries the import again.
+     *
+     * Input : -
+     * Output: The log (ScoreLog).
+     */
+    public static ScoreLog open() throws IOException {
+        long start = Metrics.STATS_OPEN.start();
+        File path = new File(FILE);
+        boolean created = !path.exists();
+        ScoreLog log = new ScoreLog(path);
+        File legacy = new File(LEGACY_FILE);
+        if (created && legacy.isFile()) {
+            boolean imported = false;
+            try {
+                int skipped = importLegacy(log, legacy);
+                if (skipped > 0) {
+                    System.err.println("Skipped " + skipped + " lines of " + LEGACY_FILE +
+                            " that are not a score.");
+                }
+                imported = true;
+            }
+            finally {
+                if (!imported) {
+                    log.close();
+                    path.delete();
+                }
+            }
+            legacy.renameTo(new File(LEGACY_FILE + ".old"));
+        }
+        Metrics.STATS_OPEN.stop(start);
+        return log;
+    }
+
+    /*
+     * Append the scores of the old text file, one per line, to a log.
+     *
+     * Input : The log (ScoreLog) and the text file (File).
+     * Output: The number of lines skipped (int).
+     */
+    private static int importLegacy(ScoreLog log, File legacy) throws IOException {
+        int skipped = 0;
+        Scanner scanner = new Scanner(legacy);
+        try {
+            while (scanner.hasNextLine()) {
+                String line = scanner.nextLine().trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                int score;
+                try {
+                    score = Integer.parseInt(line);
+                }
+                catch (NumberFormatException e) {
+                    skipped++;
+                    continue;
+                }
+                if (score < 0 || score > 0xFFFF) {
+                    skipped++;
+                    continue;
+                }
+                log.append(score);
+            }
+            if (scanner.ioException() != null) {
+                throw scanner.ioException();
+            }
+        }
+        finally {
+            scanner.close();
+        }
+        return skipped;
+    }
+
+    /*
+     * Add the final score of a game.
+     *
+     * Input : The score (int).
+     * Output: -
+     */
+    public synchronized void append(int score) throws IOException {
+        append(new int[] {score}, 1);
+    }
+
+    /*
+     * Add the final scores of several games with a single write.
+     *
+     * Input : The scores (int[]) and the number of scores to add (int).
+     * Output: -
+     */
+    public synchronized void append(int[] scores, int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            if (scores[i] < 0 || scores[i] > 0xFFFF) {
+                throw new IllegalArgumentException("Invalid score: " + scores[i]);
+            }
+        }
+        long start = Metrics.STATS_APPEND.start();
+        long count = count();
+        ByteBuffer records = n * RECORD_SIZE <= batch.capacity() ? batch :
+                ByteBuffer.allocate(n * RECORD_SIZE);
+        records.clear();
+        for (int i = 0; i < n; i++) {
+            records.putShort((short)scores[i]);
+        }
+        records.flip();
+        long position = HEADER_SIZE + count * RECORD_SIZE;
+        while (records.hasRemaining()) {
+            position += channel.write(records, position);
+        }
+
+        long wins = 0;
+        long sum = 0;
+        int best = header.getInt(BEST);
+        for (int i = 0; i < n; i++) {
+            int score = scores[i];
+            int bucket = HISTOGRAM + 8 * Math.min(score, BUCKETS - 1);
+            header.putLong(bucket, header.getLong(bucket) + 1);
+            sum += score;
+            if (score >= PokerGame.WIN_SCORE) {
+                wins += 1;
+            }
+            if (score > best) {
+                best = score;
+            }
+        }
+        header.putLong(SUM, header.getLong(SUM) + sum);
+        header.putLong(WINS, header.getLong(WINS) + wins);
+        header.putInt(BEST, best);
+        header.putLong(COUNT, count + n);
+        Metrics.STATS_BYTES.add(n * RECORD_SIZE);
+        Metrics.STATS_APPEND.stop(start);
+    }
+
+    /*
+     * Remove all scores. The header is cleared before the file is cut, so
+     * an interruption leaves an empty log rather than a corrupt one.
+     *
+     * Input : -
+     * Output: -
+     */
+    public synchronized void reset() throws IOException {
+        long start = Metrics.STATS_RESET.start();
+        header.putLong(COUNT, 0);
+        for (int i = WINS; i < HISTOGRAM + 8 * BUCKETS; i += 4) {
+            header.putInt(i, 0);
+        }
+        header.force();
+        channel.truncate(HEADER_SIZE);
+        Metrics.STATS_RESET.stop(start);
+    }
+
+    /*
+     * Write all changes to the disk.
+     *
+     * Input : -
+     * Output: -
+     */
+    public synchronized void sync() throws IOException {
+        long start = Metrics.STATS_SYNC.start();
+        channel.force(false);
+        header.force();
+        Metrics.STATS_SYNC.stop(start);
+    }
+
+    /* The number of games. */
+    public synchronized long count() {
+        return header.getLong(COUNT);
+    }
+
+    /* The number of games with a winning score. */
+    public synchronized long wins() {
+        return header.getLong(WINS);
+    }
+
+    /* The sum of all scores. */
+    public synchronized long sum() {
+        return header.getLong(SUM);
+    }
+
+    /* The best score. */
+    public synchronized int best() {
+        return header.getInt(BEST);
+    }
+
+    /*
+     * The number of games per score; the last bucket also counts any higher
+     * scores.
+     *
+     * Input : -
+     * Output: The histogram (long[]).
+     */
+    public synchronized long[] histogram() {
+        long[] histogram = new long[BUCKETS];
+        for (int s = 0; s < BUCKETS; s++) {
+            histogram[s] = header.getLong(HISTOGRAM + 8 * s);
+        }
+        return histogram;
+    }
+
+    /*
+     * The aggregates of the log at one moment.
+     */
+    public static final class Summary {
+        public final long count;
+        public final long wins;
+        public final long sum;
+        public final int best;
+        public final long[] histogram;
+
+        Summary(long count, long wins, long sum, int best, long[] histogram) {
+            this.count = count;
+            this.wins = wins;
+            this.sum = sum;
+            this.best = best;
+            this.histogram = histogram;
+        }
+    }
+
+    /*
+     * Read all aggregates at once, so they agree with each other even while
+     * another thread appends.
+     *
+     * Input : -
+     * Output: The aggregates (Summary).
+     */
+    public synchronized Summary summary() {
+        return new Summary(count(), wins(), sum(), best(), histogram());
+    }
+
+    /*
+     * Read a single score.
+     *
+     * Input : The index of the game (long).
+     * Output: The score (int).
+     */
+    public synchronized int score(long index) throws IOException {
+        if (index < 0 || index >= count()) {
+            throw new IndexOutOfBoundsException("No game " + index);
+        }
+        record.clear();
+        channel.read(record, HEADER_SIZE + index * RECORD_SIZE);
+        return record.getShort(0) & 0xFFFF;
+    }
+
+    public synchronized void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * ScoreStats.java
+ *
+ * This file contains the running statistics of completed games: the score
+ * distribution, how often each hand was made, and the same over a window of
+ * the most recent games.
+ */
+
+
+/*
+ * Statistics over a stream of completed games in a fixed amount of memory.
+ * The final scores are bounded (by the highest score of the rules), so a
+ * histogram with one counter per score is a quantile sketch without any
+ * error, and two of them merge by adding the counters. The last games are also kept in
+ * a ring, with a histogram of their own from which the evicted games are
+ * subtracted, so the window statistics cost no more than the totals.
+ *
+ * An instance is not thread-safe. Parallel code keeps one per thread and
+ * merges them when the threads are done (see Simulator), which needs no
+ * locks. The games played in the game window or on the server go to the
+ * shared instance through record(), which does lock.
+ */
+public class ScoreStats {
+    /* Number of recent games in the window, unless given otherwise. */
+    public static final int DEFAULT_WINDOW = 1000;
+
+    /* The rules of the games, which bound the scores and set the score to win. */
+    public final Rules rules;
+
+    /* The number of games per final score, and their totals. */
+    private final long[] histogram;
+    private long count = 0;
+    private long sum = 0;
+    private long won = 0;
+    private int best = 0;
+
+    /* The number of finished lines per hand, indexed as HandEvaluator.HANDS. */
+    private final long[] hands = new long[HandEvaluator.HANDS.length];
+    private long lines = 0;
+
+    /* The scores of the most recent games in a ring, and their histogram. */
+    private final int[] window;
+    private final long[] windowHistogram;
+    private int windowNext = 0;
+    private int windowCount = 0;
+    private long windowSum = 0;
+
+    /* The statistics of the games of this process, see record(). */
+    private static final ScoreStats SHARED = new ScoreStats(DEFAULT_WINDOW);
+
+    public ScoreStats() {
+        this(DEFAULT_WINDOW);
+    }
+
+    public ScoreStats(int windowSize) {
+        this(Rules.STANDARD, windowSize);
+    }
+
+    /*
+     * Create empty statistics.
+     *
+     * Input : The rules of the games (Rules) and the number of recent games
+     *         to keep (int).
+     * Output: -
+     */
+    public ScoreStats(Rules rules, int windowSize) {
+        this.rules = rules;
+        histogram = new long[rules.maxScore() + 1];
+        window = new int[Math.max(1, windowSize)];
+        windowHistogram = new long[rules.maxScore() + 1];
+    }
+
+    /*
+     * Add a completed game, with the hands on its lines.
+     *
+     * Input : The finished game (PokerGame).
+     * Output: -
+     */
+    public void add(PokerGame game) {
+        if (game.rules != rules && !(game.rules.isStandard() && rules.isStandard())) {
+            throw new IllegalArgumentException("The game is played by other rules.");
+        }
+        for (int l = 0; l < game.lineFill.length; l++) {
+            hands[rules.category(HandEvaluator.index(game.lineRankMask[l],
+                    game.linePairs[l], game.lineSuits[l]))] += 1;
+        }
+        lines += game.lineFill.length;
+        add(game.score);
+    }
+
+    /*
+     * Add a completed game, with the hands on its lines.
+     *
+     * Input : The finished game (BoardState), by the standard rules.
+     * Output: -
+     */
+    public void add(BoardState state) {
+        for (int l = 0; l < PokerGame.NR_LINES; l++) {
+            hands[state.category(l)] += 1;
+        }
+        lines += PokerGame.NR_LINES;
+        add(state.score);
+    }
+
+    /*
+     * Add the final score of a game whose hands are not known.
+     *
+     * Input : The score (int).
+     * Output: -
+     */
+    public void add(int score) {
+        score = Math.max(0, Math.min(score, histogram.length - 1));
+        histogram[score] += 1;
+        count += 1;
+        sum += score;
+        if (score >= rules.winScore) {
+            won += 1;
+        }
+        best = Math.max(best, score);
+
+        push(score);
+    }
+
+    /*
+     * Add the games of other statistics to these. The recent games of the
+     * other statistics are taken as more recent than the ones here.
+     *
+     * Input : The other statistics (ScoreStats), which are not changed.
+     * Output: -
+     */
+    public void merge(ScoreStats other) {
+        for (int s = 0; s < histogram.length; s++) {
+            histogram[s] += other.histogram[s];
+        }
+        count += other.count;
+        sum += other.sum;
+        won += other.won;
+        best = Math.max(best, other.best);
+        for (int h = 0; h < hands.length; h++) {
+            hands[h] += other.hands[h];
+        }
+        lines += other.lines;
+
+        /* Replay the other window from its oldest game. */
+        int start = (other.windowNext - other.windowCount + other.window.length) %
+                other.window.length;
+        for (int i = 0; i < other.windowCount; i++) {
+            push(other.window[(start + i) % other.window.length]);
+        }
+    }
+
+    /*
+     * Put a score in the window, evicting the oldest one when it is full.
+     */
+    private void push(int score) {
+        if (windowCount == window.length) {
+            int old = window[windowNext];
+            windowHistogram[old] -= 1;
+            windowSum -= old;
+        }
+        else {
+            windowCount += 1;
+        }
+        window[windowNext] = score;
+        windowHistogram[score] += 1;
+        windowSum += score;
+        windowNext = (windowNext + 1) % window.length;
+    }
+
+    /*
+     * Copy these statistics.
+     *
+     * Input : -
+     * Output: The copy (ScoreStats).
+     */
+    public ScoreStats copy() {
+        ScoreStats copy = new ScoreStats(rules, window.length);
+        copy.merge(this);
+        return copy;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long wins() {
+        return won;
+    }
+
+    public int best() {
+        return best;
+    }
+
+    public double mean() {
+        return count == 0 ? 0 : sum / (double)count;
+    }
+
+    public double winRatio() {
+        return count == 0 ? 0 : won / (double)count;
+    }
+
+    /*
+     * The number of games per final score.
+     *
+     * Input : -
+     * Output: The histogram (long[]), a copy.
+     */
+    public long[] histogram() {
+        return histogram.clone();
+    }
+
+    /*
+     * The score below which the given fraction of the games ended.
+     *
+     * Input : The fraction (double, 0 to 1).
+     * Output: The score (int), 0 without games.
+     */
+    public int quantile(double q) {
+        return quantile(histogram, q);
+    }
+
+    /*
+     * How often a hand was made, as a fraction of the finished lines.
+     *
+     * Input : The hand (int, see HandEvaluator.HANDS).
+     * Output: The fraction (double).
+     */
+    public double handFrequency(int hand) {
+        return lines == 0 ? 0 : hands[hand] / (double)lines;
+    }
+
+    /*
+     * The number of games in the window, at most its size.
+     */
+    public int windowCount() {
+        return windowCount;
+    }
+
+    public double windowMean() {
+        return windowCount == 0 ? 0 : windowSum / (double)windowCount;
+    }
+
+    public int windowQuantile(double q) {
+        return quantile(windowHistogram, q);
+    }
+
+    public double windowWinRatio() {
+        long wins = 0;
+        for (int s = rules.winScore; s < windowHistogram.length; s++) {
+            wins += windowHistogram[s];
+        }
+        return windowCount == 0 ? 0 : wins / (double)windowCount;
+    }
+
+    /*
+     * The smallest score such that at least the given fraction of the games
+     * scored at most that much (the nearest-rank quantile).
+     *
+     * Input : The number of games per score (long[]) and the fraction
+     *         (double, 0 to 1).
+     * Output: The score (int), 0 without games.
+     */
+    public static int quantile(long[] histogram, double q) {
+        long total = 0;
+        for (long n : histogram) {
+            total += n;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long)Math.ceil(q * total));
+        long seen = 0;
+        for (int s = 0; s < histogram.length; s++) {
+            seen += histogram[s];
+            if (seen >= rank) {
+                return s;
+            }
+        }
+        return histogram.length - 1;
+    }
+
+    /*
+     * A summary of the statistics, over all games and over the window.
+     *
+     * Input : -
+     * Output: The text (String).
+     */
+    public String summary() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("Games: %d, average %.2f, best %d, win ratio %.4f%n",
+                count, mean(), best, winRatio()));
+        text.append(String.format("Percentiles: p50 %d, p90 %d, p99 %d%n",
+                quantile(0.5), quantile(0.9), quantile(0.99)));
+        if (windowCount > 0 && windowCount < count) {
+            text.append(String.format("Last %d games: average %.2f, p50 %d, p90 %d, " +
+                    "p99 %d, win ratio %.4f%n", windowCount, windowMean(),
+                    windowQuantile(0.5), windowQuantile(0.9), windowQuantile(0.99),
+                    windowWinRatio()));
+        }
+        if (lines > 0) {
+            text.append("Hands per line:");
+            for (int h = HandEvaluator.HANDS.length - 1; h >= 0; h--) {
+                text.append(String.format("%n  %-16s %.4f", HandEvaluator.HANDS[h],
+                        handFrequency(h)));
+            }
+            text.append(String.format("%n"));
+        }
+        return text.toString();
+    }
+
+    /*
+     * Add a completed game to the shared statistics.
+     *
+     * Input : The finished game (PokerGame).
+     * Output: -
+     */
+    public static void record(PokerGame game) {
+        synchronized (SHARED) {
+            SHARED.add(game);
+        }
+    }
+
+    /*
+     * Add a completed game to the shared statistics.
+     *
+     * Input : The finished game (BoardState).
+     * Output: -
+     */
+    public static void record(BoardState state) {
+        synchronized (SHARED) {
+            SHARED.add(state);
+        }
+    }
+
+    /*
+     * A copy of the shared statistics, which can be read at leisure.
+     *
+     * Input : -
+     * Output: The copy (ScoreStats).
+     */
+    public static ScoreStats shared() {
+        synchronized (SHARED) {
+            return SHARED.copy();
+        }
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * ScoreWriter.java
+ *
+ * This file contains the background writer for the score log.
+ */
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.ArrayList;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/*
+ * Writes scores to a ScoreLog on a background thread, so callers never wait
+ * for the disk. Scores are put in a bounded queue; the writer takes them in
+ * batches and appends each batch with a single write. The log is synced to
+ * disk after a number of records or a period of time, whichever comes first,
+ * and once more when the writer is closed.
+ *
+ * A full queue does not block the caller: the score is dropped and counted.
+ * Failed writes are counted as well, and the last error is kept, so problems
+ * can be reported instead of disappearing.
+ *
+ * The log is opened once, by the writer or by snapshot(), and shared by
+ * both; opening it a second time would cut off records that are written
+ * but not yet counted.
+ */
+public class ScoreWriter {
+    /* Defaults for the shared writer of the user interface. */
+    public static final int DEFAULT_CAPACITY = 65536;
+    public static final int DEFAULT_SYNC_RECORDS = 1024;
+    public static final long DEFAULT_SYNC_MILLIS = 1000;
+
+    /* Largest number of scores written at once. */
+    private static final int BATCH = 4096;
+
+    /* Queue entries that ask for the log to be cleared, and that wake the
+     * writer to stop. */
+    private static final Integer RESET = -1;
+    private static final Integer STOP = -2;
+
+    /* The writer of the default log, created on first use. */
+    private static ScoreWriter shared = null;
+
+    private final File path;
+    private final int syncRecords;
+    private final long syncNanos;
+    private final ArrayBlockingQueue<Integer> queue;
+    private final Thread thread;
+    private volatile boolean closing = false;
+
+    /* The open log, and whether it has been closed for good. */
+    private ScoreLog opened = null;
+    private boolean logClosed = false;
+
+    /* Counters of written, dropped and failed scores. */
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile Exception lastError = null;
+
+    /*
+     * Create a writer and start its thread.
+     *
+     * Input : The log file (File), the queue capacity (int), and the number
+     *         of records (int) and milliseconds (long) after which to sync.
+     * Output: -
+     */
+    public ScoreWriter(File path, int capacity, int syncRecords, long syncMillis) {
+        this.path = path;
+        this.syncRecords = syncRecords;
+        this.syncNanos = TimeUnit.MILLISECONDS.toNanos(syncMillis);
+        this.queue = new ArrayBlockingQueue<Integer>(capacity);
+        this.thread = new Thread(new Runnable() {
+            public void run() {
+                writeLoop();
+            }
+        }, "score-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /*
+     * The writer of the default log (ScoreLog.FILE), which is flushed when
+     * the program exits.
+     *
+     * Input : -
+     * Output: The writer (ScoreWriter).
+     */
+    public static synchronized ScoreWriter shared() {
+        if (shared == null) {
+            final ScoreWriter writer = new ScoreWriter(new File(ScoreLog.FILE),
+                    DEFAULT_CAPACITY, DEFAULT_SYNC_RECORDS, DEFAULT_SYNC_MILLIS);
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                public void run() {
+                    writer.close();
+                }
+            }, "score-writer-shutdown"));
+            shared = writer;
+        }
+        return shared;
+    }
+
+    /*
+     * Queue a score to be written, without waiting.
+     *
+     * Input : The score (int).
+     * Output: Whether the score was queued (boolean).
+     */
+    public boolean submit(int score) {
+        if (closing || score < 0 || !queue.offer(score)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /*
+     * Queue a request to clear the log, after the scores queued before it.
+     *
+     * Input : -
+     * Output: Whether the request was queued (boolean).
+     */
+    public boolean reset() {
+        return !closing && queue.offer(RESET);
+    }
+
+    /*
+     * Read the aggregates of the log through the log of this writer. The
+     * scores still in the queue are not in them yet.
+     *
+     * Input : -
+     * Output: The aggregates (ScoreLog.Summary).
+     */
+    public ScoreLog.Summary snapshot() throws IOException {
+        return log().summary();
+    }
+
+    /* The number of scores written to the log. */
+    public long written() {
+        return written.get();
+    }
+
+    /* The number of scores dropped because the queue was full. */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    /* The number of scores (or resets) that failed to be written. */
+    public long failed() {
+        return failed.get();
+    }
+
+    /* The last error of the writer, or null. */
+    public Exception lastError() {
+        return lastError;
+    }
+
+    /*
+     * Write the queued scores, sync the log and stop the writer. The writer
+     * is woken with an entry rather than an interrupt, which would close
+     * the channel of the log in the middle of a write.
+     *
+     * Input : -
+     * Output: -
+     */
+    public void close() {
+        closing = true;
+        /* When the queue is full, the writer is busy and sees 'closing'. */
+        queue.offer(STOP);
+        try {
+            thread.join(10000);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * The loop of the writer thread.
+     */
+    private void writeLoop() {
+        ScoreLog log = null;
+        ArrayList<Integer> drained = new ArrayList<Integer>(BATCH);
+        int[] batch = new int[BATCH];
+        int unsynced = 0;
+        long lastSync = System.nanoTime();
+
+        while (true) {
+            Integer first = null;
+            try {
+                if (!closing) {
+                    first = queue.poll(syncNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+            catch (InterruptedException e) {
+                /* Stop after writing what is left. */
+                closing = true;
+            }
+            if (first == null) {
+                first = queue.poll();
+            }
+
+            if (first != null) {
+                drained.add(first);
+                queue.drainTo(drained, BATCH - 1);
+                if (log == null) {
+                    log = openLog();
+                }
+                unsynced += write(log, drained, batch);
+                drained.clear();
+            }
+
+            long now = System.nanoTime();
+            boolean done = closing && queue.isEmpty();
+            if (log != null && unsynced > 0 && (unsynced >= syncRecords ||
+                    now - lastSync >= syncNanos || done)) {
+                try {
+                    log.sync();
+                }
+                catch (IOException e) {
+                    lastError = e;
+                    failed.addAndGet(unsynced);
+                }
+                unsynced = 0;
+                lastSync = now;
+            }
+            if (done) {
+                break;
+            }
+        }
+
+        synchronized (this) {
+            logClosed = true;
+            if (opened != null) {
+                try {
+                    opened.close();
+                }
+                catch (IOException e) {
+                    lastError = e;
+                }
+                opened = null;
+            }
+        }
+    }
+
+    /*
+     * The log, which is opened on first use.
+     */
+    private synchronized ScoreLog log() throws IOException {
+        if (opened == null) {
+            if (logClosed) {
+                throw new IOException(path + " has been closed.");
+            }
+            if (path.getPath().equals(ScoreLog.FILE)) {
+                /* The default log also imports the old statistics. */
+                opened = ScoreLog.open();
+            }
+            else {
+                opened = new ScoreLog(path);
+            }
+        }
+        return opened;
+    }
+
+    private ScoreLog openLog() {
+        try {
+            return log();
+        }
+        catch (IOException e) {
+            lastError = e;
+            return null;
+        }
+    }
+
+    /*
+     * Write a batch of queued entries.
+     *
+     * Input : The log (ScoreLog, null if it could not be opened), the entries
+     *         (ArrayList<Integer>) and a buffer for the scores (int[]).
+     * Output: The number of scores written (int).
+     */
+    private int write(ScoreLog log, ArrayList<Integer> entries, int[] batch) {
+        int total = 0;
+        int n = 0;
+        for (int i = 0; i <= entries.size(); i++) {
+            if (i < entries.size() && entries.get(i).intValue() == STOP.intValue()) {
+                continue;
+            }
+            boolean reset = i < entries.size() && entries.get(i).intValue() == RESET.intValue();
+            if (i < entries.size() && !reset) {
+                batch[n++] = entries.get(i);
+                continue;
+            }
+            /* Write the scores before a reset, or at the end of the batch. */
+            if (n > 0) {
+                try {
+                    if (log == null) {
+                        throw new IOException("Could not open " + path);
+                    }
+                    log.append(batch, n);
+                    written.addAndGet(n);
+                    total += n;
+                }
+                catch (Exception e) {
+                    lastError = e;
+                    failed.addAndGet(n);
+                }
+                n = 0;
+            }
+            if (reset) {
+                try {
+                    if (log == null) {
+                        throw new IOException("Could not open " + path);
+                    }
+                    log.reset();
+                }
+                catch (Exception e) {
+                    lastError = e;
+                    failed.incrementAndGet();
+                }
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Scores.java
+ *
+ * This file contains the reference scoring of a line, from before
+ * HandEvaluator.
+ */
+
+import java.util.Arrays;
+
+
+/*
+ * This is a helper class which contains a set of static functions to check
+ * the presence of certain hands. Scoring is done by HandEvaluator; these
+ * functions are kept as the reference implementation of the score sheet.
+ */
+class Scores {
+    /*
+     * Score a line the way checkScore did before HandEvaluator, from the
+     * predicates below. The line is copied, so it is left untouched.
+     *
+     * Input : The line (int[]).
+     * Output: The score (int), or 0 if the line contains an empty place.
+     */
+    public static int score(int[] line) {
+        int[] array = line.clone();
+        Arrays.sort(array);
+        if (array[0] == -1) {
+            return 0;
+        }
+        
+        if (isFlush(array) && isStraight(array.clone())) {
+            return 30;
+        }
+        else if (hasFourofaKind(array.clone())) {
+            return 16;
+        }
+        else if (isStraight(array.clone())) {
+            return 12;
+        }
+        else if (hasThreeofaKind(array.clone()) && countPairs(array.clone()) == 2) {
+            return 10;
+        }
+        else if (hasThreeofaKind(array.clone())) {
+            return 6;
+        }
+        else if (isFlush(array)) {
+            return 5;
+        }
+        else if (countPairs(array.clone()) == 2) {
+            return 3;
+        }
+        else if (countPairs(array.clone()) == 1) {
+            return 1;
+        }
+        return 0;
+    }
+    
+    /*
+     * Test whether the hand is a straight.
+     */
+    public static boolean isStraight(int[] array) {
+        for (int i = 0; i < 5; i++) {
+            array[i] = array[i] % 13;
+        }
+        Arrays.sort(array);
+        
+        for (int i = 1; i < 4; i++) {
+            if (array[i] - array[i-1] != 1) {
+                return false;
+            }
+        }
+        if (array[4] - array[3] == 1 || array[4] - array[0] == 12) {
+            return true;
+        }
+
+        return false;
+    }
+    
+    /*
+     * Test whether the hand is a flush.
+     */
+    public static boolean isFlush(int[] array) {
+        for (int i = 0; i < 4; i++) {
+            if (array[0] >= i*13 && array[4] < (i+1)*13) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /*
+     * Test whether the hand has a 4 of a kind.
+     */
+    public static boolean hasFourofaKind(int[] array) {
+        for (int i = 0; i < 5; i++) {
+            array[i] = array[i] % 13;
+        }
+        Arrays.sort(array);
+        
+        if ((array[3] - array[0] == 0) || (array[4] - array[1] == 0)) {
+            return true;
+        }
+        return false;
+    }
+    
+    /*
+     * Test whether the hand has a three of a kind.
+     */
+    public static boolean hasThreeofaKind(int[] array) {
+        for (int i = 0; i < 5; i++) {
+            array[i] = array[i] % 13;
+        }
+        Arrays.sort(array);
+        
+        if (array[2] - array[0] == 0 || array[3] - array[1] == 0 || array[4] - array[2] == 0) {
+            return true;
+        }
+        return false;
+    }
+    
+    /*
+     * Count the number of pairs in the hand.
+     */
+    public static int countPairs(int[] array) {
+        for (int i = 0; i < 5; i++) {
+            array[i] = array[i] % 13;
+        }
+        Arrays.sort(array);
+        
+        int nr_pairs = 0;
+        for (int i = 1; i < 5; i++) {
+            if (array[i] - array[i-1] == 0 && (i == 1 || array[i-1] - array[i-2] != 0)) {
+                nr_pairs += 1;
+            }
+        }
+        
+        return nr_pairs;
+    }
+}
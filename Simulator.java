@@ -0,0 +1,324 @@
+/*
+ * Simulator.java
+ *
+ * This file contains the headless simulation mode, which plays complete
+ * games without the user interface to study the score distribution.
+ *
+ * To run, type 'java Simulator [games] [policy] [threads] [seed] [log]
+ * [journal] [dataset] [rules]', where the policy is 'montecarlo' (the
+ * default), 'odds', 'weighted', 'greedy' or 'random'. When a log file is
+ * given, every final score is also written to it (see ScoreLog); when a
+ * journal directory is given, every game is recorded there (see
+ * GameJournal); when a dataset directory is given, every placement is
+ * exported there as training data (see DatasetWriter). An empty argument
+ * leaves the log, the journal or the dataset out. The rules are a grid size
+ * or a properties file (see Rules.parse); by other rules than the standard
+ * ones, only the greedy and random policies play, and nothing is recorded.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import java.util.Random;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+
+/*
+ * Plays games in parallel on a fork-join pool. The range of games is split
+ * recursively, and idle threads steal the remaining halves. Every block of
+ * games uses its own generator seeded from the block start, so the results
+ * do not depend on the number of threads.
+ */
+public class Simulator {
+    /* Rollouts per empty position for the Monte Carlo policy. */
+    public static final int MONTE_CARLO_ROLLOUTS = 32;
+
+    /* Number of games played by a single task without splitting further. */
+    private static final int BLOCK = 1024;
+
+    /* Games reused by the blocks, at most one per worker is ever needed. */
+    private final GamePool games;
+
+    /* The rules of the games. */
+    public final Rules rules;
+    /* The policy used to place the cards. */
+    public final PlacementPolicy policy;
+    /* The seed from which the generator of each block is derived. */
+    public final long seed;
+    /* Writer for the final scores, or null to keep only the statistics. */
+    public ScoreWriter recorder = null;
+    /* Journal for the complete games, or null. */
+    public GameJournal journal = null;
+    /* Exporter of every placement as training data, or null. */
+    public DatasetWriter dataset = null;
+
+    public Simulator(PlacementPolicy policy, long seed) {
+        this(policy, seed, Rules.STANDARD);
+    }
+
+    /*
+     * Create a simulator for games by the given rules.
+     *
+     * Input : The policy (PlacementPolicy), the seed (long) and the rules
+     *         (Rules).
+     * Output: -
+     */
+    public Simulator(PlacementPolicy policy, long seed, Rules rules) {
+        this.rules = rules;
+        this.policy = policy;
+        this.seed = seed;
+        games = new GamePool(Runtime.getRuntime().availableProcessors(), rules);
+    }
+
+    /*
+     * Play a single game from start to end.
+     *
+     * Input : The game to reuse (PokerGame), the policy (PlacementPolicy)
+     *         and the generator (Random).
+     * Output: The final score (int).
+     */
+    public static int play(PokerGame game, PlacementPolicy policy, Random rnd) {
+        game.reset(rnd);
+        while (game.nr_used < game.nr_cells) {
+            int cell = policy.choose(game, game.deck.get(0), rnd);
+            game.place(cell / game.size, cell % game.size);
+        }
+        return game.score;
+    }
+
+    /*
+     * Play a single game and add its placements to a dataset batch. The
+     * game is the same as with play(game, policy, rnd).
+     *
+     * Input : The game to reuse (PokerGame), the policy (PlacementPolicy),
+     *         the generator (Random) and the batch (DatasetWriter.Batch).
+     * Output: The final score (int).
+     */
+    public static int play(PokerGame game, PlacementPolicy policy, Random rnd,
+            DatasetWriter.Batch rows) throws IOException {
+        game.reset(rnd);
+        rows.begin();
+        while (game.nr_used < 25) {
+            int card = game.deck.get(0);
+            int cell = policy.choose(game, card, rnd);
+            rows.placement(card, cell);
+            game.place(cell / 5, cell % 5);
+        }
+        rows.end(game.score);
+        return game.score;
+    }
+
+    /*
+     * Play a number of games on the given pool.
+     *
+     * Input : The number of games (long) and the pool (ForkJoinPool).
+     * Output: The statistics of the games (ScoreStats).
+     */
+    public ScoreStats run(long nrGames, ForkJoinPool pool) {
+        return pool.invoke(new Block(0, nrGames));
+    }
+
+    /*
+     * A range of games, split in halves until it is small enough. Each block
+     * collects its own statistics, which are merged on the way back up.
+     */
+    private class Block extends RecursiveTask<ScoreStats> {
+        private static final long serialVersionUID = 1L;
+
+        private final long from;
+        private final long to;
+
+        Block(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        protected ScoreStats compute() {
+            if (to - from > BLOCK) {
+                long blocks = (to - from + BLOCK - 1) / BLOCK;
+                long mid = from + (blocks / 2) * BLOCK;
+                Block left = new Block(from, mid);
+                left.fork();
+                ScoreStats later = new Block(mid, to).compute();
+                ScoreStats stats = left.join();
+                stats.merge(later);
+                return stats;
+            }
+
+            ScoreStats stats = new ScoreStats(rules, ScoreStats.DEFAULT_WINDOW);
+            Random rnd = new Random(seed + from);
+            PokerGame game = games.acquire(rnd);
+            byte[] records = journal == null ? null :
+                    new byte[(int)(to - from) * GameJournal.RECORD_SIZE];
+            DatasetWriter.Batch rows = null;
+            if (dataset != null) {
+                try {
+                    rows = dataset.batch((int)(to - from));
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            for (long i = from; i < to; i++) {
+                int score;
+                if (rows == null) {
+                    score = play(game, policy, rnd);
+                }
+                else {
+                    try {
+                        score = play(game, policy, rnd, rows);
+                    }
+                    catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                stats.add(game);
+                if (recorder != null) {
+                    recorder.submit(score);
+                }
+                if (records != null) {
+                    GameJournal.encode(game, records, (int)(i - from) * GameJournal.RECORD_SIZE);
+                }
+            }
+            games.release(game);
+            if (records != null) {
+                try {
+                    journal.append(records, 0, (int)(to - from));
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return stats;
+        }
+    }
+
+    /*
+     * Select a policy by name.
+     *
+     * Input : The name (String).
+     * Output: The policy (PlacementPolicy).
+     */
+    public static PlacementPolicy policy(String name) {
+        if (name.equals("random")) {
+            return new RandomPolicy();
+        }
+        if (name.equals("greedy")) {
+            return new GreedyPolicy();
+        }
+        if (name.equals("weighted")) {
+            return new WeightedPolicy(WeightedPolicy.DEFAULT);
+        }
+        if (name.startsWith("weighted:")) {
+            return WeightedPolicy.parse(name.substring(9));
+        }
+        if (name.equals("odds")) {
+            return new OddsPolicy();
+        }
+        if (name.equals("montecarlo")) {
+            return new MonteCarloPolicy(MONTE_CARLO_ROLLOUTS);
+        }
+        throw new IllegalArgumentException("Unknown policy: " + name);
+    }
+
+    /*
+     * Print the throughput, the statistics and the score histogram.
+     *
+     * Input : The statistics (ScoreStats) and the elapsed time (long, in ns).
+     * Output: -
+     */
+    public static void report(ScoreStats stats, long nanos) {
+        long[] histogram = stats.histogram();
+        long total = stats.count();
+        double seconds = nanos / 1e9;
+        System.out.printf("Time: %.3f s (%.0f games/sec)%n", seconds, total / seconds);
+        System.out.print(stats.summary());
+        System.out.println("Score histogram:");
+        for (int s = 0; s < histogram.length; s++) {
+            if (histogram[s] > 0) {
+                System.out.printf("%4d %12d %9.6f%n", s, histogram[s],
+                        histogram[s] / (double)total);
+            }
+        }
+    }
+
+    /*
+     * Main function. Runs the simulation with the given arguments.
+     *
+     * Input : Number of games, policy, threads, seed, log, journal, dataset
+     *         and rules (String[]).
+     * Output: -
+     */
+    public static void main(String[] args) throws IOException {
+        long nrGames = args.length > 0 ? Long.parseLong(args[0]) : 10000;
+        String name = args.length > 1 ? args[1] : "montecarlo";
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) :
+                Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : System.nanoTime();
+        Rules rules = args.length > 7 && !args[7].isEmpty() ? Rules.parse(args[7]) :
+                Rules.STANDARD;
+        if (!rules.isStandard()) {
+            /* Only these policies, and no records, know other grids. */
+            if (!name.equals("greedy") && !name.equals("random")) {
+                throw new IllegalArgumentException("Only the 'greedy' and 'random' " +
+                        "policies play by other rules.");
+            }
+            for (int i = 4; i < 7; i++) {
+                if (args.length > i && !args[i].isEmpty()) {
+                    throw new IllegalArgumentException("The log, the journal and the " +
+                            "dataset only hold standard games.");
+                }
+            }
+        }
+
+        Metrics.publish();
+        Simulator simulator = new Simulator(policy(name), seed, rules);
+        if (args.length > 4 && !args[4].isEmpty()) {
+            simulator.recorder = new ScoreWriter(new File(args[4]), 1 << 20,
+                    ScoreWriter.DEFAULT_SYNC_RECORDS << 6, ScoreWriter.DEFAULT_SYNC_MILLIS);
+        }
+        if (args.length > 5 && !args[5].isEmpty()) {
+            simulator.journal = new GameJournal(new File(args[5]),
+                    GameJournal.DEFAULT_SEGMENT_RECORDS);
+        }
+        if (args.length > 6 && !args[6].isEmpty()) {
+            simulator.dataset = new DatasetWriter(new File(args[6]),
+                    DatasetWriter.DEFAULT_CHUNK_ROWS);
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        System.out.println("Playing " + nrGames + " games with policy '" +
+                name + "' on " + threads + " threads (seed " + seed + ").");
+        if (!rules.isStandard()) {
+            System.out.println("Rules: " + rules.size + " by " + rules.size + " grid, " +
+                    rules.lines.length + " lines, " + rules.decks + " deck(s), " +
+                    rules.winScore + " to win, at most " + rules.maxScore() + ".");
+        }
+
+        long start = System.nanoTime();
+        ScoreStats stats = simulator.run(nrGames, pool);
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+
+        report(stats, elapsed);
+        if (simulator.recorder != null) {
+            simulator.recorder.close();
+            System.out.println("Scores logged: " + simulator.recorder.written() +
+                    ", dropped: " + simulator.recorder.dropped() +
+                    ", failed: " + simulator.recorder.failed());
+            if (simulator.recorder.lastError() != null) {
+                System.out.println("Last error: " + simulator.recorder.lastError());
+            }
+        }
+        if (simulator.journal != null) {
+            simulator.journal.close();
+            System.out.println("Games journaled: " + simulator.journal.written());
+        }
+        if (simulator.dataset != null) {
+            simulator.dataset.close();
+            System.out.println("Rows exported: " + simulator.dataset.rows());
+        }
+    }
+}
@@ -8,28 +8,35 @@
  * For more info on the game, press help in the menu bar during the game.
  *
  * To compile and run, simple type 'javac *.java' followed by
- * 'java SinglePlayerPoker'.
+ * 'java SinglePlayerPoker [rules]'. The rules are a grid size or a file
+ * read by Rules.parse, and default to the standard 5x5 game. Scores, the
+ * journal and the hints are only kept for the standard game.
  */
 
-import java.util.Scanner;
- 
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JFrame;
 import javax.swing.JMenuBar;
 import javax.swing.JMenu;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
+import javax.swing.JScrollPane;
+import javax.swing.KeyStroke;
+import javax.swing.SwingWorker;
 import java.awt.BorderLayout;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.io.IOException;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
 import java.awt.event.MouseMotionAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseListener;
 
-import java.io.File;
-
 /*
  * This class represents the main window of the Poker game.
  * In here, the main board is initialized and the menubar is created.
@@ -42,42 +49,90 @@ public class SinglePlayerPoker extends JFrame {
     private final static int width = 800;
     private final static int height = 800;
     
-    /* Initialize the game panel, which in turn initializes the game itself. */
-    public GamePanel panel = new GamePanel();
+    /* The game panel, which in turn initializes the game itself. */
+    public GamePanel panel;
+
+    public SinglePlayerPoker() {
+        this(Rules.STANDARD);
+    }
 
     /*
      * Create the panel and menubar, set action listeners, and add everything
      * to the main frame.
      *
-     * Input : -
+     * Input : The rules of the game (Rules).
      * Output: -
      */
-    public SinglePlayerPoker() {
+    public SinglePlayerPoker(Rules rules) {
+        panel = new GamePanel(rules);
         /* Create a menu bar. */
         JMenuBar menuBar = new JMenuBar();
         setJMenuBar(menuBar);
         /* Add menus to the menu bar. */
         JMenu fileMenu = new JMenu("File");
+        JMenu editMenu = new JMenu("Edit");
         JMenu helpMenu = new JMenu("Help");
         menuBar.add(fileMenu);
+        menuBar.add(editMenu);
         menuBar.add(helpMenu);
         /* Add menu items to menus. */
         JMenuItem newGameItem = new JMenuItem("New Game");
+        final JCheckBoxMenuItem hintItem = new JCheckBoxMenuItem("Show best placement");
         JMenuItem statsItem = new JMenuItem("Game statistics");
         JMenuItem resetItem = new JMenuItem("Reset statistics");
         JMenuItem helpItem = new JMenuItem("Rules of the game");
         fileMenu.add(newGameItem);
+        fileMenu.add(hintItem);
         fileMenu.addSeparator();
         fileMenu.add(statsItem);
         fileMenu.add(resetItem);
         helpMenu.add(helpItem);
+        /* The hints only know the standard game. */
+        hintItem.setEnabled(rules.isStandard());
+        JMenuItem undoItem = new JMenuItem("Undo");
+        JMenuItem redoItem = new JMenuItem("Redo");
+        JMenuItem branchItem = new JMenuItem("Other branch");
+        undoItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK));
+        redoItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK));
+        branchItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_B, InputEvent.CTRL_DOWN_MASK));
+        editMenu.add(undoItem);
+        editMenu.add(redoItem);
+        editMenu.add(branchItem);
         
         /*
          * Assign callback on new game.
          */
         newGameItem.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent event) {
-                panel.game.reset();
+                panel.newGame();
+            }
+        });
+        
+        /*
+         * Assign callbacks on undo, redo and switching branches.
+         */
+        undoItem.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent event) {
+                panel.undo();
+            }
+        });
+        redoItem.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent event) {
+                panel.redo();
+            }
+        });
+        branchItem.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent event) {
+                panel.switchBranch();
+            }
+        });
+        
+        /*
+         * Assign callback on the placement hints.
+         */
+        hintItem.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent event) {
+                panel.setShowHints(hintItem.isSelected());
             }
         });
         
@@ -86,46 +141,77 @@ public class SinglePlayerPoker extends JFrame {
          */
         statsItem.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent event) {
-                int won = 0;
-                int total = 0;
-                int average = 0;
-                int best = 0;
-                double ratio = 0;
-                
-                /* Compute the main statistics. */
-                try {
-                    Scanner scanner = new Scanner(new File("stats.txt"));
-                    while (scanner.hasNextLine()) {
-                        int v = Integer.parseInt(scanner.nextLine());
-                        if (v >= 75) {
-                            won += 1;
+                /* Read the log in the background, then show the dialog. */
+                new SwingWorker<String, Void>() {
+                    protected String doInBackground() throws Exception {
+                        long won = 0;
+                        long total = 0;
+                        double average = 0;
+                        int best = 0;
+                        double ratio = 0;
+                        long[] histogram;
+                        
+                        /* Read the main statistics from the header of the log,
+                         * through the writer, which has the log open. */
+                        ScoreLog.Summary log = ScoreWriter.shared().snapshot();
+                        total = log.count;
+                        won = log.wins;
+                        best = log.best;
+                        histogram = log.histogram;
+                        if (total > 0) {
+                            average = log.sum / (double)total;
+                            ratio = won / ((double)total);
                         }
-                        if (v > best) {
-                            best = v;
+                        
+                        String text = "Number of games played: " + total + "\n" +
+                        "Win ratio: " + String.format("%.4f", ratio) + "\n" +
+                        "Best score: " + best + "\n" +
+                        "Average score: " + String.format("%.2f", average) + "\n" +
+                        "Percentiles: p50 " + ScoreStats.quantile(histogram, 0.5) +
+                        ", p90 " + ScoreStats.quantile(histogram, 0.9) +
+                        ", p99 " + ScoreStats.quantile(histogram, 0.99) + "\n";
+                        
+                        /* The games of this session, with the recent ones apart. */
+                        ScoreStats session = ScoreStats.shared();
+                        if (session.count() > 0) {
+                            text += "\nThis session:\n" + session.summary();
                         }
-                        average += v;
-                        total += 1;
-                    }
-                    if (total == 0) {
-                        average = 0;
-                        ratio = 0;
-                    }
-                    else {
-                        average /= total;
-                        ratio = won / ((double)total);
+                        
+                        /* Mention scores that could not be saved. */
+                        ScoreWriter writer = ScoreWriter.shared();
+                        long lost = writer.dropped() + writer.failed();
+                        if (lost > 0) {
+                            text += "\nScores not saved: " + lost + "\n";
+                            if (writer.lastError() != null) {
+                                text += "Last error: " + writer.lastError() + "\n";
+                            }
+                        }
+
+                        /* Mention games that could not be journaled. */
+                        long unjournaled = GameJournal.sharedFailed();
+                        if (unjournaled > 0) {
+                            text += "\nGames not journaled: " + unjournaled + "\n";
+                            if (GameJournal.sharedError() != null) {
+                                text += "Last error: " + GameJournal.sharedError() + "\n";
+                            }
+                        }
+                        return text;
                     }
-                    scanner.close();
                     
-                }
-                catch (Exception e) {
-                }
-                /* Display a dialog with information. */
-                JOptionPane.showMessageDialog(null,
-                "Number of games played: " + total + "\n" +
-                "Win ratio: " + ratio + "\n" +
-                "Best score: " + best + "\n" +
-                "Average score: " + average + "\n",
-                "Game statistics", JOptionPane.PLAIN_MESSAGE);
+                    protected void done() {
+                        String text;
+                        try {
+                            text = get();
+                        }
+                        catch (Exception e) {
+                            text = "The statistics could not be read:\n" +
+                                    e.getCause();
+                        }
+                        /* Display a dialog with information. */
+                        JOptionPane.showMessageDialog(null, text,
+                        "Game statistics", JOptionPane.PLAIN_MESSAGE);
+                    }
+                }.execute();
             }
         });
         
@@ -134,12 +220,11 @@ public class SinglePlayerPoker extends JFrame {
          */
         resetItem.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent event) {
-                try {
-                    File file = new File("stats.txt");
-                    file.delete();
-                }
-                catch (Exception exc) {
-                
+                /* The log is cleared by the writer, after any queued scores. */
+                if (!ScoreWriter.shared().reset()) {
+                    JOptionPane.showMessageDialog(null, "The statistics could not " +
+                    "be reset: the score writer is full or closing.",
+                    "Reset statistics", JOptionPane.WARNING_MESSAGE);
                 }
             }
         });
@@ -151,24 +236,19 @@ public class SinglePlayerPoker extends JFrame {
             public void actionPerformed(ActionEvent event) {
                 /* Display a dialog with information. */
                 JOptionPane.showMessageDialog(null, "Game rules:\n\n" +
-                "Try to fill the 5 by 5 grid with poker hands.\n" +
-                "Point can be achieved for each of the 5 horizontal,\n" +
-                "5 vertical, and 2 diagonal lines.\n\n" +
-                "Score sheet:\n" +
-                "Straight flush: 30\n" +
-                "Four of a Kind: 16\n" +
-                "Straight: 12\n" +
-                "Full house: 10\n" +
-                "Three of a Kind: 6\n" +
-                "Flush: 5\n" +
-                "Two pair: 3\n" +
-                "One pair: 1\n",
+                panel.game.rules.describe(),
                 "Game information", JOptionPane.PLAIN_MESSAGE);
             }
         });
         
-        /* Add the panel to the frame. */
-        add(panel);
+        /* Add the panel to the frame, scrolled when the grid is larger than
+         * the standard one. */
+        if (rules.isStandard()) {
+            add(panel);
+        }
+        else {
+            add(new JScrollPane(panel));
+        }
         /* Add the statusbar (initialized in the panel) to the frame. */
         add(panel.status, BorderLayout.SOUTH);
     }
@@ -176,17 +256,39 @@ public class SinglePlayerPoker extends JFrame {
     /*
      * Main function. In here, the frame is created.
      *
-     * Input : -
+     * Input : The rules (String[], optional).
      * Output: -
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        Rules rules = args.length > 0 ? Rules.parse(args[0]) : Rules.STANDARD;
+        /* Decode the cards while the window is being built. */
+        CardArt.preload();
         /* Initialize a customized frame. */
-        JFrame frame = new SinglePlayerPoker();
+        JFrame frame = new SinglePlayerPoker(rules);
         frame.setTitle("Single-player Poker Game");
-        frame.setSize(width, height);
+        if (rules.isStandard()) {
+            frame.setSize(width, height);
+        }
+        else {
+            /* Fit the grid, but no larger than the screen allows. */
+            frame.pack();
+            Rectangle screen = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                    .getMaximumWindowBounds();
+            frame.setSize(Math.min(frame.getWidth(), screen.width),
+                    Math.min(frame.getHeight(), screen.height));
+        }
         frame.setLocationRelativeTo(null);
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.setVisible(true);
         frame.setResizable(false);
+        
+        /* Publish the metrics once the window is up, as JMX takes a while. */
+        Thread metrics = new Thread(new Runnable() {
+            public void run() {
+                Metrics.publish();
+            }
+        }, "metrics");
+        metrics.setDaemon(true);
+        metrics.start();
     }
 }
@@ -0,0 +1,236 @@
+/*
+ * Snapshot.java
+ *
+ * This file contains the immutable snapshots of a game, which share
+ * everything they have in common with the snapshots they grew from.
+ */
+
+
+/*
+ * The state of a game after some placements. A snapshot only holds the last
+ * placement, the score and number of placed cards after it, and a link to
+ * the snapshot before it; the order of the cards (the deal) is shared by
+ * all snapshots of a game. A snapshot therefore takes about BYTES bytes,
+ * whatever it is the state of, and the snapshots of all branches of a game
+ * form a tree.
+ *
+ * The score and the number of placed cards are read in O(1). The full state
+ * is rebuilt into a BoardState with restore(), and search code that walks a
+ * tree of branches keeps a BoardState in step with the snapshot it is at:
+ *
+ *   Snapshot child = snapshot.place(state, cell);   // state follows along
+ *
+ * Cells are numbered x * 5 + y, as in BoardState. A game by other rules
+ * than the standard ones (see Rules) has no BoardState; its snapshots only
+ * hold the placements and scores, which is all that GameHistory needs, and
+ * its deal is left empty.
+ */
+public final class Snapshot {
+    /* The approximate size of a snapshot in memory, in bytes. */
+    public static final int BYTES = 32;
+
+    /* The snapshot before the last placement, or null for the start. */
+    public final Snapshot parent;
+    /* The cell of the last placement, or -1 for the start. */
+    public final int cell;
+    /* The score and the number of placed cards. */
+    public final int score;
+    public final int nrUsed;
+    /* The order in which the cards are dealt, shared and never changed. */
+    private final byte[] deal;
+
+    private Snapshot(Snapshot parent, byte[] deal, int cell, int score, int nrUsed) {
+        this.parent = parent;
+        this.deal = deal;
+        this.cell = cell;
+        this.score = score;
+        this.nrUsed = nrUsed;
+    }
+
+    /*
+     * The start of a game with the given deal.
+     *
+     * Input : The cards in the order they are dealt (byte[], 52 cards).
+     * Output: The snapshot of the empty board (Snapshot).
+     */
+    public static Snapshot start(byte[] deal) {
+        if (deal.length != 52) {
+            throw new IllegalArgumentException("A deal has 52 cards.");
+        }
+        return new Snapshot(null, deal.clone(), -1, 0, 0);
+    }
+
+    /*
+     * The snapshots of a game so far: its placements in the order they were
+     * made, on top of its deal.
+     *
+     * Input : The game (PokerGame).
+     * Output: The snapshot of its current state (Snapshot).
+     */
+    public static Snapshot of(PokerGame game) {
+        if (!game.rules.isStandard()) {
+            return replay(game);
+        }
+        byte[] deal = new byte[52];
+        int n = 0;
+        for (int i = 0; i < game.nr_used; i++) {
+            int cell = game.moves[i];
+            deal[n++] = (byte)game.board[cell / 5][cell % 5];
+        }
+        for (int i = 0; i < game.deck.size(); i++) {
+            deal[n++] = (byte)(int)game.deck.get(i);
+        }
+        Snapshot snapshot = start(deal);
+        BoardState state = new BoardState();
+        snapshot.restore(state);
+        for (int i = 0; i < game.nr_used; i++) {
+            snapshot = snapshot.place(state, game.moves[i]);
+        }
+        return snapshot;
+    }
+
+    /*
+     * The snapshots of a game by other rules, with the scores found by
+     * making its placements again on a copy. The deal is an empty array of
+     * the length of the grid, which only tells the game apart.
+     */
+    private static Snapshot replay(PokerGame game) {
+        PokerGame copy = game.copy();
+        for (int i = game.nr_used - 1; i >= 0; i--) {
+            int cell = game.moves[i];
+            copy.deck.add(0, game.board[cell / game.size][cell % game.size]);
+        }
+        copy.clear();
+        Snapshot snapshot = new Snapshot(null, new byte[game.nr_cells], -1, 0, 0);
+        for (int i = 0; i < game.nr_used; i++) {
+            int cell = game.moves[i];
+            copy.place(cell / game.size, cell % game.size);
+            snapshot = snapshot.child(cell, copy.score);
+        }
+        return snapshot;
+    }
+
+    /*
+     * Place the next card, in a state that matches this snapshot.
+     *
+     * Input : The state (BoardState), which is updated, and the cell (int).
+     * Output: The snapshot after the placement (Snapshot).
+     */
+    public Snapshot place(BoardState state, int cell) {
+        if (state.nrUsed != nrUsed) {
+            throw new IllegalStateException("The state does not match the snapshot.");
+        }
+        state.place(cell);
+        return new Snapshot(this, deal, cell, state.score, nrUsed + 1);
+    }
+
+    /*
+     * The snapshot after a placement whose score is already known, e.g. from
+     * a live game.
+     *
+     * Input : The cell (int) and the score after the placement (int).
+     * Output: The new snapshot (Snapshot).
+     */
+    public Snapshot child(int cell, int score) {
+        if (nrUsed == (deal.length == 52 ? 25 : deal.length)) {
+            throw new IllegalStateException("The board is full.");
+        }
+        return new Snapshot(this, deal, cell, score, nrUsed + 1);
+    }
+
+    /*
+     * The card placed last, or -1 for the start.
+     */
+    public int card() {
+        standard();
+        return nrUsed == 0 ? -1 : deal[nrUsed - 1];
+    }
+
+    /*
+     * The card to be placed next, or -1 when the board is full.
+     */
+    public int next() {
+        standard();
+        return nrUsed == 25 ? -1 : deal[nrUsed];
+    }
+
+    /*
+     * Check that the snapshot holds its deal, as only standard games do.
+     */
+    private void standard() {
+        if (deal.length != 52) {
+            throw new IllegalStateException("A game by other rules keeps no deal.");
+        }
+    }
+
+    /*
+     * Whether two snapshots belong to the same game.
+     */
+    public boolean sameGame(Snapshot other) {
+        return deal == other.deal;
+    }
+
+    /*
+     * Rebuild the state of this snapshot.
+     *
+     * Input : The state to overwrite (BoardState).
+     * Output: -
+     */
+    public void restore(BoardState state) {
+        standard();
+        if (parent == null) {
+            state.deal(deal);
+            return;
+        }
+        parent.restore(state);
+        state.place(cell);
+    }
+
+    /*
+     * The snapshot with the given number of placed cards on the way to this
+     * one.
+     *
+     * Input : The number of placed cards (int), at most nrUsed.
+     * Output: The snapshot (Snapshot).
+     */
+    public Snapshot ancestor(int used) {
+        Snapshot snapshot = this;
+        while (snapshot.nrUsed > used) {
+            snapshot = snapshot.parent;
+        }
+        return snapshot;
+    }
+
+    /*
+     * The last snapshot that two snapshots of the same game have in common.
+     *
+     * Input : The snapshots (Snapshot, Snapshot).
+     * Output: The common snapshot (Snapshot).
+     */
+    public static Snapshot common(Snapshot a, Snapshot b) {
+        if (!a.sameGame(b)) {
+            throw new IllegalArgumentException("The snapshots are of different games.");
+        }
+        a = a.ancestor(b.nrUsed);
+        b = b.ancestor(a.nrUsed);
+        while (a != b) {
+            a = a.parent;
+            b = b.parent;
+        }
+        return a;
+    }
+
+    /*
+     * The cells of the placements from the start, in order.
+     *
+     * Input : -
+     * Output: The cells (int[]).
+     */
+    public int[] cells() {
+        int[] cells = new int[nrUsed];
+        for (Snapshot s = this; s.parent != null; s = s.parent) {
+            cells[s.nrUsed - 1] = s.cell;
+        }
+        return cells;
+    }
+}
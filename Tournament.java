@@ -0,0 +1,282 @@
+/*
+ * Tournament.java
+ *
+ * This file contains the tournament runner, which compares placement
+ * policies on the same deals.
+ *
+ * To run, type 'java Tournament [policies] [max deals] [threads] [seed]
+ * [confidence]', where the policies are separated by commas, for example
+ * 'random,greedy,odds' (the default).
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+
+/*
+ * Every policy plays the same deals: deal i shuffles the deck with a
+ * generator seeded from the tournament seed and i, and the policies get
+ * the same generator for their own choices. The differences between the
+ * policies then come from their placements only, so the paired differences
+ * have far less spread than the scores themselves, and fewer deals are
+ * needed to tell the policies apart.
+ *
+ * The deals are played in rounds, each spread over a fork-join pool. After
+ * every round the policies are ranked by mean score, and the tournament
+ * stops as soon as every pair of neighbours in the ranking differs
+ * significantly, using a confidence interval of the paired difference with
+ * a Bonferroni correction for the number of pairs. Testing after every round
+ * makes the test somewhat optimistic, so a minimum number of deals is
+ * always played.
+ */
+public class Tournament {
+    /* Deals per round, and the least number of deals before stopping. */
+    public static final int ROUND = 4096;
+    public static final int MIN_DEALS = 2 * ROUND;
+
+    /* Number of deals played by a single task without splitting further. */
+    private static final int BLOCK = 256;
+
+    /* The policies and their names. */
+    private final List<PlacementPolicy> policies;
+    private final List<String> names;
+    private final long seed;
+    private final int nr;
+
+    /* Totals per policy: the number of deals, sum, sum of squares and wins. */
+    public long deals = 0;
+    private final double[] sums;
+    private final double[] squares;
+    private final long[] wins;
+    /* Sum and sum of squares of the difference of each pair of policies. */
+    private final double[][] diffSums;
+    private final double[][] diffSquares;
+
+    public Tournament(List<String> names, List<PlacementPolicy> policies, long seed) {
+        this.names = names;
+        this.policies = policies;
+        this.seed = seed;
+        this.nr = policies.size();
+        sums = new double[nr];
+        squares = new double[nr];
+        wins = new long[nr];
+        diffSums = new double[nr][nr];
+        diffSquares = new double[nr][nr];
+    }
+
+    /*
+     * Play deals until the ranking is settled or the maximum is reached.
+     *
+     * Input : The maximum number of deals (long), the confidence (double,
+     *         for example 0.95) and the pool (ForkJoinPool).
+     * Output: Whether the ranking was settled (boolean).
+     */
+    public boolean run(long maxDeals, double confidence, ForkJoinPool pool) {
+        double z = z(1 - (1 - confidence) / (2 * Math.max(1, nr - 1)));
+        while (deals < maxDeals) {
+            long to = Math.min(maxDeals, deals + ROUND);
+            add(pool.invoke(new Block(deals, to)));
+            deals = to;
+            if (deals >= MIN_DEALS && settled(z)) {
+                return true;
+            }
+        }
+        return settled(z);
+    }
+
+    /*
+     * The policies, best first.
+     *
+     * Input : -
+     * Output: The indexes of the policies (Integer[]).
+     */
+    public Integer[] ranking() {
+        Integer[] order = new Integer[nr];
+        for (int p = 0; p < nr; p++) {
+            order[p] = p;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Double.compare(sums[b], sums[a]);
+            }
+        });
+        return order;
+    }
+
+    /*
+     * Whether every policy scores significantly better than the next one in
+     * the ranking.
+     */
+    private boolean settled(double z) {
+        Integer[] order = ranking();
+        for (int i = 0; i + 1 < order.length; i++) {
+            int a = order[i];
+            int b = order[i + 1];
+            double mean = diffSums[a][b] / deals;
+            if (mean <= z * stderr(diffSums[a][b], diffSquares[a][b], deals)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void add(double[] totals) {
+        for (int p = 0; p < nr; p++) {
+            sums[p] += totals[3 * p];
+            squares[p] += totals[3 * p + 1];
+            wins[p] += (long)totals[3 * p + 2];
+            for (int q = 0; q < nr; q++) {
+                diffSums[p][q] += totals[3 * nr + 2 * (p * nr + q)];
+                diffSquares[p][q] += totals[3 * nr + 2 * (p * nr + q) + 1];
+            }
+        }
+    }
+
+    /*
+     * Print the mean score and win rate of every policy with their
+     * confidence intervals, best first, and the difference with the next.
+     *
+     * Input : The confidence (double).
+     * Output: -
+     */
+    public void report(double confidence) {
+        double z = z(1 - (1 - confidence) / 2);
+        Integer[] order = ranking();
+        System.out.printf("%-12s %20s %22s %20s%n", "Policy", "Mean score",
+                "Win rate (>= " + PokerGame.WIN_SCORE + ")", "Lead on next");
+        for (int i = 0; i < order.length; i++) {
+            int p = order[i];
+            double mean = sums[p] / deals;
+            double rate = wins[p] / (double)deals;
+            String lead = "";
+            if (i + 1 < order.length) {
+                int q = order[i + 1];
+                lead = String.format("%.3f +- %.3f", diffSums[p][q] / deals,
+                        z * stderr(diffSums[p][q], diffSquares[p][q], deals));
+            }
+            System.out.printf("%-12s %10.3f +- %6.3f %12.4f +- %6.4f %20s%n", names.get(p),
+                    mean, z * stderr(sums[p], squares[p], deals), rate,
+                    z * Math.sqrt(rate * (1 - rate) / deals), lead);
+        }
+    }
+
+    private static double stderr(double sum, double squares, long n) {
+        if (n < 2) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double mean = sum / n;
+        double variance = Math.max(0, (squares - n * mean * mean) / (n - 1));
+        return Math.sqrt(variance / n);
+    }
+
+    /*
+     * The quantile of the standard normal distribution, by the rational
+     * approximation of Abramowitz and Stegun (26.2.23), good to 4.5e-4.
+     *
+     * Input : The probability (double, between 0.5 and 1).
+     * Output: The quantile (double).
+     */
+    public static double z(double p) {
+        double t = Math.sqrt(-2 * Math.log(1 - p));
+        return t - (2.515517 + 0.802853 * t + 0.010328 * t * t) /
+                (1 + 1.432788 * t + 0.189269 * t * t + 0.001308 * t * t * t);
+    }
+
+    /*
+     * A range of deals, split in halves until it is small enough. The
+     * result holds the totals per policy followed by the totals per pair.
+     */
+    private class Block extends RecursiveTask<double[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final long from;
+        private final long to;
+
+        Block(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        protected double[] compute() {
+            if (to - from > BLOCK) {
+                long mid = from + (to - from) / 2;
+                Block left = new Block(from, mid);
+                left.fork();
+                double[] totals = new Block(mid, to).compute();
+                double[] other = left.join();
+                for (int i = 0; i < totals.length; i++) {
+                    totals[i] += other[i];
+                }
+                return totals;
+            }
+
+            double[] totals = new double[3 * nr + 2 * nr * nr];
+            int[] scores = new int[nr];
+            PokerGame game = new PokerGame();
+            Random rnd = new Random();
+            for (long deal = from; deal < to; deal++) {
+                for (int p = 0; p < nr; p++) {
+                    /* The same deck and the same generator for every policy. */
+                    rnd.setSeed(seed * 0x9E3779B97F4A7C15L + deal);
+                    scores[p] = Simulator.play(game, policies.get(p), rnd);
+                    totals[3 * p] += scores[p];
+                    totals[3 * p + 1] += (double)scores[p] * scores[p];
+                    if (scores[p] >= PokerGame.WIN_SCORE) {
+                        totals[3 * p + 2] += 1;
+                    }
+                }
+                for (int p = 0; p < nr; p++) {
+                    for (int q = 0; q < nr; q++) {
+                        double d = scores[p] - scores[q];
+                        totals[3 * nr + 2 * (p * nr + q)] += d;
+                        totals[3 * nr + 2 * (p * nr + q) + 1] += d * d;
+                    }
+                }
+            }
+            return totals;
+        }
+    }
+
+    /*
+     * Main function. Runs a tournament and prints the ranking.
+     *
+     * Input : Policies, maximum deals, threads, seed and confidence
+     *         (String[]).
+     * Output: -
+     */
+    public static void main(String[] args) {
+        String list = args.length > 0 ? args[0] : "random,greedy,odds";
+        long maxDeals = args.length > 1 ? Long.parseLong(args[1]) : 1000000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) :
+                Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : System.nanoTime();
+        double confidence = args.length > 4 ? Double.parseDouble(args[4]) : 0.95;
+
+        List<String> names = new ArrayList<String>();
+        List<PlacementPolicy> policies = new ArrayList<PlacementPolicy>();
+        for (String name : list.split(",")) {
+            names.add(name.trim());
+            policies.add(Simulator.policy(name.trim()));
+        }
+        Tournament tournament = new Tournament(names, policies, seed);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        System.out.println("Tournament of " + names + " on up to " + maxDeals +
+                " deals on " + threads + " threads (seed " + seed + ").");
+
+        long start = System.nanoTime();
+        boolean settled = tournament.run(maxDeals, confidence, pool);
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+
+        System.out.printf("%s after %d deals in %.3f s.%n",
+                settled ? "Ranking settled" : "Ranking not settled",
+                tournament.deals, elapsed / 1e9);
+        tournament.report(confidence);
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * WeightTuner.java
+ *
+ * This file contains the tuner of the weights of WeightedPolicy.
+ *
+ * To run, type 'java WeightTuner [generations] [deals] [threads] [seed]
+ * [checkpoint]'. The state is saved to the checkpoint file (default
+ * 'tuning.ckpt') after every generation, and a run with an existing
+ * checkpoint carries on where it stopped.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+
+/*
+ * Tunes the weights with the separable CMA-ES of Ros and Hansen: the weights
+ * of each generation are sampled from a normal distribution with a diagonal
+ * covariance, the best half moves the mean, and the step size and the
+ * variances adapt to how well the steps pay off. The diagonal keeps every
+ * update linear in the number of weights.
+ *
+ * Every candidate plays the same batch of deals, seeded from the tuning seed
+ * and the generation, so candidates are compared on equal terms while each
+ * generation sees new deals. The games of all candidates are spread over a
+ * fork-join pool, with one game and one generator per thread reused for
+ * every deal, so the games themselves allocate nothing.
+ */
+public class WeightTuner {
+    /* Marks a checkpoint file. */
+    private static final int MAGIC = 0x50475754;
+    private static final int VERSION = 1;
+
+    /* Number of deals played by a single task without splitting further. */
+    private static final int BLOCK = 64;
+
+    /* Game and generator of each thread. */
+    private static final ThreadLocal<PokerGame> games = new ThreadLocal<PokerGame>() {
+        protected PokerGame initialValue() {
+            return new PokerGame();
+        }
+    };
+    private static final ThreadLocal<Random> generators = new ThreadLocal<Random>() {
+        protected Random initialValue() {
+            return new Random();
+        }
+    };
+
+    /* Parameters of the strategy, fixed by the number of weights. */
+    private final int n = WeightedPolicy.NR_WEIGHTS;
+    private final int lambda;
+    private final int mu;
+    private final double[] recombination;
+    private final double muEff;
+    private final double cSigma;
+    private final double dSigma;
+    private final double cc;
+    private final double c1;
+    private final double cMu;
+    private final double chiN;
+
+    /* The state, which is what a checkpoint holds. */
+    public final long seed;
+    public int generation = 0;
+    public double sigma = 1.0;
+    public final double[] mean = WeightedPolicy.DEFAULT.clone();
+    private final double[] variances = new double[n];
+    private final double[] pathSigma = new double[n];
+    private final double[] pathC = new double[n];
+
+    public WeightTuner(long seed) {
+        this.seed = seed;
+        lambda = 4 + (int)(3 * Math.log(n));
+        mu = lambda / 2;
+        recombination = new double[mu];
+        double sum = 0;
+        for (int i = 0; i < mu; i++) {
+            recombination[i] = Math.log(mu + 0.5) - Math.log(i + 1);
+            sum += recombination[i];
+        }
+        double squares = 0;
+        for (int i = 0; i < mu; i++) {
+            recombination[i] /= sum;
+            squares += recombination[i] * recombination[i];
+        }
+        muEff = 1 / squares;
+        cSigma = (muEff + 2) / (n + muEff + 5);
+        dSigma = 1 + 2 * Math.max(0, Math.sqrt((muEff - 1) / (n + 1)) - 1) + cSigma;
+        cc = 4.0 / (n + 4);
+        double scale = (n + 2) / 3.0;
+        c1 = Math.min(1, scale * 2 / ((n + 1.3) * (n + 1.3) + muEff));
+        cMu = Math.min(1 - c1, scale * 2 * (muEff - 2 + 1 / muEff) /
+                ((n + 2) * (n + 2) + muEff));
+        chiN = Math.sqrt(n) * (1 - 1.0 / (4 * n) + 1.0 / (21 * n * n));
+        for (int i = 0; i < n; i++) {
+            variances[i] = 1;
+        }
+    }
+
+    /*
+     * Run one generation: sample the candidates, play them and update the
+     * distribution.
+     *
+     * Input : The deals per candidate (int) and the pool (ForkJoinPool).
+     * Output: The mean scores of the candidates, best first (double[]).
+     */
+    public double[] step(int deals, ForkJoinPool pool) {
+        Random rnd = new Random(seed * 31 + generation);
+        double[][] z = new double[lambda][n];
+        double[][] x = new double[lambda][n];
+        for (int k = 0; k < lambda; k++) {
+            for (int i = 0; i < n; i++) {
+                z[k][i] = rnd.nextGaussian();
+                x[k][i] = mean[i] + sigma * Math.sqrt(variances[i]) * z[k][i];
+            }
+        }
+
+        WeightedPolicy[] candidates = new WeightedPolicy[lambda];
+        for (int k = 0; k < lambda; k++) {
+            candidates[k] = new WeightedPolicy(x[k]);
+        }
+        long dealSeed = seed * 0x9E3779B97F4A7C15L + generation * 0x100000000L;
+        double[] sums = pool.invoke(new Batch(candidates, dealSeed, 0, deals));
+        final double[] scores = new double[lambda];
+        Integer[] order = new Integer[lambda];
+        for (int k = 0; k < lambda; k++) {
+            scores[k] = sums[k] / deals;
+            order[k] = k;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Double.compare(scores[b], scores[a]);
+            }
+        });
+
+        /* Move the mean towards the best half, weighted by rank. */
+        double[] zMean = new double[n];
+        double[] yMean = new double[n];
+        for (int j = 0; j < mu; j++) {
+            int k = order[j];
+            for (int i = 0; i < n; i++) {
+                zMean[i] += recombination[j] * z[k][i];
+                yMean[i] += recombination[j] * Math.sqrt(variances[i]) * z[k][i];
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            mean[i] += sigma * yMean[i];
+        }
+
+        /* Update the evolution paths. */
+        double norm = 0;
+        for (int i = 0; i < n; i++) {
+            pathSigma[i] = (1 - cSigma) * pathSigma[i] +
+                    Math.sqrt(cSigma * (2 - cSigma) * muEff) * zMean[i];
+            norm += pathSigma[i] * pathSigma[i];
+        }
+        norm = Math.sqrt(norm);
+        boolean hSigma = norm / Math.sqrt(1 - Math.pow(1 - cSigma, 2 * (generation + 1))) <
+                (1.4 + 2.0 / (n + 1)) * chiN;
+        for (int i = 0; i < n; i++) {
+            pathC[i] = (1 - cc) * pathC[i] +
+                    (hSigma ? Math.sqrt(cc * (2 - cc) * muEff) * yMean[i] : 0);
+        }
+
+        /* Update the variances (rank one and rank mu) and the step size. */
+        for (int i = 0; i < n; i++) {
+            double rankMu = 0;
+            for (int j = 0; j < mu; j++) {
+                double y = Math.sqrt(variances[i]) * z[order[j]][i];
+                rankMu += recombination[j] * y * y;
+            }
+            variances[i] = (1 - c1 - cMu) * variances[i] +
+                    c1 * (pathC[i] * pathC[i] +
+                            (hSigma ? 0 : cc * (2 - cc) * variances[i])) +
+                    cMu * rankMu;
+        }
+        sigma *= Math.exp((cSigma / dSigma) * (norm / chiN - 1));
+        generation += 1;
+
+        double[] sorted = new double[lambda];
+        for (int k = 0; k < lambda; k++) {
+            sorted[k] = scores[order[k]];
+        }
+        return sorted;
+    }
+
+    /*
+     * Save the state, through a temporary file so an interruption never
+     * leaves a broken checkpoint.
+     *
+     * Input : The file (File).
+     * Output: -
+     */
+    public void save(File path) throws IOException {
+        File dir = path.getAbsoluteFile().getParentFile();
+        File temp = File.createTempFile("tuning", ".tmp", dir);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(n);
+                out.writeLong(seed);
+                out.writeInt(generation);
+                out.writeDouble(sigma);
+                for (double[] values : new double[][] {mean, variances, pathSigma, pathC}) {
+                    for (double value : values) {
+                        out.writeDouble(value);
+                    }
+                }
+            }
+            finally {
+                out.close();
+            }
+            Files.move(temp.toPath(), path.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            temp.delete();
+        }
+    }
+
+    /*
+     * Load a saved state.
+     *
+     * Input : The file (File).
+     * Output: The tuner (WeightTuner).
+     */
+    public static WeightTuner load(File path) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(path)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION ||
+                    in.readInt() != WeightedPolicy.NR_WEIGHTS) {
+                throw new IOException(path + " is not a checkpoint of this tuner.");
+            }
+            WeightTuner tuner = new WeightTuner(in.readLong());
+            tuner.generation = in.readInt();
+            tuner.sigma = in.readDouble();
+            for (double[] values : new double[][] {tuner.mean, tuner.variances,
+                    tuner.pathSigma, tuner.pathC}) {
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = in.readDouble();
+                }
+            }
+            return tuner;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /*
+     * A range of deals, each played by every candidate. The result holds the
+     * sum of the scores per candidate.
+     */
+    private static class Batch extends RecursiveTask<double[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final WeightedPolicy[] candidates;
+        private final long dealSeed;
+        private final int from;
+        private final int to;
+
+        Batch(WeightedPolicy[] candidates, long dealSeed, int from, int to) {
+            this.candidates = candidates;
+            this.dealSeed = dealSeed;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected double[] compute() {
+            if (to - from > BLOCK) {
+                int mid = from + (to - from) / 2;
+                Batch left = new Batch(candidates, dealSeed, from, mid);
+                left.fork();
+                double[] sums = new Batch(candidates, dealSeed, mid, to).compute();
+                double[] other = left.join();
+                for (int k = 0; k < sums.length; k++) {
+                    sums[k] += other[k];
+                }
+                return sums;
+            }
+            double[] sums = new double[candidates.length];
+            PokerGame game = games.get();
+            Random rnd = generators.get();
+            for (int deal = from; deal < to; deal++) {
+                for (int k = 0; k < candidates.length; k++) {
+                    rnd.setSeed(dealSeed + deal);
+                    sums[k] += Simulator.play(game, candidates[k], rnd);
+                }
+            }
+            return sums;
+        }
+    }
+
+    /*
+     * Main function. Tunes the weights, printing every generation.
+     *
+     * Input : Generations, deals per candidate, threads, seed and checkpoint
+     *         (String[]).
+     * Output: -
+     */
+    public static void main(String[] args) throws IOException {
+        int generations = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int deals = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) :
+                Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : System.nanoTime();
+        File checkpoint = new File(args.length > 4 ? args[4] : "tuning.ckpt");
+
+        WeightTuner tuner;
+        if (checkpoint.isFile()) {
+            tuner = load(checkpoint);
+            System.out.println("Resuming from " + checkpoint + " at generation " +
+                    tuner.generation + " (seed " + tuner.seed + ").");
+        }
+        else {
+            tuner = new WeightTuner(seed);
+            System.out.println("Tuning " + WeightedPolicy.NR_WEIGHTS + " weights with " +
+                    tuner.lambda + " candidates of " + deals + " deals (seed " + seed + ").");
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        while (tuner.generation < generations) {
+            long start = System.nanoTime();
+            double[] scores = tuner.step(deals, pool);
+            tuner.save(checkpoint);
+            System.out.printf("Generation %d: best %.3f, median %.3f, sigma %.4f (%.1f s)%n",
+                    tuner.generation, scores[0], scores[scores.length / 2], tuner.sigma,
+                    (System.nanoTime() - start) / 1e9);
+        }
+        pool.shutdown();
+
+        /* The mean of the distribution is the estimate least affected by noise. */
+        System.out.println("Tuned weights:");
+        for (int i = 0; i < WeightedPolicy.NR_WEIGHTS; i++) {
+            System.out.printf("  %-12s %8.4f%n", WeightedPolicy.NAMES[i], tuner.mean[i]);
+        }
+        System.out.println("Use them with the policy 'weighted:" +
+                WeightedPolicy.format(tuner.mean) + "'.");
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * WeightedPolicy.java
+ *
+ * This file contains the placement policy driven by weighted line features,
+ * whose weights can be tuned with WeightTuner.
+ */
+
+import java.util.Random;
+
+
+/*
+ * Place each card where it adds the most to the score right away plus the
+ * change in promise of its unfinished lines. The promise of a line is the sum
+ * of the weights of the features it has: a pair, two pair, three or four of
+ * a kind, a flush draw or a straight draw of 2, 3 or 4 cards, or a line that
+ * can only score with a pair any more. The features are read from the line
+ * state that PokerGame keeps, so a decision allocates nothing.
+ */
+public class WeightedPolicy implements PlacementPolicy {
+    /* The features, as indexes in the weights. */
+    public static final int PAIR = 0;
+    public static final int TWO_PAIR = 1;
+    public static final int TRIPS = 2;
+    public static final int QUADS = 3;
+    public static final int FLUSH_DRAW = 4;
+    public static final int STRAIGHT_DRAW = 7;
+    public static final int DEAD = 10;
+    public static final int NR_WEIGHTS = 11;
+
+    public static final String[] NAMES = {"pair", "two pair", "trips", "quads",
+            "flush 2", "flush 3", "flush 4", "straight 2", "straight 3", "straight 4",
+            "dead"};
+
+    /* Weights set by hand, the start of the tuning. */
+    public static final double[] DEFAULT = {1, 3, 5, 12, 1, 2, 3, 1, 2, 4, -1};
+
+    /* Whether the ranks of a rank mask all fit in one straight. */
+    private static final boolean[] STRAIGHT_OPEN = new boolean[1 << 13];
+
+    static {
+        int[] straights = {0x1F, 0x3E, 0x7C, 0xF8, 0x1F0, 0x3E0, 0x7C0, 0xF80, 0x1F00, 0x100F};
+        for (int mask = 0; mask < STRAIGHT_OPEN.length; mask++) {
+            for (int straight : straights) {
+                if ((mask & ~straight) == 0) {
+                    STRAIGHT_OPEN[mask] = true;
+                }
+            }
+        }
+    }
+
+    /* The weights of the features. */
+    public final double[] weights;
+
+    public WeightedPolicy(double[] weights) {
+        if (weights.length != NR_WEIGHTS) {
+            throw new IllegalArgumentException("Expected " + NR_WEIGHTS + " weights.");
+        }
+        this.weights = weights.clone();
+    }
+
+    /*
+     * Create a policy from weights separated by commas.
+     *
+     * Input : The weights (String).
+     * Output: The policy (WeightedPolicy).
+     */
+    public static WeightedPolicy parse(String text) {
+        String[] parts = text.split(",");
+        double[] weights = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            weights[i] = Double.parseDouble(parts[i].trim());
+        }
+        return new WeightedPolicy(weights);
+    }
+
+    /*
+     * The weights separated by commas, as read by parse().
+     *
+     * Input : The weights (double[]).
+     * Output: The text (String).
+     */
+    public static String format(double[] weights) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < weights.length; i++) {
+            if (i > 0) {
+                text.append(',');
+            }
+            text.append(String.format("%.4f", weights[i]));
+        }
+        return text.toString();
+    }
+
+    public int choose(PokerGame game, int card, Random rnd) {
+        int rankBit = 1 << (card % 13);
+        int suitBit = 1 << (card / 13);
+        int best = -1;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        int ties = 0;
+        for (int cell = 0; cell < 25; cell++) {
+            int x = cell / 5;
+            int y = cell % 5;
+            if (game.board[x][y] != -1) {
+                continue;
+            }
+            double value = game.gain(x, y, card);
+            for (int l : PokerGame.CELL_LINES[cell]) {
+                int ranks = game.lineRankMask[l];
+                int pairs = game.linePairs[l];
+                int suits = game.lineSuits[l];
+                int fill = game.lineFill[l];
+                value += promise(ranks | rankBit, pairs | (ranks & rankBit),
+                        suits | suitBit, fill + 1) - promise(ranks, pairs, suits, fill);
+            }
+            if (value > bestValue) {
+                best = cell;
+                bestValue = value;
+                ties = 1;
+            }
+            else if (value == bestValue && rnd.nextInt(++ties) == 0) {
+                best = cell;
+            }
+        }
+        if (best == -1) {
+            throw new IllegalStateException("The board is full.");
+        }
+        return best;
+    }
+
+    /*
+     * The promise of an unfinished line; empty and full lines have none.
+     *
+     * Input : The masks of the ranks, repeated ranks and suits (int, int,
+     *         int) and the number of cards (int).
+     * Output: The promise (double).
+     */
+    public double promise(int ranks, int pairs, int suits, int fill) {
+        if (fill == 0 || fill == 5) {
+            return 0;
+        }
+        double value = 0;
+        int repeated = Integer.bitCount(pairs);
+        if (repeated == 1) {
+            /* The cards beyond the distinct ranks tell a pair from trips or quads. */
+            int extra = fill - Integer.bitCount(ranks);
+            value += weights[extra == 1 ? PAIR : extra == 2 ? TRIPS : QUADS];
+        }
+        else if (repeated == 2) {
+            value += weights[TWO_PAIR];
+        }
+        if (fill < 2) {
+            return value;
+        }
+        boolean flush = (suits & (suits - 1)) == 0;
+        boolean straight = repeated == 0 && STRAIGHT_OPEN[ranks];
+        if (flush) {
+            value += weights[FLUSH_DRAW + fill - 2];
+        }
+        if (straight) {
+            value += weights[STRAIGHT_DRAW + fill - 2];
+        }
+        if (repeated == 0 && !flush && !straight) {
+            value += weights[DEAD];
+        }
+        return value;
+    }
+}
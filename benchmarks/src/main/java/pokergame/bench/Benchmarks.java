@@ -0,0 +1,48 @@
+/*
+ * Benchmarks.java
+ *
+ * This file contains the entry point of the benchmark suite.
+ */
+
+package pokergame.bench;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/*
+ * Runs the JMH benchmarks with the GC profiler, so every result comes with
+ * the allocation rate and the bytes allocated per operation. All the usual
+ * JMH command line options can be given, e.g. a benchmark name pattern.
+ * Help, the lists (-h, -l, -lp, -lprof, -lrf), runs with profilers of their
+ * own (-prof) and options that do not parse are left to the JMH main.
+ */
+public class Benchmarks {
+    public static void main(String[] args) throws RunnerException, IOException {
+        CommandLineOptions options;
+        try {
+            options = new CommandLineOptions(args);
+        }
+        catch (CommandLineOptionException e) {
+            Main.main(args);
+            return;
+        }
+        if (options.shouldHelp() || options.shouldList() || options.shouldListWithParams() ||
+                options.shouldListProfilers() || options.shouldListResultFormats() ||
+                !options.getProfilers().isEmpty()) {
+            Main.main(args);
+            return;
+        }
+        new Runner(new OptionsBuilder()
+                .parent(options)
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
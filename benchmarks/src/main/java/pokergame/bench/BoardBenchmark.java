@@ -0,0 +1,96 @@
+/*
+ * BoardBenchmark.java
+ *
+ * This file contains the benchmarks for dealing, placing and playing.
+ */
+
+package pokergame.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/*
+ * Benchmarks on a whole game: resetting (copying and shuffling the deck),
+ * filling a board through updateScore and playing a complete round with one
+ * of the simulation policies. The fill benchmark includes a reset, so the
+ * cost of the 25 updates is the difference between fill and reset.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+    /* Number of prepared placement orders, a power of two. */
+    private static final int ORDERS = 256;
+
+    /* The policy used for the full game. */
+    @Param({"random", "greedy"})
+    public String policy;
+
+    private Object game;
+    private Object player;
+    private Random rnd;
+    private int[][] orders;
+    private int next;
+
+    @Setup
+    public void setup() {
+        game = Game.newGame();
+        player = Game.policy(policy);
+        rnd = new Random(42);
+        orders = new int[ORDERS][25];
+        for (int i = 0; i < ORDERS; i++) {
+            int[] order = orders[i];
+            for (int c = 0; c < 25; c++) {
+                order[c] = c;
+            }
+            for (int c = 24; c > 0; c--) {
+                int k = rnd.nextInt(c + 1);
+                int t = order[k];
+                order[k] = order[c];
+                order[c] = t;
+            }
+        }
+    }
+
+    @Benchmark
+    public Object reset() {
+        Game.reset(game, rnd);
+        return game;
+    }
+
+    @Benchmark
+    public int fill() {
+        Game.reset(game, rnd);
+        int[][] board = Game.board(game);
+        int[] order = orders[next = (next + 1) & (ORDERS - 1)];
+        for (int c = 0; c < 25; c++) {
+            int x = order[c] / 5;
+            int y = order[c] % 5;
+            /* The deck is shuffled, so any 25 distinct cards will do. */
+            board[x][y] = c;
+            Game.updateScore(game, x, y);
+        }
+        return Game.score(game);
+    }
+
+    @Benchmark
+    public int fullGame() {
+        return Game.play(game, player, rnd);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * BulkBenchmark.java
+ *
+ * This file contains the benchmarks for scoring batches of full boards.
+ */
+
+package pokergame.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/*
+ * Scores a batch of random full boards with BulkEvaluator, and the same
+ * boards line by line with PokerGame.checkScore and with the reference
+ * scoring in Scores. The time is per board. The setup checks the bulk
+ * scores against Scores, which shares no tables with BulkEvaluator.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BulkBenchmark {
+    /* Number of boards per batch. */
+    private static final int BOARDS = 4096;
+
+    /* The positions of the 12 lines, as in PokerGame. */
+    private static final int[][] LINES = new int[12][5];
+
+    static {
+        for (int i = 0; i < 5; i++) {
+            for (int k = 0; k < 5; k++) {
+                LINES[i][k] = k * 5 + i;
+                LINES[5 + i][k] = i * 5 + k;
+            }
+            LINES[10][i] = i * 5 + i;
+            LINES[11][i] = i * 5 + (4 - i);
+        }
+    }
+
+    private byte[] boards;
+    private int[] scores;
+    private long[] hands;
+    private int[] line = new int[5];
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(42);
+        boards = new byte[BOARDS * 25];
+        scores = new int[BOARDS];
+        hands = new long[9];
+        byte[] deck = new byte[52];
+        for (int c = 0; c < 52; c++) {
+            deck[c] = (byte)c;
+        }
+        for (int b = 0; b < BOARDS; b++) {
+            for (int c = 0; c < 25; c++) {
+                int k = c + rnd.nextInt(52 - c);
+                byte t = deck[k];
+                deck[k] = deck[c];
+                deck[c] = t;
+            }
+            System.arraycopy(deck, 0, boards, b * 25, 25);
+        }
+        Game.bulkScore(boards, 0, BOARDS, scores, hands);
+        int[] bulk = scores.clone();
+        reference();
+        for (int b = 0; b < BOARDS; b++) {
+            if (bulk[b] != scores[b]) {
+                throw new IllegalStateException("Board " + b + ": scored " + bulk[b] +
+                        ", expected " + scores[b]);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BOARDS)
+    public int[] bulk() {
+        Game.bulkScore(boards, 0, BOARDS, scores, hands);
+        return scores;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BOARDS)
+    public int[] perLine() {
+        for (int b = 0; b < BOARDS; b++) {
+            int score = 0;
+            for (int[] cells : LINES) {
+                for (int k = 0; k < 5; k++) {
+                    line[k] = boards[b * 25 + cells[k]];
+                }
+                score += Game.checkScore(line);
+            }
+            scores[b] = score;
+        }
+        return scores;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BOARDS)
+    public int[] reference() {
+        for (int b = 0; b < BOARDS; b++) {
+            int score = 0;
+            for (int[] cells : LINES) {
+                for (int k = 0; k < 5; k++) {
+                    line[k] = boards[b * 25 + cells[k]];
+                }
+                score += Game.referenceScore(line);
+            }
+            scores[b] = score;
+        }
+        return scores;
+    }
+}
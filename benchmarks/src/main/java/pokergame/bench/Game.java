@@ -0,0 +1,350 @@
+/*
+ * Game.java
+ *
+ * This file gives the benchmarks access to the game classes.
+ */
+
+package pokergame.bench;
+
+import java.util.Random;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+
+/*
+ * The game classes live in the default package, which cannot be imported
+ * from a named package, while JMH refuses benchmarks in the default package.
+ * The benchmarks therefore reach the game through method handles. They are
+ * held in static final fields, which the JIT treats as constants, so the
+ * calls are inlined just like direct calls.
+ */
+final class Game {
+    private static final MethodHandle NEW_GAME;
+    private static final MethodHandle CHECK_SCORE;
+    private static final MethodHandle IS_STRAIGHT;
+    private static final MethodHandle IS_FLUSH;
+    private static final MethodHandle HAS_FOUR;
+    private static final MethodHandle HAS_THREE;
+    private static final MethodHandle COUNT_PAIRS;
+    private static final MethodHandle REFERENCE_SCORE;
+    private static final MethodHandle RESET;
+    private static final MethodHandle UPDATE_SCORE;
+    private static final MethodHandle BOARD;
+    private static final MethodHandle SCORE;
+    private static final MethodHandle PLAY;
+    private static final MethodHandle NEW_STATE;
+    private static final MethodHandle STATE_RESET;
+    private static final MethodHandle STATE_PLACE;
+    private static final MethodHandle STATE_COPY;
+    private static final MethodHandle NEW_GRID;
+    private static final MethodHandle GRID_PLACE;
+    private static final MethodHandle GRID_RESCAN;
+    private static final MethodHandle BULK_SCORE;
+
+    static {
+        try {
+            Class<?> game = Class.forName("PokerGame");
+            Class<?> scores = Class.forName("Scores");
+            Class<?> simulator = Class.forName("Simulator");
+            Class<?> policy = Class.forName("PlacementPolicy");
+            Class<?> state = Class.forName("BoardState");
+            Class<?> rules = Class.forName("Rules");
+            Class<?> bulk = Class.forName("BulkEvaluator");
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+            NEW_GAME = lookup.findConstructor(game, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+            CHECK_SCORE = lookup.findStatic(game, "checkScore",
+                    MethodType.methodType(int.class, int[].class));
+            IS_STRAIGHT = predicate(lookup, scores, "isStraight");
+            IS_FLUSH = predicate(lookup, scores, "isFlush");
+            HAS_FOUR = predicate(lookup, scores, "hasFourofaKind");
+            HAS_THREE = predicate(lookup, scores, "hasThreeofaKind");
+            COUNT_PAIRS = predicate(lookup, scores, "countPairs");
+            REFERENCE_SCORE = predicate(lookup, scores, "score");
+            RESET = lookup.findVirtual(game, "reset",
+                    MethodType.methodType(void.class, Random.class))
+                    .asType(MethodType.methodType(void.class, Object.class, Random.class));
+            UPDATE_SCORE = lookup.findVirtual(game, "updateScore",
+                    MethodType.methodType(void.class, int.class, int.class))
+                    .asType(MethodType.methodType(void.class, Object.class, int.class, int.class));
+            BOARD = lookup.findGetter(game, "board", int[][].class)
+                    .asType(MethodType.methodType(int[][].class, Object.class));
+            SCORE = lookup.findGetter(game, "score", int.class)
+                    .asType(MethodType.methodType(int.class, Object.class));
+            PLAY = lookup.findStatic(simulator, "play",
+                    MethodType.methodType(int.class, game, policy, Random.class))
+                    .asType(MethodType.methodType(int.class, Object.class, Object.class, Random.class));
+            NEW_STATE = lookup.findConstructor(state, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+            STATE_RESET = lookup.findVirtual(state, "reset",
+                    MethodType.methodType(void.class, Random.class))
+                    .asType(MethodType.methodType(void.class, Object.class, Random.class));
+            STATE_PLACE = lookup.findVirtual(state, "place",
+                    MethodType.methodType(void.class, int.class))
+                    .asType(MethodType.methodType(void.class, Object.class, int.class));
+            STATE_COPY = lookup.findVirtual(state, "copyInto",
+                    MethodType.methodType(void.class, state))
+                    .asType(MethodType.methodType(void.class, Object.class, Object.class));
+            NEW_GRID = MethodHandles.filterReturnValue(
+                    lookup.findStatic(rules, "square",
+                            MethodType.methodType(rules, int.class, String.class)),
+                    lookup.findConstructor(game, MethodType.methodType(void.class, rules)))
+                    .asType(MethodType.methodType(Object.class, int.class, String.class));
+            GRID_PLACE = lookup.findVirtual(game, "place",
+                    MethodType.methodType(void.class, int.class, int.class))
+                    .asType(MethodType.methodType(void.class, Object.class, int.class, int.class));
+            GRID_RESCAN = lookup.findVirtual(game, "rescan",
+                    MethodType.methodType(int.class))
+                    .asType(MethodType.methodType(int.class, Object.class));
+            BULK_SCORE = lookup.findStatic(bulk, "score", MethodType.methodType(void.class,
+                    byte[].class, int.class, int.class, int[].class, long[].class));
+        }
+        catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Game() {
+    }
+
+    /*
+     * Find one of the (package-private) Scores methods.
+     */
+    private static MethodHandle predicate(MethodHandles.Lookup lookup, Class<?> scores,
+            String name) throws ReflectiveOperationException {
+        Method method = scores.getDeclaredMethod(name, int[].class);
+        method.setAccessible(true);
+        return lookup.unreflect(method);
+    }
+
+    /*
+     * Create a new game (PokerGame).
+     */
+    static Object newGame() {
+        try {
+            return (Object)NEW_GAME.invokeExact();
+        }
+        catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    /*
+     * Create a placement policy by name (see Simulator.policy).
+     */
+    static Object policy(String name) {
+        try {
+            return Class.forName("Simulator").getMethod("policy", String.class)
+                    .invoke(null, name);
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    static int checkScore(int[] line) {
+        try {
+            return (int)CHECK_SCORE.invokeExact(line);
+        }
+        catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static boolean isStraight(int[] line) {
+        try {
+            return (boolean)IS_STRAIGHT.invokeExact(line);
+        }
+        catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static boolean isFlush(int[] line) {
+        try {
+            return (boolean)IS_FLUSH.invokeExact(line);
+        }
+        catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static boolean hasFourofaKind(int[] line) {
+        try {
+            return (boolean)HAS_FOUR.invokeExact(line);
+        }
+        catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static boolean hasThreeofaKind(int[] line) {
+        try {
+            return (boolean)HAS_THREE.invokeExact(line);
+        }
+        catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static int countPairs(int[] line) {
+        try {
+            return (int)COUNT_PAIRS.invokeExact(line);
+        }
+        catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    /*
+     * Score a line with the reference scoring in Scores.
+     */
+    static int referenceScore(int[] line) {
+        try {
+            return (int)REFERENCE_SCORE.invokeExact(line);
+        }
+        catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static void reset(Object game, Random rnd) {
+        try {
+            RESET.invokeExact(game, rnd);
+        }
+        catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static void updateScore(Object game, int x, int y) {
+        try {
+            UPDATE_SCORE.invokeExact(game, x, y);
+        }
+        catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static int[][] board(Object game) {
+        try {
+            return (int[][])BOARD.invokeExact(game);
+        }
+        catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static int score(Object game) {
+        try {
+            return (int)SCORE.invokeExact(game);
+        }
+        catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static int play(Object game, Object policy, Random rnd) {
+        try {
+            return (int)PLAY.invokeExact(game, policy, rnd);
+        }
+        catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    /*
+     * Create a new, empty state (BoardState).
+     */
+    static Object newState() {
+        try {
+            return (Object)NEW_STATE.invokeExact();
+        }
+        catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static void resetState(Object state, Random rnd) {
+        try {
+            STATE_RESET.invokeExact(state, rnd);
+        }
+        catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static void place(Object state, int cell) {
+        try {
+            STATE_PLACE.invokeExact(state, cell);
+        }
+        catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static void copyInto(Object state, Object target) {
+        try {
+            STATE_COPY.invokeExact(state, target);
+        }
+        catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    /*
+     * Create a game (PokerGame) on a square grid with the given lines.
+     */
+    static Object newGrid(int size, String kinds) {
+        try {
+            return (Object)NEW_GRID.invokeExact(size, kinds);
+        }
+        catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static void placeGrid(Object grid, int x, int y) {
+        try {
+            GRID_PLACE.invokeExact(grid, x, y);
+        }
+        catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static int rescanGrid(Object grid) {
+        try {
+            return (int)GRID_RESCAN.invokeExact(grid);
+        }
+        catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    /*
+     * Score packed boards with BulkEvaluator.
+     */
+    static void bulkScore(byte[] boards, int from, int count, int[] scores, long[] hands) {
+        try {
+            BULK_SCORE.invokeExact(boards, from, count, scores, hands);
+        }
+        catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    private static RuntimeException propagate(Throwable t) {
+        if (t instanceof RuntimeException) {
+            return (RuntimeException)t;
+        }
+        if (t instanceof Error) {
+            throw (Error)t;
+        }
+        return new RuntimeException(t);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * GridBenchmark.java
+ *
+ * This file contains the benchmarks for scoring on grids of several sizes.
+ */
+
+package pokergame.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/*
+ * Filling a whole PokerGame on a larger grid, with all kinds of lines, once
+ * scoring only the lines through each placed card and once rescanning every
+ * line after each placement, as a scorer without the line index would.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridBenchmark {
+    @Param({"5", "7", "10"})
+    public int size;
+
+    private Object grid;
+    private int cells;
+    private final Random rnd = new Random(42);
+
+    @Setup
+    public void setup() {
+        grid = Game.newGrid(size, "rows,columns,diagonals,broken");
+        cells = size * size;
+    }
+
+    @Benchmark
+    public int incremental() {
+        Game.reset(grid, rnd);
+        for (int cell = 0; cell < cells; cell++) {
+            Game.placeGrid(grid, cell / size, cell % size);
+        }
+        return Game.score(grid);
+    }
+
+    @Benchmark
+    public int rescanning() {
+        Game.reset(grid, rnd);
+        int score = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            Game.placeGrid(grid, cell / size, cell % size);
+            score = Game.rescanGrid(grid);
+        }
+        return score;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * ScoringBenchmark.java
+ *
+ * This file contains the benchmarks for scoring a single line.
+ */
+
+package pokergame.bench;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/*
+ * Scores lines with PokerGame.checkScore and with each of the Scores
+ * predicates. Every operation scores the next line of a fixed set, so the
+ * branches see a realistic mix of hands. The predicates modify their input,
+ * so they are given a fresh copy of the line, as checkScore used to do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScoringBenchmark {
+    /* Number of prepared lines, a power of two. */
+    private static final int LINES = 4096;
+
+    /*
+     * The kind of lines: random full lines, full lines sorted by card, or
+     * partially filled lines (one to four empty places).
+     */
+    @Param({"random", "sorted", "partial"})
+    public String kind;
+
+    private int[][] lines;
+    private int[] scratch = new int[5];
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(42);
+        lines = new int[LINES][];
+        for (int i = 0; i < LINES; i++) {
+            int[] deck = new int[52];
+            for (int c = 0; c < 52; c++) {
+                deck[c] = c;
+            }
+            int[] line = new int[5];
+            for (int c = 0; c < 5; c++) {
+                int k = c + rnd.nextInt(52 - c);
+                int t = deck[k];
+                deck[k] = deck[c];
+                deck[c] = t;
+                line[c] = t;
+            }
+            if (kind.equals("sorted")) {
+                Arrays.sort(line);
+            }
+            else if (kind.equals("partial")) {
+                int empty = 1 + rnd.nextInt(4);
+                for (int c = 0; c < empty; c++) {
+                    line[rnd.nextInt(5)] = -1;
+                }
+            }
+            lines[i] = line;
+        }
+    }
+
+    private int[] nextLine() {
+        next = (next + 1) & (LINES - 1);
+        return lines[next];
+    }
+
+    private int[] nextCopy() {
+        System.arraycopy(nextLine(), 0, scratch, 0, 5);
+        return scratch;
+    }
+
+    @Benchmark
+    public int checkScore() {
+        return Game.checkScore(nextLine());
+    }
+
+    @Benchmark
+    public boolean isStraight() {
+        return Game.isStraight(nextCopy());
+    }
+
+    @Benchmark
+    public boolean isFlush() {
+        /* isFlush expects a sorted line, like in checkScore. */
+        int[] line = nextCopy();
+        Arrays.sort(line);
+        return Game.isFlush(line);
+    }
+
+    @Benchmark
+    public boolean hasFourofaKind() {
+        return Game.hasFourofaKind(nextCopy());
+    }
+
+    @Benchmark
+    public boolean hasThreeofaKind() {
+        return Game.hasThreeofaKind(nextCopy());
+    }
+
+    @Benchmark
+    public int countPairs() {
+        return Game.countPairs(nextCopy());
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * StateBenchmark.java
+ *
+ * This file contains the benchmarks for the compact game state.
+ */
+
+package pokergame.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/*
+ * Snapshots and placements on BoardState: copying a half-filled state into
+ * a preallocated one, and filling a board from a snapshot.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateBenchmark {
+    private Object state;
+    private Object target;
+
+    @Setup
+    public void setup() {
+        state = Game.newState();
+        target = Game.newState();
+        Game.resetState(state, new Random(42));
+        for (int cell = 0; cell < 25; cell += 2) {
+            Game.place(state, cell);
+        }
+    }
+
+    @Benchmark
+    public Object snapshot() {
+        Game.copyInto(state, target);
+        return target;
+    }
+
+    @Benchmark
+    public Object fillFromSnapshot() {
+        Game.copyInto(state, target);
+        for (int cell = 1; cell < 25; cell += 2) {
+            Game.place(target, cell);
+        }
+        return target;
+    }
+}